@@ -0,0 +1,89 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * This class gives read access to the content of a cached file without going through the
+ * file system: small files are held in a pooled heap buffer and larger ones are memory mapped.
+ *
+ * Every asset holds a reference on the shared content, which is only given back once all the
+ * assets opened on it have been released, so the cache can drop or replace a file at any time
+ * without pulling the bytes from under a reader. Assets must be released (or closed) once done.
+ */
+public class SAFileAsset implements Closeable {
+
+    // private member variables
+    private final SAFileAssetCache.Content content;
+    private boolean isReleased = false;
+
+    /**
+     * Constructor
+     *
+     * @param content the shared content, already referenced for this asset
+     */
+    SAFileAsset(SAFileAssetCache.Content content) {
+        this.content = content;
+    }
+
+    public String getKey() {
+        return content.key;
+    }
+
+    public long getSize() {
+        return content.size;
+    }
+
+    /**
+     * @return true if the content is memory mapped, false if it's held on the heap
+     */
+    public boolean isMapped() {
+        return content.isMapped;
+    }
+
+    /**
+     * Get a view over the whole content. Each call returns a new read-only buffer, with its
+     * own position and limit, so views can be handed to different readers.
+     *
+     * @return a read-only buffer, positioned at 0 and limited to the file's size
+     * @throws IllegalStateException if the asset has been released
+     */
+    public synchronized ByteBuffer getBuffer() {
+        if (isReleased) {
+            throw new IllegalStateException("Asset " + content.key + " has been released");
+        }
+        ByteBuffer view = content.buffer.asReadOnlyBuffer();
+        view.position(0);
+        view.limit((int) content.size);
+        return view;
+    }
+
+    /**
+     * @return a copy of the content, for APIs that need a byte array
+     */
+    public byte[] getBytes() {
+        ByteBuffer view = getBuffer();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Give the reference back. Calling this more than once has no effect.
+     */
+    public void release() {
+        synchronized (this) {
+            if (isReleased) return;
+            isReleased = true;
+        }
+        content.unreference();
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps the content of recently read cached files in memory, so that creatives
+ * shown over and over (HTML, images) are only read from disk once.
+ *
+ * Files up to SAFileBufferPool.MAX_SIZE are read into buffers borrowed from the shared pool,
+ * larger ones are memory mapped. Contents are reference counted: the least recently used ones
+ * are dropped once the cache holds more than a fixed number of bytes, or straight away when
+ * their file is replaced or deleted, but a dropped content is only given back (its buffer
+ * returned to the pool, its mapping left to the garbage collector) once no asset uses it.
+ */
+public class SAFileAssetCache {
+
+    // constants
+    private static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    // one cache per directory, shared by all downloaders in the process
+    private static final Map<String, SAFileAssetCache> caches = new HashMap<>();
+
+    /**
+     * The content of a file, shared by all the assets opened on it
+     */
+    static class Content {
+
+        final String key;
+        final long size;
+        final boolean isMapped;
+        final ByteBuffer buffer;
+        private final SAFileBufferPool pool;
+        private int references = 0;
+        private boolean isDropped = false;
+
+        Content(String key, long size, boolean isMapped, ByteBuffer buffer, SAFileBufferPool pool) {
+            this.key = key;
+            this.size = size;
+            this.isMapped = isMapped;
+            this.buffer = buffer;
+            this.pool = pool;
+        }
+
+        synchronized void reference() {
+            references++;
+        }
+
+        synchronized void unreference() {
+            references--;
+            freeIfUnused();
+        }
+
+        synchronized void drop() {
+            isDropped = true;
+            freeIfUnused();
+        }
+
+        synchronized boolean isInUse() {
+            return references > 0;
+        }
+
+        private void freeIfUnused() {
+            if (isDropped && references == 0 && !isMapped) {
+                pool.release(buffer);
+            }
+        }
+    }
+
+    // private member variables
+    private final File directory;
+    private final SAFileBufferPool pool;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Content> contents = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    /**
+     * Get the shared cache for a given directory
+     *
+     * @param directory the directory the cached files live in
+     * @return          the cache instance for that directory
+     */
+    public static SAFileAssetCache forDirectory(File directory) {
+        synchronized (caches) {
+            SAFileAssetCache cache = caches.get(directory.getAbsolutePath());
+            if (cache == null) {
+                cache = new SAFileAssetCache(directory, SAFileBufferPool.getShared(), DEFAULT_MAX_BYTES);
+                caches.put(directory.getAbsolutePath(), cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param directory the directory the cached files live in
+     * @param pool      the pool to borrow buffers from
+     * @param maxBytes  how many bytes of unused content the cache keeps around
+     */
+    SAFileAssetCache(File directory, SAFileBufferPool pool, long maxBytes) {
+        this.directory = directory;
+        this.pool = pool;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Open a cached file, reading it from disk only if it's not in memory already.
+     * Must not be called on the main thread.
+     *
+     * @param key   the cache key of the file
+     * @return      a new asset, that must be released by the caller, or null if the file is
+     *              not in the cache index or can't be read
+     */
+    public SAFileAsset open(String key) {
+        synchronized (this) {
+            Content content = contents.get(key);
+            if (content != null) {
+                return newAsset(content);
+            }
+        }
+
+        SAFileCacheEntry entry = SAFileCacheIndex.forDirectory(directory).get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        Content content;
+        try {
+            content = load(entry);
+        } catch (IOException e) {
+            return null;
+        }
+
+        synchronized (this) {
+            // someone else may have loaded the same file in the meantime
+            Content existing = contents.get(key);
+            if (existing != null) {
+                content.drop();
+                return newAsset(existing);
+            }
+
+            contents.put(key, content);
+            bytes += content.size;
+            SAFileAsset asset = newAsset(content);
+            trimTo(maxBytes);
+            return asset;
+        }
+    }
+
+    /**
+     * Forget the content of a file, e.g. because it was replaced or deleted. Assets that are
+     * still open keep working on the old content.
+     *
+     * @param key the cache key of the file
+     */
+    public synchronized void invalidate(String key) {
+        Content content = contents.remove(key);
+        if (content != null) {
+            bytes -= content.size;
+            content.drop();
+        }
+    }
+
+    /**
+     * Forget the content of all files
+     */
+    public synchronized void invalidateAll() {
+        for (Content content : contents.values()) {
+            content.drop();
+        }
+        contents.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return the number of bytes of content held by the cache, in use or not
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    private SAFileAsset newAsset(Content content) {
+        content.reference();
+        return new SAFileAsset(content);
+    }
+
+    /**
+     * Drop the content of every file that isn't in use, e.g. when the system is low on memory.
+     * The content of open assets is kept until they are released.
+     */
+    public synchronized void trimMemory() {
+        trimTo(0);
+    }
+
+    /**
+     * Drop the least recently used contents that aren't in use, until the cache fits
+     */
+    private void trimTo(long maxBytes) {
+        if (bytes <= maxBytes) return;
+
+        List<Content> dropped = new ArrayList<>();
+        Iterator<Content> iterator = contents.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Content content = iterator.next();
+            if (!content.isInUse()) {
+                iterator.remove();
+                bytes -= content.size;
+                dropped.add(content);
+            }
+        }
+
+        for (Content content : dropped) {
+            content.drop();
+        }
+    }
+
+    /**
+     * Read or map a file, checking it's still the one described by its cache entry
+     */
+    private Content load(SAFileCacheEntry entry) throws IOException {
+        File file = new File(directory, entry.getFilePath());
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            if (size != entry.getSize() || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected size for " + entry.getFilePath());
+            }
+
+            if (size > SAFileBufferPool.MAX_SIZE) {
+                // the mapping stays valid after the channel is closed
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return new Content(entry.getKey(), size, true, mapped, pool);
+            }
+
+            ByteBuffer buffer = pool.acquire((int) size);
+            try {
+                while (buffer.position() < size) {
+                    if (channel.read(buffer) == -1) {
+                        throw new IOException("Unexpected end of " + entry.getFilePath());
+                    }
+                }
+            } catch (IOException e) {
+                pool.release(buffer);
+                throw e;
+            }
+            return new Content(entry.getKey(), size, false, buffer, pool);
+        } finally {
+            input.close();
+        }
+    }
+}
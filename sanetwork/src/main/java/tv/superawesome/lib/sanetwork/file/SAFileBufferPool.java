@@ -0,0 +1,122 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class keeps a small number of byte buffers around so that consecutive downloads can
+ * reuse them instead of allocating (and later garbage collecting) a new one every time.
+ * Buffer capacities are always a power of two between MIN_SIZE and MAX_SIZE, and the pool
+ * never holds on to more than a fixed number of bytes in total.
+ */
+public class SAFileBufferPool {
+
+    // constants
+    public static final int MIN_SIZE = 4 * 1024;
+    public static final int MAX_SIZE = 256 * 1024;
+    private static final int DEFAULT_MAX_POOLED_BYTES = 1024 * 1024;
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+
+    // shared pool used by all downloaders
+    private static final SAFileBufferPool shared = new SAFileBufferPool(DEFAULT_MAX_POOLED_BYTES);
+
+    // private member variables
+    private final int maxPooledBytes;
+    private final List<ArrayDeque<ByteBuffer>> buffers;
+    private int pooledBytes = 0;
+
+    /**
+     * @return the pool shared by all downloaders in the process
+     */
+    public static SAFileBufferPool getShared() {
+        return shared;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxPooledBytes the maximum number of bytes the pool keeps, across all buffers
+     */
+    public SAFileBufferPool(int maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        this.buffers = new ArrayList<>(SIZE_CLASSES);
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            buffers.add(new ArrayDeque<ByteBuffer>());
+        }
+    }
+
+    /**
+     * Get a cleared buffer with at least the requested capacity (capped to MAX_SIZE)
+     *
+     * @param size  the requested capacity
+     * @return      a heap byte buffer
+     */
+    public ByteBuffer acquire(int size) {
+        int capacity = capacityFor(size);
+        synchronized (this) {
+            ByteBuffer buffer = buffers.get(sizeClassOf(capacity)).poll();
+            if (buffer != null) {
+                pooledBytes -= capacity;
+                buffer.clear();
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Give a buffer back to the pool. Buffers that weren't acquired from a pool, or that
+     * wouldn't fit in it anymore, are just dropped.
+     *
+     * @param buffer the buffer to release
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasArray() || capacityFor(buffer.capacity()) != buffer.capacity()) {
+            return;
+        }
+        synchronized (this) {
+            if (pooledBytes + buffer.capacity() <= maxPooledBytes) {
+                buffers.get(sizeClassOf(buffer.capacity())).push(buffer);
+                pooledBytes += buffer.capacity();
+            }
+        }
+    }
+
+    /**
+     * Drop all the pooled buffers
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<ByteBuffer> queue : buffers) {
+            queue.clear();
+        }
+        pooledBytes = 0;
+    }
+
+    /**
+     * @return the number of bytes currently held by the pool
+     */
+    public synchronized int getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * Round a size up to the nearest valid buffer capacity
+     *
+     * @param size  the requested size
+     * @return      a power of two between MIN_SIZE and MAX_SIZE
+     */
+    static int capacityFor(int size) {
+        if (size <= MIN_SIZE) return MIN_SIZE;
+        if (size >= MAX_SIZE) return MAX_SIZE;
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static int sizeClassOf(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+/**
+ * This class represents a single record in the file cache index - it holds where a downloaded
+ * file lives on disk, how big it is, when it was created / last used / last validated and the
+ * validators (ETag, Last-Modified, digest) that were received or computed with it.
+ */
+public class SAFileCacheEntry {
+
+    // private member variables
+    private String key = null;
+    private String filePath = null;
+    private long size = 0;
+    private long createdAt = 0;
+    private long accessedAt = 0;
+    private long validatedAt = 0;
+    private String etag = null;
+    private String lastModified = null;
+    private String digest = null;
+
+    /**
+     * Constructor that takes the cache key and the relative path of the file on disk
+     *
+     * @param key       the cache key (as generated by SAFileItem)
+     * @param filePath  the path of the file, relative to the app's files dir
+     */
+    public SAFileCacheEntry(String key, String filePath) {
+        this.key = key;
+        this.filePath = filePath;
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param other entry to copy
+     */
+    public SAFileCacheEntry(SAFileCacheEntry other) {
+        this.key = other.key;
+        this.filePath = other.filePath;
+        this.size = other.size;
+        this.createdAt = other.createdAt;
+        this.accessedAt = other.accessedAt;
+        this.validatedAt = other.validatedAt;
+        this.etag = other.etag;
+        this.lastModified = other.lastModified;
+        this.digest = other.digest;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public long getAccessedAt() {
+        return accessedAt;
+    }
+
+    public void setAccessedAt(long accessedAt) {
+        this.accessedAt = accessedAt;
+    }
+
+    public long getValidatedAt() {
+        return validatedAt;
+    }
+
+    public void setValidatedAt(long validatedAt) {
+        this.validatedAt = validatedAt;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+}
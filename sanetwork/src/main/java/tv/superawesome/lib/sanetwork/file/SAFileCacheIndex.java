@@ -0,0 +1,307 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps track of all the files the downloader has put on disk.
+ *
+ * It is backed by a small binary journal file: every change is appended as a single record
+ * (instead of rewriting the whole store, as SharedPreferences does) and the journal gets
+ * compacted into one record per live entry once enough stale records have piled up.
+ * The journal is read only once per process, when the index for a directory is first requested.
+ */
+public class SAFileCacheIndex {
+
+    // constants
+    static final String INDEX_FILE = "sacache.idx";
+    private static final int MAGIC = 0x53414349;
+    private static final int VERSION = 1;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int MIN_COMPACTION_RECORDS = 64;
+
+    // one index per directory, shared by all downloaders in the process
+    private static final Map<String, SAFileCacheIndex> indexes = new HashMap<>();
+
+    // private member variables
+    private final File file;
+    private final Map<String, SAFileCacheEntry> entries = new LinkedHashMap<>();
+    private DataOutputStream journal = null;
+    private int records = 0;
+
+    /**
+     * Get the shared index for a given directory, loading it from disk the first time
+     *
+     * @param directory the directory the index file lives in
+     * @return          the index instance for that directory
+     */
+    public static SAFileCacheIndex forDirectory(File directory) {
+        File file = new File(directory, INDEX_FILE);
+        synchronized (indexes) {
+            SAFileCacheIndex index = indexes.get(file.getAbsolutePath());
+            if (index == null) {
+                index = new SAFileCacheIndex(file);
+                indexes.put(file.getAbsolutePath(), index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Constructor that takes the journal file and reads it straight away
+     *
+     * @param file the journal file
+     */
+    SAFileCacheIndex(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Get a copy of the entry for a key
+     *
+     * @param key   the cache key
+     * @return      a copy of the entry or null if the key is not in the index
+     */
+    public synchronized SAFileCacheEntry get(String key) {
+        SAFileCacheEntry entry = entries.get(key);
+        return entry != null ? new SAFileCacheEntry(entry) : null;
+    }
+
+    /**
+     * @return a copy of all the entries in the index
+     */
+    public synchronized List<SAFileCacheEntry> getEntries() {
+        List<SAFileCacheEntry> result = new ArrayList<>();
+        for (SAFileCacheEntry entry : entries.values()) {
+            result.add(new SAFileCacheEntry(entry));
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of entries in the index
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Add or replace an entry and append it to the journal
+     *
+     * @param entry the entry to store
+     */
+    public synchronized void put(SAFileCacheEntry entry) {
+        SAFileCacheEntry copy = new SAFileCacheEntry(entry);
+        entries.put(copy.getKey(), copy);
+        append(OP_PUT, copy);
+    }
+
+    /**
+     * Mark an entry as just used, so that it's the last one to be evicted. This isn't written
+     * to the journal straight away, since it happens on every cache hit: it's saved with the
+     * next compaction.
+     *
+     * @param key   the cache key
+     * @param time  the time of use
+     */
+    public synchronized void touch(String key, long time) {
+        SAFileCacheEntry entry = entries.get(key);
+        if (entry != null) {
+            entry.setAccessedAt(time);
+        }
+    }
+
+    /**
+     * Remove an entry and append the removal to the journal
+     *
+     * @param key the cache key to remove
+     */
+    public synchronized void remove(String key) {
+        if (entries.remove(key) != null) {
+            append(OP_REMOVE, new SAFileCacheEntry(key, null));
+        }
+    }
+
+    /**
+     * Remove all entries, rewriting the journal only once
+     */
+    public synchronized void clear() {
+        entries.clear();
+        compact();
+    }
+
+    /**
+     * Rewrite the journal so that it only contains one record per live entry.
+     * The new journal is written to a temporary file that then replaces the old one, so a crash
+     * midway never leaves a half written index behind.
+     */
+    public synchronized void compact() {
+        closeJournal();
+
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (SAFileCacheEntry entry : entries.values()) {
+                writeRecord(out, OP_PUT, entry);
+            }
+            out.close();
+            out = null;
+
+            if (temp.renameTo(file)) {
+                records = entries.size();
+            } else {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            temp.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Read the journal and replay all of its records.
+     * A truncated last record (e.g. the process died while writing it) is dropped, as is a file
+     * with an unknown header; in both cases the journal is compacted straight away so that new
+     * records are never appended after unreadable data.
+     */
+    private void load() {
+        if (!file.exists()) return;
+
+        boolean isDamaged = false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                isDamaged = true;
+            } else {
+                while (true) {
+                    byte op;
+                    try {
+                        op = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    String key = in.readUTF();
+                    if (op == OP_PUT) {
+                        SAFileCacheEntry entry = readEntry(in, key);
+                        entries.put(key, entry);
+                    } else if (op == OP_REMOVE) {
+                        entries.remove(key);
+                    } else {
+                        isDamaged = true;
+                        break;
+                    }
+                    records++;
+                }
+            }
+        } catch (IOException e) {
+            isDamaged = true;
+        } finally {
+            close(in);
+        }
+
+        if (isDamaged || needsCompaction()) {
+            compact();
+        }
+    }
+
+    private void append(byte op, SAFileCacheEntry entry) {
+        try {
+            if (journal == null) {
+                boolean isNew = !file.exists() || file.length() == 0;
+                journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+                if (isNew) {
+                    journal.writeInt(MAGIC);
+                    journal.writeInt(VERSION);
+                }
+            }
+            writeRecord(journal, op, entry);
+            journal.flush();
+            records++;
+        } catch (IOException e) {
+            // the in-memory state is still correct, so rebuild the journal from it
+            compact();
+            return;
+        }
+
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    private boolean needsCompaction() {
+        return records > Math.max(MIN_COMPACTION_RECORDS, entries.size() * 2);
+    }
+
+    private void closeJournal() {
+        close(journal);
+        journal = null;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte op, SAFileCacheEntry entry) throws IOException {
+        out.writeByte(op);
+        out.writeUTF(entry.getKey());
+        if (op == OP_PUT) {
+            out.writeUTF(entry.getFilePath());
+            out.writeLong(entry.getSize());
+            out.writeLong(entry.getCreatedAt());
+            out.writeLong(entry.getAccessedAt());
+            out.writeLong(entry.getValidatedAt());
+            writeNullableUTF(out, entry.getEtag());
+            writeNullableUTF(out, entry.getLastModified());
+            writeNullableUTF(out, entry.getDigest());
+        }
+    }
+
+    private static SAFileCacheEntry readEntry(DataInputStream in, String key) throws IOException {
+        SAFileCacheEntry entry = new SAFileCacheEntry(key, in.readUTF());
+        entry.setSize(in.readLong());
+        entry.setCreatedAt(in.readLong());
+        entry.setAccessedAt(in.readLong());
+        entry.setValidatedAt(in.readLong());
+        entry.setEtag(readNullableUTF(in));
+        entry.setLastModified(readNullableUTF(in));
+        entry.setDigest(readNullableUTF(in));
+        return entry;
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            if (closeable != null) closeable.close();
+        } catch (IOException ignored) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class copies a network input stream into a file through its FileChannel, using buffers
+ * borrowed from a SAFileBufferPool.
+ *
+ * The buffer size can be fixed or adaptive: in the adaptive case the copier starts with a
+ * buffer sized after the Content-Length and doubles it (up to SAFileBufferPool.MAX_SIZE)
+ * whenever the stream keeps filling it completely, which is what happens on fast links.
+ */
+class SAFileCopier {
+
+    /**
+     * Interface used to observe every chunk that has been written to disk.
+     * Implementations may throw to stop the copy.
+     */
+    interface Listener {
+
+        /**
+         * Called after a chunk has been written
+         *
+         * @param data          the buffer holding the chunk
+         * @param offset        offset of the chunk in the buffer
+         * @param count         length of the chunk
+         * @param bytesWritten  total number of bytes written so far
+         * @throws IOException  to stop the copy
+         */
+        void didCopy(byte[] data, int offset, int count, long bytesWritten) throws IOException;
+    }
+
+    // constants
+    static final int ADAPTIVE = 0;
+    private static final int UNKNOWN_LENGTH_SIZE = 16 * 1024;
+    private static final int CHUNKS_PER_FILE = 64;
+    private static final int FULL_READS_BEFORE_GROWING = 8;
+
+    // private member variables
+    private final SAFileBufferPool pool;
+    private final int bufferSize;
+    private final boolean preallocate;
+
+    /**
+     * Constructor
+     *
+     * @param pool          the pool to borrow buffers from
+     * @param bufferSize    a fixed buffer size, or ADAPTIVE
+     * @param preallocate   whether to reserve Content-Length bytes on disk before copying
+     */
+    SAFileCopier(SAFileBufferPool pool, int bufferSize, boolean preallocate) {
+        this.pool = pool;
+        this.bufferSize = bufferSize;
+        this.preallocate = preallocate;
+    }
+
+    /**
+     * Copy a whole input stream into a file, replacing any content it had
+     *
+     * @param input         the stream to read from
+     * @param file          the file to write to, opened in "rw" mode
+     * @param contentLength the expected length, or a value <= 0 if unknown
+     * @param listener      an optional chunk listener
+     * @return              the number of bytes written
+     * @throws IOException  if reading, writing or the listener fail; write failures are
+     *                      thrown as SAFileDownloadException with a STORAGE error, or
+     *                      INSUFFICIENT_STORAGE if the disk is full
+     */
+    long copy(InputStream input, RandomAccessFile file, long contentLength, Listener listener) throws IOException {
+        return copy(input, file, 0, contentLength, listener);
+    }
+
+    /**
+     * Copy a whole input stream into a file, keeping the file's first bytes, e.g. to complete
+     * a download that was interrupted
+     *
+     * @param input         the stream to read from
+     * @param file          the file to write to, opened in "rw" mode
+     * @param offset        where in the file the stream's data goes
+     * @param contentLength the expected length of the stream, or a value <= 0 if unknown
+     * @param listener      an optional chunk listener, told about the total file length
+     * @return              the length of the file, i.e. offset plus the bytes written
+     * @throws IOException  if reading, writing or the listener fail; write failures are
+     *                      thrown as SAFileDownloadException with a STORAGE error, or
+     *                      INSUFFICIENT_STORAGE if the disk is full
+     */
+    long copy(InputStream input, RandomAccessFile file, long offset, long contentLength, Listener listener) throws IOException {
+        FileChannel channel = file.getChannel();
+
+        if (preallocate && contentLength > 0) {
+            try {
+                preallocate(file, offset + contentLength);
+            } catch (SAFileDownloadException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new SAFileDownloadException(storageErrorOf(e), e.getMessage());
+            }
+        }
+
+        boolean isAdaptive = bufferSize == ADAPTIVE;
+        ByteBuffer buffer = pool.acquire(isAdaptive ? initialSizeFor(contentLength) : bufferSize);
+        long total = offset;
+        int fullReads = 0;
+
+        try {
+            channel.position(offset);
+
+            int count;
+            while ((count = input.read(buffer.array(), 0, buffer.capacity())) != -1) {
+                if (count == 0) continue;
+
+                buffer.clear();
+                buffer.limit(count);
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } catch (IOException e) {
+                    throw new SAFileDownloadException(storageErrorOf(e), e.getMessage());
+                }
+                total += count;
+
+                if (listener != null) {
+                    listener.didCopy(buffer.array(), 0, count, total);
+                }
+
+                // grow the buffer when the stream can deliver more than it holds
+                if (isAdaptive && buffer.capacity() < SAFileBufferPool.MAX_SIZE) {
+                    fullReads = count == buffer.capacity() ? fullReads + 1 : 0;
+                    if (fullReads >= FULL_READS_BEFORE_GROWING) {
+                        pool.release(buffer);
+                        buffer = pool.acquire(buffer.capacity() * 2);
+                        fullReads = 0;
+                    }
+                }
+            }
+
+            // drop whatever was preallocated (or left from an older file) past the end
+            channel.truncate(total);
+        } catch (IOException e) {
+            // leave only what was written, so that the copy can be resumed later on
+            try {
+                channel.truncate(total);
+            } catch (IOException ignored) {
+                // ignore
+            }
+            throw e;
+        } finally {
+            pool.release(buffer);
+        }
+
+        return total;
+    }
+
+    /**
+     * Work out the first buffer size for an adaptive copy
+     *
+     * @param contentLength the expected length, or a value <= 0 if unknown
+     * @return              a buffer size
+     */
+    static int initialSizeFor(long contentLength) {
+        if (contentLength <= 0) return UNKNOWN_LENGTH_SIZE;
+        return SAFileBufferPool.capacityFor((int) Math.min(SAFileBufferPool.MAX_SIZE, contentLength / CHUNKS_PER_FILE));
+    }
+
+    /**
+     * Tell a full disk apart from other write failures
+     *
+     * @param e the write failure
+     * @return  INSUFFICIENT_STORAGE if the disk is full, STORAGE otherwise
+     */
+    static SAFileDownloadError storageErrorOf(IOException e) {
+        String message = e.getMessage();
+        boolean isFull = message != null && (message.contains("ENOSPC") || message.contains("No space left"));
+        return isFull ? SAFileDownloadError.INSUFFICIENT_STORAGE : SAFileDownloadError.STORAGE;
+    }
+
+    /**
+     * Reserve space for the whole file up front. On Lollipop and above the blocks are really
+     * allocated (so a full disk is detected before any byte is downloaded); on older versions
+     * this only sets the file's length.
+     */
+    private static void preallocate(RandomAccessFile file, long length) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                Os.posix_fallocate(file.getFD(), 0, length);
+                return;
+            } catch (ErrnoException e) {
+                // a full disk is a real error, anything else (e.g. an unsupported file system)
+                // just means falling back to setting the length
+                if (e.errno == OsConstants.ENOSPC) {
+                    throw new SAFileDownloadException(SAFileDownloadError.INSUFFICIENT_STORAGE, "Not enough space to preallocate " + length + " bytes");
+                }
+            } catch (RuntimeException e) {
+                // fall back to setting the length
+            }
+        }
+        file.setLength(length);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+/**
+ * This class projects when a download will finish from the rate observed so far, so that a
+ * download that clearly can't make its deadline is stopped early instead of wasting the rest
+ * of the transfer.
+ *
+ * No projection is made until the download has been going for a little while and has received
+ * a minimum number of bytes, since the first chunks (connection setup, TCP slow start) say
+ * little about the rate the rest of the file will arrive at.
+ */
+class SAFileDeadlineEstimator {
+
+    // constants
+    static final long MIN_ELAPSED = 500;
+    static final long MIN_BYTES = 32 * 1024;
+
+    // private member variables
+    private final long deadline;
+    private final long startTime;
+    private final long startBytes;
+
+    /**
+     * Constructor
+     *
+     * @param deadline      time (as in System.currentTimeMillis()) by which the download has
+     *                      to be complete, or SAFileDownloadOptions.NO_DEADLINE
+     * @param startTime     time at which the body started arriving
+     * @param startBytes    bytes already on disk when the body started arriving
+     */
+    SAFileDeadlineEstimator(long deadline, long startTime, long startBytes) {
+        this.deadline = deadline;
+        this.startTime = startTime;
+        this.startBytes = startBytes;
+    }
+
+    /**
+     * Check whether the download can still be complete by the deadline
+     *
+     * @param bytesWritten  bytes written so far
+     * @param totalBytes    total bytes, or a value <= 0 if unknown
+     * @param now           current time, in milliseconds
+     * @return              false if the deadline has passed or the projected completion time
+     *                      is after it
+     */
+    boolean canFinish(long bytesWritten, long totalBytes, long now) {
+        if (deadline == SAFileDownloadOptions.NO_DEADLINE) return true;
+        if (now > deadline) return false;
+
+        // with an unknown length there's no way to project anything
+        if (totalBytes <= 0) return true;
+
+        long elapsed = now - startTime;
+        long received = bytesWritten - startBytes;
+        if (elapsed < MIN_ELAPSED || received < MIN_BYTES) return true;
+
+        double bytesPerMilli = (double) received / elapsed;
+        long projected = now + (long) ((totalBytes - bytesWritten) / bytesPerMilli);
+        return projected <= deadline;
+    }
+}
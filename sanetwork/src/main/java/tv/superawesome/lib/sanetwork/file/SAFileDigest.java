@@ -0,0 +1,141 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * This class computes a file's checksum while it is being written, so that no second pass
+ * over the file is needed. Values are written as "algorithm:hex", e.g. "crc32:1c291ca3",
+ * which is also how they are stored in the cache index.
+ */
+public class SAFileDigest {
+
+    // constants
+    public static final String CRC32 = "crc32";
+    public static final String SHA256 = "sha256";
+
+    // private member variables
+    private final String algorithm;
+    private final CRC32 crc;
+    private final MessageDigest sha;
+    private String value = null;
+
+    /**
+     * Constructor
+     *
+     * @param algorithm CRC32 or SHA256
+     */
+    public SAFileDigest(String algorithm) {
+        if (SHA256.equals(algorithm)) {
+            this.algorithm = SHA256;
+            this.crc = null;
+            this.sha = newSha256();
+        } else {
+            this.algorithm = CRC32;
+            this.crc = new CRC32();
+            this.sha = null;
+        }
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Add a chunk of data to the digest
+     *
+     * @param data      the buffer
+     * @param offset    where the chunk starts
+     * @param count     length of the chunk
+     */
+    public void update(byte[] data, int offset, int count) {
+        if (crc != null) {
+            crc.update(data, offset, count);
+        } else {
+            sha.update(data, offset, count);
+        }
+    }
+
+    /**
+     * Finish the digest; no more data can be added after this
+     *
+     * @return the digest, as "algorithm:hex"
+     */
+    public String getValue() {
+        if (value == null) {
+            if (crc != null) {
+                String hex = Long.toHexString(crc.getValue());
+                while (hex.length() < 8) {
+                    hex = "0" + hex;
+                }
+                value = CRC32 + ":" + hex;
+            } else {
+                value = SHA256 + ":" + toHex(sha.digest());
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Get the algorithm part of a digest value
+     *
+     * @param value a value such as "sha256:..."
+     * @return      the algorithm, or null if the value is not valid
+     */
+    static String algorithmOf(String value) {
+        if (value == null) return null;
+        int colon = value.indexOf(':');
+        return colon > 0 ? value.substring(0, colon) : null;
+    }
+
+    /**
+     * Bring a digest value to the "algorithm:hex" form, lower casing the hex part.
+     * A bare 64 character hex string is taken to be a SHA-256.
+     *
+     * @param value a digest value
+     * @return      the normalized value, or null if it can't be understood
+     */
+    static String normalize(String value) {
+        if (value == null) return null;
+        String lower = value.trim().toLowerCase(Locale.US);
+        if (lower.indexOf(':') < 0 && lower.length() == 64) {
+            lower = SHA256 + ":" + lower;
+        }
+        String algorithm = algorithmOf(lower);
+        String hex = algorithm != null ? lower.substring(algorithm.length() + 1) : null;
+        if (CRC32.equals(algorithm) && isHex(hex, 8)) return lower;
+        if (SHA256.equals(algorithm) && isHex(hex, 64)) return lower;
+        return null;
+    }
+
+    private static boolean isHex(String value, int length) {
+        if (value == null || value.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Android version ships with SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+}
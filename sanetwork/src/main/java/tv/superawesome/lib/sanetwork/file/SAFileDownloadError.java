@@ -0,0 +1,28 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+/**
+ * The reasons why a file download can fail
+ */
+public enum SAFileDownloadError {
+    /** the URL could not be parsed */
+    INVALID_URL,
+    /** the connection failed or timed out */
+    NETWORK,
+    /** the server answered with an unexpected HTTP status code */
+    HTTP_STATUS,
+    /** fewer (or more) bytes than the Content-Length were received */
+    INCOMPLETE,
+    /** the file's digest didn't match the expected one */
+    DIGEST_MISMATCH,
+    /** the file could not be written to disk */
+    STORAGE,
+    /** there isn't enough free space on the device for the file, even after evicting cached files */
+    INSUFFICIENT_STORAGE,
+    /** the download was cancelled through its handle */
+    CANCELLED,
+    /** the download couldn't be complete before its deadline */
+    DEADLINE
+}
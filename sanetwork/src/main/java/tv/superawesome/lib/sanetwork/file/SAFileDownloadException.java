@@ -0,0 +1,33 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown while downloading a file, carrying the reason of the failure
+ */
+public class SAFileDownloadException extends IOException {
+
+    // constants
+    private static final long serialVersionUID = 1L;
+
+    // private member variables
+    private final SAFileDownloadError error;
+
+    /**
+     * Constructor
+     *
+     * @param error     the reason of the failure
+     * @param message   a human readable message
+     */
+    public SAFileDownloadException(SAFileDownloadError error, String message) {
+        super(message);
+        this.error = error;
+    }
+
+    public SAFileDownloadError getError() {
+        return error;
+    }
+}
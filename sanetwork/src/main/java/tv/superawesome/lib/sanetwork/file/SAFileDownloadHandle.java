@@ -0,0 +1,210 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.net.HttpURLConnection;
+
+/**
+ * This class is returned when starting a download and allows it to be controlled afterwards.
+ *
+ * Pausing or cancelling a running download closes its connection, so the worker thread is
+ * freed straight away. A paused download keeps what it has written so far and, once resumed,
+ * asks the server for the rest of the file only (falling back to the whole file if the server
+ * doesn't support ranges or the file changed in the meantime). A cancelled download deletes its
+ * partial data and reports a CANCELLED failure; a paused one doesn't notify its listener until
+ * it's resumed and finishes.
+ */
+public class SAFileDownloadHandle {
+
+    /**
+     * The states a download goes through
+     */
+    public enum State {
+        QUEUED,
+        RUNNING,
+        PAUSED,
+        CANCELLED,
+        COMPLETED,
+        FAILED
+    }
+
+    // private member variables
+    private final String url;
+    private State state = State.QUEUED;
+    private HttpURLConnection connection = null;
+    private Runnable resumeAction = null;
+    private Runnable cancelAction = null;
+    private String resumeValidator = null;
+    private SAProgressiveFile progressive = null;
+
+    /**
+     * Constructor
+     *
+     * @param url the URL being downloaded
+     */
+    SAFileDownloadHandle(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Stop the download for good. The listener gets called with a failure, and the error
+     * listener (if any) with a CANCELLED error. Does nothing if the download is already over.
+     */
+    public void cancel() {
+        boolean isRunning;
+        HttpURLConnection current;
+        Runnable action;
+
+        synchronized (this) {
+            if (isOver()) return;
+            isRunning = state == State.RUNNING;
+            state = State.CANCELLED;
+            current = connection;
+            action = cancelAction;
+        }
+
+        // a running download cleans up after itself once its connection is gone
+        if (isRunning) {
+            disconnect(current);
+        } else if (action != null) {
+            action.run();
+        }
+    }
+
+    /**
+     * Stop the download, keeping the part of the file that was already written so that it can
+     * be resumed later. Does nothing unless the download is queued or running.
+     */
+    public void pause() {
+        HttpURLConnection current;
+
+        synchronized (this) {
+            if (state != State.QUEUED && state != State.RUNNING) return;
+            state = State.PAUSED;
+            current = connection;
+        }
+
+        disconnect(current);
+    }
+
+    /**
+     * Queue a paused download again, to continue from where it stopped.
+     * Does nothing unless the download is paused.
+     */
+    public void resume() {
+        Runnable action;
+
+        synchronized (this) {
+            if (state != State.PAUSED) return;
+            state = State.QUEUED;
+            action = resumeAction;
+        }
+
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    synchronized SAProgressiveFile getProgressiveFile() {
+        return progressive;
+    }
+
+    synchronized void setProgressiveFile(SAProgressiveFile progressive) {
+        this.progressive = progressive;
+        if (progressive != null) {
+            progressive.setHandle(this);
+        }
+    }
+
+    synchronized void setResumeAction(Runnable resumeAction) {
+        this.resumeAction = resumeAction;
+    }
+
+    synchronized void setCancelAction(Runnable cancelAction) {
+        this.cancelAction = cancelAction;
+    }
+
+    /**
+     * Called by the task before doing any work
+     *
+     * @return true if the download should go ahead, false if it was paused or cancelled
+     */
+    synchronized boolean start() {
+        if (state != State.QUEUED) return false;
+        state = State.RUNNING;
+        return true;
+    }
+
+    /**
+     * Called by the task once it has a connection, so that it can be closed from other threads
+     *
+     * @param connection    the download's connection
+     * @return              true if the download should go ahead, false if it was paused or
+     *                      cancelled in the meantime
+     */
+    synchronized boolean attach(HttpURLConnection connection) {
+        this.connection = connection;
+        return state == State.RUNNING;
+    }
+
+    /**
+     * Called by the task when it stops, whatever the reason. A file that made it to disk
+     * counts as downloaded even if the download got paused or cancelled at the last moment.
+     *
+     * @param success whether the file was downloaded
+     */
+    synchronized void finish(boolean success) {
+        connection = null;
+        if (success) {
+            state = State.COMPLETED;
+        } else if (state == State.RUNNING || state == State.QUEUED) {
+            state = State.FAILED;
+        }
+    }
+
+    synchronized boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    synchronized boolean isPaused() {
+        return state == State.PAUSED;
+    }
+
+    synchronized boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    /**
+     * @return the ETag or Last-Modified of the partial data kept on disk, or null
+     */
+    synchronized String getResumeValidator() {
+        return resumeValidator;
+    }
+
+    synchronized void setResumeValidator(String resumeValidator) {
+        this.resumeValidator = resumeValidator;
+    }
+
+    private boolean isOver() {
+        return state == State.CANCELLED || state == State.COMPLETED || state == State.FAILED;
+    }
+
+    private static void disconnect(HttpURLConnection connection) {
+        if (connection != null) {
+            try {
+                connection.disconnect();
+            } catch (Exception ignored) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+/**
+ * This class groups all the optional settings for a single download; all setters return the
+ * same instance so that they can be chained.
+ */
+public class SAFileDownloadOptions {
+
+    // default values
+    private static final long DEFAULT_PROGRESS_INTERVAL = 250;
+    private static final int DEFAULT_PROGRESS_STEP = 1;
+    public static final long DEFAULT_MAX_AGE = 24 * 60 * 60 * 1000L;
+    public static final long NEVER_EXPIRES = Long.MAX_VALUE;
+    public static final long NO_DEADLINE = 0;
+
+    // private member variables
+    private SAFileDownloaderProgressInterface progressListener = null;
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private int progressStep = DEFAULT_PROGRESS_STEP;
+    private int bufferSize = SAFileCopier.ADAPTIVE;
+    private boolean preallocate = true;
+    private String expectedDigest = null;
+    private SAFileDownloaderErrorInterface errorListener = null;
+    private long maxAge = DEFAULT_MAX_AGE;
+    private long deadline = NO_DEADLINE;
+
+    /**
+     * Set a listener that will get notified of the download's progress
+     *
+     * @param progressListener  instance of SAFileDownloaderProgressInterface
+     * @return                  this instance
+     */
+    public SAFileDownloadOptions setProgressListener(SAFileDownloaderProgressInterface progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Set the minimum time between two progress updates
+     *
+     * @param progressInterval  time in milliseconds
+     * @return                  this instance
+     */
+    public SAFileDownloadOptions setProgressInterval(long progressInterval) {
+        this.progressInterval = Math.max(0, progressInterval);
+        return this;
+    }
+
+    /**
+     * Set the minimum percentage the download has to advance between two progress updates.
+     * This is ignored if the server doesn't send a Content-Length.
+     *
+     * @param progressStep  percentage, between 0 and 100
+     * @return              this instance
+     */
+    public SAFileDownloadOptions setProgressStep(int progressStep) {
+        this.progressStep = Math.max(0, Math.min(100, progressStep));
+        return this;
+    }
+
+    /**
+     * Set a fixed size for the buffer used to copy the file to disk. By default (or when
+     * passing 0) the size adapts to the file's length and to how fast data is arriving.
+     *
+     * @param bufferSize    size in bytes, rounded to a power of two between 4KB and 256KB
+     * @return              this instance
+     */
+    public SAFileDownloadOptions setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(SAFileCopier.ADAPTIVE, bufferSize);
+        return this;
+    }
+
+    /**
+     * Set whether the file should take up its whole Content-Length on disk before the
+     * download starts. This is on by default.
+     *
+     * @param preallocate   true or false
+     * @return              this instance
+     */
+    public SAFileDownloadOptions setPreallocate(boolean preallocate) {
+        this.preallocate = preallocate;
+        return this;
+    }
+
+    /**
+     * Set the digest the downloaded file is expected to have, e.g. as sent in the ad payload.
+     * The file's digest is computed while it's being written and the download fails with
+     * DIGEST_MISMATCH if it doesn't match. Without an expected digest, a CRC32 is computed.
+     *
+     * @param expectedDigest    "sha256:<hex>", "crc32:<hex>" or a bare SHA-256 hex string,
+     *                          or null to not check the digest
+     * @return                  this instance
+     * @throws IllegalArgumentException if the digest isn't in one of these forms, so that a
+     *                          typo never silently turns the check off
+     */
+    public SAFileDownloadOptions setExpectedDigest(String expectedDigest) {
+        String normalized = SAFileDigest.normalize(expectedDigest);
+        if (expectedDigest != null && normalized == null) {
+            throw new IllegalArgumentException("Unsupported digest " + expectedDigest);
+        }
+        this.expectedDigest = normalized;
+        return this;
+    }
+
+    /**
+     * Set a listener that will be told why a download failed
+     *
+     * @param errorListener instance of SAFileDownloaderErrorInterface
+     * @return              this instance
+     */
+    public SAFileDownloadOptions setErrorListener(SAFileDownloaderErrorInterface errorListener) {
+        this.errorListener = errorListener;
+        return this;
+    }
+
+    /**
+     * Set for how long a cached file is considered fresh after it was downloaded or last
+     * revalidated. Once that time has passed, the file is revalidated with the server using
+     * its ETag / Last-Modified (a 304 answer refreshes it without downloading the body), or
+     * downloaded again if the server sent neither.
+     *
+     * @param maxAge    time in milliseconds; 0 always revalidates and NEVER_EXPIRES never does
+     * @return          this instance
+     */
+    public SAFileDownloadOptions setMaxAge(long maxAge) {
+        this.maxAge = Math.max(0, maxAge);
+        return this;
+    }
+
+    /**
+     * Set the time by which the file has to be on disk, e.g. when the ad slot it's for
+     * expires. The download is stopped with a DEADLINE error as soon as the rate observed so
+     * far shows it won't be complete in time, so that a lighter creative can be used instead.
+     *
+     * @param deadline  time (as in System.currentTimeMillis()), or NO_DEADLINE
+     * @return          this instance
+     */
+    public SAFileDownloadOptions setDeadline(long deadline) {
+        this.deadline = Math.max(NO_DEADLINE, deadline);
+        return this;
+    }
+
+    /**
+     * @return a new instance with the same settings, that can be changed without affecting
+     *         this one
+     */
+    SAFileDownloadOptions copy() {
+        SAFileDownloadOptions copy = new SAFileDownloadOptions();
+        copy.progressListener = progressListener;
+        copy.progressInterval = progressInterval;
+        copy.progressStep = progressStep;
+        copy.bufferSize = bufferSize;
+        copy.preallocate = preallocate;
+        copy.expectedDigest = expectedDigest;
+        copy.errorListener = errorListener;
+        copy.maxAge = maxAge;
+        copy.deadline = deadline;
+        return copy;
+    }
+
+    public SAFileDownloaderProgressInterface getProgressListener() {
+        return progressListener;
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    public int getProgressStep() {
+        return progressStep;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isPreallocate() {
+        return preallocate;
+    }
+
+    public String getExpectedDigest() {
+        return expectedDigest;
+    }
+
+    public SAFileDownloaderErrorInterface getErrorListener() {
+        return errorListener;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,494 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import android.content.Context;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+
+import tv.superawesome.lib.sanetwork.request.SANetworkEstimator;
+import tv.superawesome.lib.sanetwork.request.SARequestTracker;
+import tv.superawesome.lib.sanetwork.request.SAThreadPool;
+
+/**
+ * This class holds the work needed to download a single file: open the connection, copy the
+ * body to a temporary ".part" file, move it in place once complete, add it to the cache index
+ * and notify whoever is listening.
+ *
+ * If a stale copy of the file is already cached, the request is made conditional on its
+ * validators, so that a 304 answer just refreshes the cache entry. The stale copy is also
+ * served if the server can't be reached at all.
+ *
+ * A download that gets paused keeps its ".part" file, and picks up from where it stopped
+ * with a Range request once it runs again.
+ *
+ * The body goes through a rate limiter and, if the downloader yields to requests, the copy
+ * pauses while SANetwork requests are in flight.
+ *
+ * A task dropped by SAThreadPool.shutdown() before it started fails with CANCELLED.
+ */
+class SAFileDownloadTask implements SAThreadPool.DroppableTask {
+
+    // constants
+    static final String PARTIAL_SUFFIX = ".part";
+    private static final long MAX_YIELD = 500;
+
+    // private member variables
+    private final SAFileDownloader downloader;
+    private final Context context;
+    private final int timeout;
+    private final SAFileItem item;
+    private final SAFileDownloadOptions options;
+    private final SAFileDownloaderInterface listener;
+    private final SAFileCacheEntry cached;
+    private final SARateLimiter limiter;
+    private final SAProgressiveFile progressive;
+    private final SAFileDownloadHandle handle;
+    private long pacedTime = 0;
+    private long received = 0;
+
+    // lets a throttled download stop waiting once it's paused or cancelled
+    private final SARateLimiter.StopSignal stopSignal = new SARateLimiter.StopSignal() {
+        @Override
+        public boolean isStopped() {
+            return !handle.isRunning();
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param downloader    the downloader that owns this task, used to dispatch callbacks
+     * @param context       the current context
+     * @param timeout       connection and read timeout
+     * @param item          the file item to download
+     * @param options       the download's options
+     * @param listener      the completion listener
+     * @param cached        the cache entry of a stale copy of the file, or null
+     * @param limiter       the rate limiter the body goes through
+     * @param progressive   an optional progressive file to keep up to date, or null
+     * @param handle        the handle the download is controlled through
+     */
+    SAFileDownloadTask(SAFileDownloader downloader,
+                       Context context,
+                       int timeout,
+                       SAFileItem item,
+                       SAFileDownloadOptions options,
+                       SAFileDownloaderInterface listener,
+                       SAFileCacheEntry cached,
+                       SARateLimiter limiter,
+                       SAProgressiveFile progressive,
+                       SAFileDownloadHandle handle) {
+        this.downloader = downloader;
+        this.context = context;
+        this.timeout = timeout;
+        this.item = item;
+        this.options = options;
+        this.listener = listener;
+        this.cached = cached;
+        this.limiter = limiter;
+        this.progressive = progressive;
+        this.handle = handle;
+    }
+
+    @Override
+    public void run() {
+
+        // paused or cancelled while queued
+        if (!handle.start()) return;
+
+        long startTime = System.currentTimeMillis();
+        received = 0;
+
+        // current success var (that's to be returned)
+        boolean success = true;
+        SAFileDownloadError error = null;
+
+        // create streams
+        InputStream input = null;
+        RandomAccessFile output = null;
+        HttpURLConnection connection = null;
+
+        // details to be saved in the cache index
+        long size = 0;
+        String etag = null;
+        String lastModified = null;
+        String digestValue = null;
+
+        File partialFile = null;
+
+        try {
+            if (!item.isValid()) {
+                throw new SAFileDownloadException(SAFileDownloadError.INVALID_URL, "Invalid URL");
+            }
+
+            // don't even connect if it's too late already
+            final long deadline = options.getDeadline();
+            if (deadline != SAFileDownloadOptions.NO_DEADLINE && System.currentTimeMillis() > deadline) {
+                throw new SAFileDownloadException(SAFileDownloadError.DEADLINE, "Deadline passed before starting");
+            }
+
+            // partial data left by a paused download is kept if the file didn't change since
+            partialFile = new File(context.getFilesDir(), item.getFilePath() + PARTIAL_SUFFIX);
+            String resumeValidator = handle.getResumeValidator();
+            long position = resumeValidator != null && partialFile.exists() ? partialFile.length() : 0;
+
+            // start a new Http connection)
+            connection = (HttpURLConnection) item.getUrl().openConnection();
+            int connectionTimeout = timeoutBefore(deadline);
+            connection.setReadTimeout(connectionTimeout);
+            connection.setConnectTimeout(connectionTimeout);
+
+            if (position > 0) {
+                // only ask for the missing bytes, or for the whole file if it has changed
+                connection.setRequestProperty("Range", "bytes=" + position + "-");
+                connection.setRequestProperty("If-Range", resumeValidator);
+            } else {
+                // only ask for the body if it changed since the cached copy was downloaded
+                if (cached != null && cached.getEtag() != null) {
+                    connection.setRequestProperty("If-None-Match", cached.getEtag());
+                }
+                if (cached != null && cached.getLastModified() != null) {
+                    connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+                }
+            }
+
+            if (!handle.attach(connection)) {
+                throw new SAFileDownloadException(SAFileDownloadError.CANCELLED, "Stopped before connecting");
+            }
+
+            long connectTime = System.currentTimeMillis();
+            connection.connect();
+
+            int statusCode = connection.getResponseCode();
+            SANetworkEstimator.getShared().addTimeToFirstByteSample(System.currentTimeMillis() - connectTime);
+
+            // the cached copy is still good
+            if (position == 0 && cached != null && statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                String newEtag = connection.getHeaderField("ETag");
+                String newLastModified = connection.getHeaderField("Last-Modified");
+                connection.disconnect();
+                revalidated(newEtag, newLastModified);
+                return;
+            }
+
+            if (position > 0 && statusCode == HttpURLConnection.HTTP_PARTIAL) {
+                String range = connection.getHeaderField("Content-Range");
+                if (range == null || !range.startsWith("bytes " + position + "-")) {
+                    throw new SAFileDownloadException(SAFileDownloadError.HTTP_STATUS, "Unexpected range " + range);
+                }
+            }
+            else if (statusCode == HttpURLConnection.HTTP_OK) {
+                // the whole file is coming
+                position = 0;
+            }
+            else {
+                throw new SAFileDownloadException(SAFileDownloadError.HTTP_STATUS, "Unexpected status code " + statusCode);
+            }
+
+            // keep the validators around, in case the download gets paused
+            etag = connection.getHeaderField("ETag");
+            lastModified = connection.getHeaderField("Last-Modified");
+            handle.setResumeValidator(validatorOf(etag, lastModified));
+
+            // make room for the file before downloading any of it
+            final long contentLength = connection.getContentLength();
+            if (!SAFileStorage.ensureSpace(context.getFilesDir(), contentLength, downloader.getMinFreeSpace())) {
+                throw new SAFileDownloadException(SAFileDownloadError.INSUFFICIENT_STORAGE, "Not enough space for " + contentLength + " bytes");
+            }
+
+            // get input stream and start writing to disk
+            input = connection.getInputStream();
+            partialFile.getParentFile().mkdirs();
+            output = new RandomAccessFile(partialFile, "rw");
+
+            final long file_size = contentLength > 0 ? position + contentLength : -1;
+
+            // starting over replaces whatever was made available before the download paused
+            if (progressive != null) {
+                progressive.start(partialFile, file_size);
+                progressive.advance(position);
+            }
+
+            // progress is only ever worked out if someone is listening for it
+            final SAFileDownloaderProgressInterface progressListener = options.getProgressListener();
+            final SAFileProgressThrottle throttle = new SAFileProgressThrottle(options.getProgressInterval(), options.getProgressStep());
+
+            // the digest is computed on the fly, using the expected digest's algorithm if any
+            String expectedDigest = options.getExpectedDigest();
+            final SAFileDigest digest = new SAFileDigest(SAFileDigest.algorithmOf(expectedDigest));
+            final long copyTime = System.currentTimeMillis();
+            final SAFileDeadlineEstimator estimator = new SAFileDeadlineEstimator(deadline, copyTime, position);
+            pacedTime = 0;
+            final long startPosition = position;
+            if (position > 0) {
+                digestExisting(output, position, digest);
+            }
+
+            // start the file download operation
+            SAFileCopier copier = new SAFileCopier(SAFileBufferPool.getShared(), options.getBufferSize(), options.isPreallocate());
+            long total = copier.copy(input, output, position, contentLength, new SAFileCopier.Listener() {
+                @Override
+                public void didCopy(byte[] data, int offset, int count, long bytesWritten) throws IOException {
+                    if (!handle.isRunning()) {
+                        throw new SAFileDownloadException(SAFileDownloadError.CANCELLED, "Stopped");
+                    }
+                    if (!estimator.canFinish(bytesWritten, file_size, System.currentTimeMillis())) {
+                        throw new SAFileDownloadException(SAFileDownloadError.DEADLINE, "Can't be complete by the deadline");
+                    }
+                    received = bytesWritten - startPosition;
+                    digest.update(data, offset, count);
+                    if (progressive != null) {
+                        progressive.advance(bytesWritten);
+                    }
+                    if (progressListener != null && throttle.shouldReport(bytesWritten, file_size, System.currentTimeMillis())) {
+                        downloader.sendProgress(progressListener, item.getKey(), bytesWritten, file_size);
+                    }
+                    pace(count);
+                }
+            });
+
+            // time spent throttled or yielding says nothing about the link
+            SANetworkEstimator.getShared().addThroughputSample(total - position, System.currentTimeMillis() - copyTime - pacedTime);
+
+            // without a known size, the throttle can't tell which update is the last one
+            if (progressListener != null && file_size <= 0) {
+                downloader.sendProgress(progressListener, item.getKey(), total, file_size);
+            }
+
+            // check the file is complete and is the expected one
+            if (file_size > 0 && total != file_size) {
+                throw new SAFileDownloadException(SAFileDownloadError.INCOMPLETE, "Received " + total + " of " + file_size + " bytes");
+            }
+            digestValue = digest.getValue();
+            if (expectedDigest != null && !expectedDigest.equals(digestValue)) {
+                throw new SAFileDownloadException(SAFileDownloadError.DIGEST_MISMATCH, "Expected " + expectedDigest + " but got " + digestValue);
+            }
+
+            size = total;
+
+        } catch (SAFileDownloadException e) {
+            success = false;
+            error = e.getError();
+        } catch (Exception e) {
+            success = false;
+            // the timeouts get shortened to the deadline, so a timeout may really be a missed deadline
+            long deadline = options.getDeadline();
+            error = deadline != SAFileDownloadOptions.NO_DEADLINE && System.currentTimeMillis() >= deadline ? SAFileDownloadError.DEADLINE : SAFileDownloadError.NETWORK;
+        }
+
+        // try to close the whole connection
+        try {
+            if (output != null) output.close();
+            if (input != null) input.close();
+        } catch (IOException ignored) {
+            // ignore
+        }
+
+        // disconnect
+        if (connection != null) connection.disconnect();
+
+        // cancelling closes the connection, which mustn't pass for a network error
+        if (!success && handle.isCancelled()) {
+            error = SAFileDownloadError.CANCELLED;
+        }
+
+        // move the complete file in place, so that it's never seen half written
+        File file = null;
+        if (success) {
+            file = new File(context.getFilesDir(), item.getFilePath());
+            SAFileAssetCache.forDirectory(context.getFilesDir()).invalidate(item.getKey());
+            success = partialFile.renameTo(file);
+            if (!success) {
+                error = SAFileDownloadError.STORAGE;
+            }
+        }
+
+        handle.finish(success);
+
+        if (success) {
+
+            // add the file to the cache index
+            long now = System.currentTimeMillis();
+            SAFileCacheEntry entry = new SAFileCacheEntry(item.getKey(), item.getFilePath());
+            entry.setSize(size);
+            entry.setCreatedAt(now);
+            entry.setAccessedAt(now);
+            entry.setValidatedAt(now);
+            entry.setEtag(etag);
+            entry.setLastModified(lastModified);
+            entry.setDigest(digestValue);
+            SAFileCacheIndex.forDirectory(context.getFilesDir()).put(entry);
+
+            if (progressive != null) {
+                progressive.complete(file, size);
+            }
+
+            SAFileStatsRecorder.getShared().recordDownload(received, System.currentTimeMillis() - startTime);
+
+            // send back
+            downloader.sendBack(listener, true, item.getKey(), item.getFilePath());
+        }
+        else if (handle.isPaused()) {
+            // keep the partial data and don't tell anyone, the download isn't over
+        }
+        else if (cached != null && error == SAFileDownloadError.NETWORK && new File(context.getFilesDir(), item.getFilePath()).exists()) {
+
+            if (partialFile != null) {
+                partialFile.delete();
+            }
+
+            // better a stale copy than nothing while offline, but not to a reader who has
+            // already read some of the new one
+            file = new File(context.getFilesDir(), item.getFilePath());
+            if (progressive != null) {
+                progressive.replace(file, file.length());
+            }
+            SAFileStatsRecorder.getShared().recordStaleServed(file.length());
+            downloader.sendBack(listener, true, item.getKey(), item.getFilePath());
+        }
+        else {
+            if (partialFile != null) {
+                partialFile.delete();
+            }
+            failed(error);
+        }
+    }
+
+    /**
+     * Fail a download that was still queued when SAThreadPool got shut down, unless it had
+     * been paused or cancelled already
+     */
+    @Override
+    public void onDropped() {
+        if (!handle.start()) return;
+        handle.finish(false);
+        failed(SAFileDownloadError.CANCELLED);
+    }
+
+    /**
+     * Tell everyone the download failed
+     *
+     * @param error the reason
+     */
+    private void failed(SAFileDownloadError error) {
+        if (progressive != null) {
+            progressive.fail();
+        }
+
+        SAFileStatsRecorder.getShared().recordFailure(error, received);
+
+        if (options.getErrorListener() != null) {
+            downloader.sendError(options.getErrorListener(), item.getUrl() != null ? item.getUrl().toString() : null, error);
+        }
+
+        downloader.sendBack(listener, false, null, null);
+    }
+
+    /**
+     * Refresh the cached copy's entry after the server answered 304 Not Modified, and hand
+     * the copy over as if it had just been downloaded
+     *
+     * @param etag          the ETag sent with the 304, if any
+     * @param lastModified  the Last-Modified sent with the 304, if any
+     */
+    private void revalidated(String etag, String lastModified) {
+        SAFileCacheEntry entry = new SAFileCacheEntry(cached);
+        long now = System.currentTimeMillis();
+        entry.setAccessedAt(now);
+        entry.setValidatedAt(now);
+        if (etag != null) entry.setEtag(etag);
+        if (lastModified != null) entry.setLastModified(lastModified);
+        SAFileCacheIndex.forDirectory(context.getFilesDir()).put(entry);
+
+        handle.finish(true);
+        SAFileStatsRecorder.getShared().recordRevalidation(entry.getSize());
+
+        // a download that got paused may already have made part of another copy available
+        if (progressive != null) {
+            progressive.replace(new File(context.getFilesDir(), item.getFilePath()), entry.getSize());
+        }
+
+        downloader.sendBack(listener, true, item.getKey(), item.getFilePath());
+    }
+
+    /**
+     * Slow the copy down before reading the next chunk: step aside for a while if requests are
+     * in flight, then wait for the rate limiter to let the last chunk's bytes through
+     *
+     * @param count the size of the last chunk
+     * @throws InterruptedIOException if the thread gets interrupted while waiting
+     */
+    private void pace(int count) throws InterruptedIOException {
+        long start = System.currentTimeMillis();
+        try {
+            if (downloader.isYieldingToRequests()) {
+                SARequestTracker.awaitIdle(MAX_YIELD);
+            }
+            limiter.acquire(count, stopSignal);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            // kept apart so that it doesn't count as time spent transferring
+            pacedTime += System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * Feed the partial data already on disk to the digest, before the rest gets downloaded
+     *
+     * @param file      the partial file
+     * @param length    the number of bytes to read
+     * @param digest    the digest to update
+     * @throws IOException if the file can't be read
+     */
+    private static void digestExisting(RandomAccessFile file, long length, SAFileDigest digest) throws IOException {
+        SAFileBufferPool pool = SAFileBufferPool.getShared();
+        ByteBuffer buffer = pool.acquire(SAFileCopier.initialSizeFor(length));
+        try {
+            file.seek(0);
+            long remaining = length;
+            while (remaining > 0) {
+                int count = file.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), remaining));
+                if (count == -1) throw new EOFException();
+                digest.update(buffer.array(), 0, count);
+                remaining -= count;
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Shorten the connection's timeouts if the deadline is closer than them
+     *
+     * @param deadline  the download's deadline, or NO_DEADLINE
+     * @return          a timeout, in milliseconds
+     */
+    private int timeoutBefore(long deadline) {
+        if (deadline == SAFileDownloadOptions.NO_DEADLINE) return timeout;
+        long remaining = deadline - System.currentTimeMillis();
+        return (int) Math.max(1, Math.min(timeout, remaining));
+    }
+
+    /**
+     * Pick the validator to resume a download with. Weak ETags can't be used with If-Range.
+     *
+     * @param etag          the response's ETag, or null
+     * @param lastModified  the response's Last-Modified, or null
+     * @return              a validator, or null if the download can't be resumed
+     */
+    private static String validatorOf(String etag, String lastModified) {
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return lastModified;
+    }
+}
@@ -11,12 +11,13 @@ import android.os.Looper;
 import android.util.Log;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+
+import tv.superawesome.lib.sanetwork.future.SAFuture;
+import tv.superawesome.lib.sanetwork.request.SAThreadPool;
 
 /**
  * This class abstracts away the details of downloading files through a queue.
@@ -25,35 +26,59 @@ import java.util.concurrent.Executors;
  *
  * This is very useful when downloading large video files off the network, for example.
  *
+ * None of the public methods touch the disk on the calling thread: cache lookups happen on a
+ * separate lookup executor, which loads the cache index into memory as soon as the downloader
+ * is created, so they never wait behind a running download.
  */
 public class SAFileDownloader {
 
     // constants
-    private static final String PREFERENCES = "MyPreferences";
+    private static final String LEGACY_PREFERENCES = "MyPreferences";
+    private static final String LEGACY_KEY_PREFIX = "sasdkkey_";
+    private static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    private static final long MEMORY_PRESSURE_PAUSE = 30 * 1000;
+    private static final long LOW_STORAGE_CACHE_SIZE = 32 * 1024 * 1024;
 
     // Executor
     private Context context = null;
     private int timeout = 15000;
     private boolean isDebug = false;
     private Executor executor = null;
+    private Executor lookups = null;
+    private SAFileScheduler scheduler = null;
+    private volatile File filesDir = null;
+    private final SARateLimiter onDemandLimiter = new SARateLimiter(SARateLimiter.UNLIMITED);
+    private final SARateLimiter prefetchLimiter = new SARateLimiter(SARateLimiter.UNLIMITED);
+    private volatile boolean isYieldingToRequests = true;
+    private volatile long minFreeSpace = SAFileStorage.DEFAULT_MIN_FREE_SPACE;
+    private SAFileDownloaderStatsInterface statsListener = null;
 
     /**
-     * Classic constructor
+     * Classic constructor; on-demand downloads run one after another on the shared
+     * SAThreadPool's download lane, prefetches on its prefetch lane and cache lookups on its
+     * request lane
      */
     public SAFileDownloader(Context context) {
         this.context = context;
-        executor = Executors.newSingleThreadExecutor();
+        SAThreadPool pool = SAThreadPool.getShared();
+        executor = pool.newSerialExecutor(pool.getDownloadExecutor());
+        lookups = pool.newSerialExecutor(pool.getRequestExecutor());
+        scheduler = new SAFileScheduler(executor, pool.getPrefetchExecutor(), SAFileScheduler.DEFAULT_MAX_CONCURRENT_PREFETCHES);
+        preloadIndex();
     }
 
     /**
      * Other singleton, with an executor passes as param
-     * @param executor executor to override
+     * @param executor executor to override, also used for cache lookups
      */
     public SAFileDownloader(Context context, Executor executor, boolean isDebug, int timeout) {
         this.context = context;
         this.executor = executor;
         this.isDebug = isDebug;
         this.timeout = timeout;
+        this.lookups = executor;
+        this.scheduler = new SAFileScheduler(executor, SAFileScheduler.DEFAULT_MAX_CONCURRENT_PREFETCHES);
+        preloadIndex();
     }
 
     /**
@@ -64,130 +89,604 @@ public class SAFileDownloader {
      * @param url       The remote URL from where to get a certain file
      * @param listener1 instance of the SAFileDownloaderInterface interface, which acts as a
      *                  callback to the main thread for this method
+     * @return          a handle to pause, resume or cancel the download, or null if the
+     *                  context is not valid
+     */
+    public SAFileDownloadHandle downloadFileFrom(final String url, SAFileDownloaderInterface listener1) {
+        return downloadFileFrom(url, null, listener1);
+    }
+
+    /**
+     * Same as the method above, but with a set of extra options for this download, such as
+     * a progress listener
+     *
+     * @param url       The remote URL from where to get a certain file
+     * @param options1  instance of SAFileDownloadOptions, or null for the default options
+     * @param listener1 instance of the SAFileDownloaderInterface interface, which acts as a
+     *                  callback to the main thread for this method
+     * @return          a handle to pause, resume or cancel the download, or null if the
+     *                  context is not valid
+     */
+    public SAFileDownloadHandle downloadFileFrom(final String url, SAFileDownloadOptions options1, SAFileDownloaderInterface listener1) {
+        return download(url, options1, listener1, false);
+    }
+
+    /**
+     * Same as downloadFileFrom, but returns a future instead of taking a listener, so that the
+     * download can be chained and combined with other operations (e.g. wait for all of an
+     * ad's assets with SAFuture.all)
+     *
+     * @param url       The remote URL from where to get a certain file
+     * @return          a future that succeeds with the file's path, relative to the app's files
+     *                  dir, or fails with a SAFileDownloadException
+     */
+    public SAFuture<String> fetchFile(String url) {
+        return fetchFile(url, null);
+    }
+
+    /**
+     * Same as the method above, but with a set of extra options for this download
+     *
+     * @param url       The remote URL from where to get a certain file
+     * @param options1  instance of SAFileDownloadOptions, or null for the default options
+     * @return          a future that succeeds with the file's path, relative to the app's files
+     *                  dir, or fails with a SAFileDownloadException
+     */
+    public SAFuture<String> fetchFile(final String url, SAFileDownloadOptions options1) {
+
+        final SAFuture<String> future = new SAFuture<>();
+
+        // listen for the reason of a failure without changing the caller's options
+        final SAFileDownloadOptions options = options1 != null ? options1.copy() : new SAFileDownloadOptions();
+        final SAFileDownloaderErrorInterface errorListener = options.getErrorListener();
+        final SAFileDownloadError[] cause = { null };
+        options.setErrorListener(new SAFileDownloaderErrorInterface() {
+            @Override
+            public void saDidFailToDownloadFile(String url, SAFileDownloadError error) {
+                cause[0] = error;
+                if (errorListener != null) {
+                    errorListener.saDidFailToDownloadFile(url, error);
+                }
+            }
+        });
+
+        if (context == null) {
+            future.fail(new SAFileDownloadException(SAFileDownloadError.STORAGE, "No context to download " + url + " with"));
+            return future;
+        }
+
+        downloadFileFrom(url, options, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean success, String key, String filePath) {
+                if (success) {
+                    future.complete(filePath);
+                } else {
+                    SAFileDownloadError error = cause[0] != null ? cause[0] : SAFileDownloadError.NETWORK;
+                    future.fail(new SAFileDownloadException(error, "Could not download " + url));
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * This method starts downloading a file just like downloadFileFrom, but also returns a
+     * SAProgressiveFile straight away, so that the file can be read while it's still being
+     * downloaded (e.g. to start playing a video once its first seconds have arrived).
+     * The options' progress listener, if any, gets notified every time the available range
+     * grows.
+     *
+     * @param url       The remote URL from where to get a certain file
+     * @param options1  instance of SAFileDownloadOptions, or null for the default options
+     * @param listener1 instance of the SAFileDownloaderInterface interface, which acts as a
+     *                  callback to the main thread for this method
+     * @return          a progressive file, or null if the URL or the context are not valid;
+     *                  its handle can pause, resume or cancel the download
+     */
+    public SAProgressiveFile downloadProgressively(final String url, SAFileDownloadOptions options1, SAFileDownloaderInterface listener1) {
+        SAFileDownloadHandle handle = download(url, options1, listener1, true);
+        return handle != null ? handle.getProgressiveFile() : null;
+    }
+
+    /**
+     * This method queues a list of files to be downloaded ahead of time, e.g. the assets of ads
+     * that are likely to be shown soon. Prefetches are ordered by priority and deadline, only
+     * start while no downloadFileFrom request is pending, and run at most
+     * setMaxConcurrentPrefetches() at a time. Files whose deadline passes before they start
+     * are reported as failed. Requesting a queued file with downloadFileFrom downloads it
+     * straight away and notifies both listeners.
+     *
+     * @param requests  a list of SAPrefetchRequest objects
+     * @param listener1 instance of the SAFileDownloaderInterface interface, called once for
+     *                  each file
+     * @return          a group that can be used to cancel all the prefetches at once
      */
-    public void downloadFileFrom(final String url, SAFileDownloaderInterface listener1) {
+    public SAPrefetchGroup prefetch(List<SAPrefetchRequest> requests, SAFileDownloaderInterface listener1) {
 
         // get a local copy of the listener
         final SAFileDownloaderInterface listener = listener1 != null ? listener1 : new SAFileDownloaderInterface() {@Override public void saDidDownloadFile(boolean success, String key, String filePath) {}};
 
+        final SAPrefetchGroup group = new SAPrefetchGroup(scheduler);
+
+        if (requests == null) {
+            return group;
+        }
+
         // check for null context
         if (context == null) {
-            listener.saDidDownloadFile(false, null, null);
-            return;
+            for (int i = 0; i < requests.size(); i++) {
+                listener.saDidDownloadFile(false, null, null);
+            }
+            return group;
         }
 
-        final SAFileItem currentItem = new SAFileItem(url);
+        final List<SAPrefetchRequest> batch = new ArrayList<>(requests);
 
-        try {
-            File file = new File(context.getFilesDir(), currentItem.getFileName());
+        lookups.execute(new SAThreadPool.DroppableTask() {
+            @Override
+            public void run() {
+                for (SAPrefetchRequest request : batch) {
+                    lookupPrefetch(request, group, listener);
+                }
 
-            if (file.exists()) {
-                sendBack(listener, true, currentItem.getKey(), currentItem.getFilePath());
-                return;
+                // and start the most urgent ones
+                scheduler.pump();
             }
-        } catch (Exception e) {
-            // do nothing
+
+            @Override
+            public void onDropped() {
+                for (int i = 0; i < batch.size(); i++) {
+                    sendBack(listener, false, null, null);
+                }
+            }
+        });
+
+        return group;
+    }
+
+    /**
+     * Set how many prefetches can be downloading at the same time. Prefetches run on threads
+     * of their own, so they never hold up downloadFileFrom; the shared SAThreadPool runs at
+     * most four at once across all downloaders.
+     *
+     * @param maxConcurrentPrefetches a number greater or equal to 0 (which pauses prefetching)
+     */
+    public void setMaxConcurrentPrefetches(int maxConcurrentPrefetches) {
+        scheduler.setMaxConcurrentPrefetches(maxConcurrentPrefetches);
+    }
+
+    /**
+     * Get read access to the content of a downloaded file, without opening or reading the
+     * file again if it has been read recently. Must not be called on the main thread.
+     *
+     * @param key   the key the file was downloaded under
+     * @return      an asset that must be released once done, or null if the file is not cached
+     */
+    public SAFileAsset openAsset(String key) {
+        if (context == null || key == null) return null;
+        return SAFileAssetCache.forDirectory(getFilesDir()).open(key);
+    }
+
+    /**
+     * @return a snapshot of the cache statistics, shared by all downloaders in the process
+     */
+    public SAFileDownloaderStats getStats() {
+        return SAFileStatsRecorder.getShared().snapshot();
+    }
+
+    /**
+     * Set a listener that gets a new snapshot of the cache statistics, on the main thread,
+     * every time a request is answered or files are removed from the cache
+     *
+     * @param listener1 instance of SAFileDownloaderStatsInterface, or null to stop listening
+     */
+    public synchronized void setStatsListener(final SAFileDownloaderStatsInterface listener1) {
+        if (statsListener != null) {
+            SAFileStatsRecorder.getShared().removeListener(statsListener);
+            statsListener = null;
+        }
+        if (listener1 != null) {
+            statsListener = new SAFileDownloaderStatsInterface() {
+                @Override
+                public void saDidUpdateStats(final SAFileDownloaderStats stats) {
+                    dispatch(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener1.saDidUpdateStats(stats);
+                        }
+                    });
+                }
+            };
+            SAFileStatsRecorder.getShared().addListener(statsListener);
+        }
+    }
+
+    /**
+     * Start counting the cache statistics from zero again
+     */
+    public void resetStats() {
+        SAFileStatsRecorder.getShared().reset();
+    }
+
+    /**
+     * Limit the bandwidth used by downloadFileFrom and downloadProgressively. Downloads that
+     * are already running slow down or speed up straight away.
+     *
+     * @param bytesPerSecond    the maximum rate, or SARateLimiter.UNLIMITED (the default)
+     */
+    public void setOnDemandBandwidth(long bytesPerSecond) {
+        onDemandLimiter.setRate(bytesPerSecond);
+    }
+
+    /**
+     * Limit the bandwidth used by prefetches, shared by all the prefetches that are running
+     *
+     * @param bytesPerSecond    the maximum rate, or SARateLimiter.UNLIMITED (the default)
+     */
+    public void setPrefetchBandwidth(long bytesPerSecond) {
+        prefetchLimiter.setRate(bytesPerSecond);
+    }
+
+    /**
+     * Set whether downloads pause while SANetwork requests are waiting for an answer, so that
+     * ad requests never compete with a large file for bandwidth. This is on by default.
+     *
+     * @param isYieldingToRequests  true or false
+     */
+    public void setYieldingToRequests(boolean isYieldingToRequests) {
+        this.isYieldingToRequests = isYieldingToRequests;
+    }
+
+    boolean isYieldingToRequests() {
+        return isYieldingToRequests;
+    }
+
+    /**
+     * Set how much space has to be left free on the device once a file is written. Downloads
+     * that don't fit evict the least recently used cached files and, if that's not enough,
+     * fail with INSUFFICIENT_STORAGE before a single byte is downloaded.
+     *
+     * @param minFreeSpace  space in bytes, 8MB by default
+     */
+    public void setMinFreeSpace(long minFreeSpace) {
+        this.minFreeSpace = Math.max(0, minFreeSpace);
+    }
+
+    long getMinFreeSpace() {
+        return minFreeSpace;
+    }
+
+    /**
+     * Let the downloader react to memory pressure; to be called from the app's
+     * ComponentCallbacks2.onTrimMemory. The in-memory file cache and the pooled copy buffers
+     * are always released, and prefetches are paused for a while from TRIM_MEMORY_RUNNING_LOW
+     * upwards.
+     *
+     * @param level the level passed to onTrimMemory
+     */
+    public void onTrimMemory(int level) {
+        SAFileBufferPool.getShared().clear();
+        if (context != null) {
+            SAFileAssetCache.forDirectory(getFilesDir()).trimMemory();
+        }
+
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            scheduler.pauseUntil(System.currentTimeMillis() + MEMORY_PRESSURE_PAUSE);
+            try {
+                new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        scheduler.pump();
+                    }
+                }, MEMORY_PRESSURE_PAUSE);
+            } catch (Exception e) {
+                // the next download will start the queued prefetches
+            }
+        }
+    }
+
+    /**
+     * Let the downloader react to the device running out of storage; to be called when the
+     * app receives ACTION_DEVICE_STORAGE_LOW and ACTION_DEVICE_STORAGE_OK. While storage is
+     * low, prefetches are paused and the file cache is trimmed down.
+     *
+     * @param isLowStorage  true while the device is low on storage
+     */
+    public void setLowStorage(boolean isLowStorage) {
+        scheduler.setPaused(isLowStorage);
+        if (!isLowStorage || context == null) return;
+
+        lookups.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SAFileStorage.trimTo(getFilesDir(), LOW_STORAGE_CACHE_SIZE);
+                } catch (Exception e) {
+                    // nothing else to free
+                }
+            }
+        });
+    }
+
+    private SAFileDownloadHandle download(final String url, SAFileDownloadOptions options1, SAFileDownloaderInterface listener1, boolean isProgressive) {
+
+        // get a local copy of the listener
+        final SAFileDownloaderInterface listener = listener1 != null ? listener1 : new SAFileDownloaderInterface() {@Override public void saDidDownloadFile(boolean success, String key, String filePath) {}};
+
+        // and of the options
+        final SAFileDownloadOptions options = options1 != null ? options1 : new SAFileDownloadOptions();
+
+        // check for null context
+        if (context == null) {
+            listener.saDidDownloadFile(false, null, null);
+            return null;
         }
 
-        executor.execute(new Runnable() {
+        final SAFileItem currentItem = new SAFileItem(url);
+
+        final SAProgressiveFile progressive = isProgressive && currentItem.isValid() ? new SAProgressiveFile(currentItem.getKey(), currentItem.getFilePath()) : null;
+
+        final SAFileDownloadHandle handle = new SAFileDownloadHandle(url);
+        handle.setProgressiveFile(progressive);
+        handle.setCancelAction(cancelAction(currentItem, options, listener, progressive));
+
+        lookups.execute(new SAThreadPool.DroppableTask() {
             @Override
             public void run() {
+                lookup(currentItem, options, listener, progressive, handle);
+            }
+
+            @Override
+            public void onDropped() {
+                new SAFileDownloadTask(SAFileDownloader.this, context, timeout, currentItem, options, listener, null, onDemandLimiter, progressive, handle).onDropped();
+            }
+        });
 
-                // current success var (that's to be returned)
-                boolean success = true;
+        return handle;
+    }
 
-                // create streams
-                InputStream input = null;
-                OutputStream output = null;
-                HttpURLConnection connection = null;
+    /**
+     * Serve a file from the cache if it's there and fresh, or schedule its download otherwise.
+     * Runs on the lookup executor.
+     */
+    private void lookup(SAFileItem item, SAFileDownloadOptions options, SAFileDownloaderInterface listener, SAProgressiveFile progressive, SAFileDownloadHandle handle) {
 
-                try {
-                    // start a new Http connection)
-                    connection = (HttpURLConnection) currentItem.getUrl().openConnection();
-                    connection.setReadTimeout(timeout);
-                    connection.setConnectTimeout(timeout);
-                    connection.connect();
+        // the listener has already been told
+        if (handle.isCancelled()) return;
+
+        SAFileCacheEntry cached = getCachedEntry(item, options.getExpectedDigest());
+
+        if (cached != null && isFresh(cached, options.getMaxAge())) {
+            SAFileCacheIndex.forDirectory(getFilesDir()).touch(cached.getKey(), System.currentTimeMillis());
+            SAFileStatsRecorder.getShared().recordHit(cached.getSize());
+            handle.finish(true);
+            if (progressive != null) {
+                progressive.complete(new File(getFilesDir(), item.getFilePath()), cached.getSize());
+            }
+            sendBack(listener, true, item.getKey(), item.getFilePath());
+            return;
+        }
 
-                    int statusCode = connection.getResponseCode();
+        // take over any prefetch that's still queued for the same file
+        if (item.isValid()) {
+            List<SAFileDownloaderInterface> promoted = scheduler.promote(item.getKey());
+            if (!promoted.isEmpty()) {
+                promoted.add(0, listener);
+                listener = combine(promoted);
+                handle.setCancelAction(cancelAction(item, options, listener, progressive));
+            }
+        }
 
-                    // exception code != 200
-                    if (statusCode != HttpURLConnection.HTTP_OK) return;
+        SAFileStatsRecorder.getShared().recordMiss();
 
-                    // get input stream and start writing to disk
-                    input = connection.getInputStream();
-                    output = context.openFileOutput(currentItem.getFilePath(), Context.MODE_PRIVATE);
+        final SAFileDownloadTask task = new SAFileDownloadTask(this, context, timeout, item, options, listener, cached, onDemandLimiter, progressive, handle);
 
-                    int file_size = connection.getContentLength();
+        handle.setResumeAction(new Runnable() {
+            @Override
+            public void run() {
+                scheduler.schedule(task);
+            }
+        });
 
-                    // start the file download operation
-                    byte data[] = new byte[4096];
-                    long total = 0;
-                    int count;
-                    while ((count = input.read(data)) != -1) {
-                        total += count;
-                        int percent = (int) ((total / (float) file_size) * 100);
+        scheduler.schedule(task);
+    }
 
-                        if (!isDebug && (percent % 25 == 0)) {
-                            Log.d("SuperAwesome", "Have written " +  percent + "% of file");
+    /**
+     * Build what happens when a download gets cancelled while it's not running: its partial
+     * data (if it had been paused) gets deleted on the lookup executor and everyone is told
+     */
+    private Runnable cancelAction(final SAFileItem item, final SAFileDownloadOptions options, final SAFileDownloaderInterface listener, final SAProgressiveFile progressive) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                lookups.execute(new SAThreadPool.DroppableTask() {
+                    @Override
+                    public void run() {
+                        if (item.isValid()) {
+                            new File(getFilesDir(), item.getFilePath() + SAFileDownloadTask.PARTIAL_SUFFIX).delete();
                         }
+                        notifyCancelled();
+                    }
 
-                        // actually write the data to the disk
-                        output.write(data, 0, count);
+                    @Override
+                    public void onDropped() {
+                        notifyCancelled();
                     }
 
-                } catch (Exception e) {
-                    success = false;
-                }
+                    private void notifyCancelled() {
+                        if (progressive != null) {
+                            progressive.fail();
+                        }
+                        SAFileStatsRecorder.getShared().recordFailure(SAFileDownloadError.CANCELLED, 0);
+                        if (options.getErrorListener() != null) {
+                            sendError(options.getErrorListener(), item.getUrl() != null ? item.getUrl().toString() : null, SAFileDownloadError.CANCELLED);
+                        }
+                        sendBack(listener, false, null, null);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Same as the method above, for a prefetch that gets queued instead of scheduled
+     */
+    private void lookupPrefetch(SAPrefetchRequest request, SAPrefetchGroup group, final SAFileDownloaderInterface listener) {
+
+        if (request == null) {
+            sendBack(listener, false, null, null);
+            return;
+        }
+
+        SAFileItem item = new SAFileItem(request.getUrl());
+
+        if (!item.isValid()) {
+            sendBack(listener, false, null, null);
+            return;
+        }
+
+        SAFileDownloadOptions options = new SAFileDownloadOptions().setDeadline(request.getDeadline());
+        SAFileCacheEntry cached = getCachedEntry(item, null);
+
+        if (cached != null && isFresh(cached, options.getMaxAge())) {
+            SAFileCacheIndex.forDirectory(getFilesDir()).touch(cached.getKey(), System.currentTimeMillis());
+            SAFileStatsRecorder.getShared().recordHit(cached.getSize());
+            sendBack(listener, true, item.getKey(), item.getFilePath());
+            return;
+        }
 
-                // try to close the whole connection
+        SAFileStatsRecorder.getShared().recordMiss();
+
+        SAFileDownloadHandle handle = new SAFileDownloadHandle(request.getUrl());
+        group.add(handle);
+        SAFileDownloadTask task = new SAFileDownloadTask(this, context, timeout, item, options, listener, cached, prefetchLimiter, null, handle);
+
+        scheduler.schedulePrefetch(item.getKey(), request, group, task, listener, new Runnable() {
+            @Override
+            public void run() {
+                sendBack(listener, false, null, null);
+            }
+        });
+    }
+
+    /**
+     * Load the cache index into memory on the lookup executor, so that it's ready by the
+     * time the first file gets requested
+     */
+    private void preloadIndex() {
+        if (context == null) return;
+
+        lookups.execute(new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    if (output != null) output.close();
-                    if (input != null) input.close();
-                } catch (IOException ignored) {
-                    // ignore
+                    SAFileCacheIndex.forDirectory(getFilesDir());
+                } catch (Exception e) {
+                    // the first lookup will try again
                 }
+            }
+        });
+    }
+
+    /**
+     * @return the app's files dir, only asked to the context once since it may touch the disk
+     */
+    private File getFilesDir() {
+        if (filesDir == null) {
+            filesDir = context.getFilesDir();
+        }
+        return filesDir;
+    }
 
-                // disconnect
-                if (connection != null) connection.disconnect();
+    /**
+     * Get the cache entry of a file that is on disk and can be trusted: it has to be in the
+     * cache index, have the size recorded there and, if the caller expects a digest, match it.
+     * The digest was computed while downloading, so the file itself is never re-read.
+     * Whether the entry is still fresh is up to the caller.
+     *
+     * @param item              the file item
+     * @param expectedDigest    the expected digest, or null
+     * @return                  the cache entry, or null if the file has to be downloaded
+     */
+    private SAFileCacheEntry getCachedEntry (SAFileItem item, String expectedDigest) {
+        try {
+            SAFileCacheEntry entry = SAFileCacheIndex.forDirectory(getFilesDir()).get(item.getKey());
+            if (entry == null) return null;
 
-                if (success) {
+            if (expectedDigest != null && !expectedDigest.equals(entry.getDigest())) return null;
 
-                    // put data in the editor
-                    SharedPreferences preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
-                    preferences.edit().putString(currentItem.getKey(), currentItem.getFilePath()).commit();
+            File file = new File(getFilesDir(), item.getFilePath());
+            return file.exists() && file.length() == entry.getSize() ? entry : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 
-                    // send back
-                    sendBack(listener, true, currentItem.getKey(), currentItem.getFilePath());
+    /**
+     * Check if a cache entry was downloaded or revalidated recently enough to be used as is
+     *
+     * @param entry     the cache entry
+     * @param maxAge    the freshness lifetime, in milliseconds
+     * @return          true if the entry doesn't need revalidating
+     */
+    private static boolean isFresh (SAFileCacheEntry entry, long maxAge) {
+        long age = System.currentTimeMillis() - entry.getValidatedAt();
+        return maxAge == SAFileDownloadOptions.NEVER_EXPIRES || (age >= 0 && age < maxAge);
+    }
+
+    private static SAFileDownloaderInterface combine (final List<SAFileDownloaderInterface> listeners) {
+        return new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean success, String key, String filePath) {
+                for (SAFileDownloaderInterface listener : listeners) {
+                    listener.saDidDownloadFile(success, key, filePath);
                 }
-                else {
-                    sendBack(listener, false, null, null);
+            }
+        };
+    }
+
+    void sendBack (final SAFileDownloaderInterface listener, final boolean success, final String key, final String diskUrl) {
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) {
+                    listener.saDidDownloadFile(success, key, diskUrl);
                 }
             }
         });
     }
 
-    private void sendBack (final SAFileDownloaderInterface listener, final boolean success, final String key, final String diskUrl) {
+    void sendError (final SAFileDownloaderErrorInterface listener, final String url, final SAFileDownloadError error) {
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                listener.saDidFailToDownloadFile(url, error);
+            }
+        });
+    }
+
+    void sendProgress (final SAFileDownloaderProgressInterface listener, final String key, final long bytesWritten, final long totalBytes) {
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                listener.saDidUpdateProgress(key, bytesWritten, totalBytes);
+            }
+        });
+    }
+
+    private void dispatch (Runnable callback) {
         /**
          * And try to return it on the main thread
          */
         try {
-            new Handler(Looper.getMainLooper()).post(new Runnable() {
-                @Override
-                public void run() {
-                    if (listener != null) {
-                        listener.saDidDownloadFile(success, key, diskUrl);
-                    }
-                }
-            });
+            new Handler(Looper.getMainLooper()).post(callback);
         }
         /**
          * If the Main Looper is not present, as in a testing environment, still
          * return the callback, but on the same thread.
          */
         catch (Exception e) {
-            if (listener != null) {
-                listener.saDidDownloadFile(success, key, diskUrl);
-            }
+            callback.run();
         }
     }
 
@@ -204,36 +703,63 @@ public class SAFileDownloader {
             return;
         }
 
-        // get current preferences
-        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        // get the current cache index
+        SAFileCacheIndex index = SAFileCacheIndex.forDirectory(context.getFilesDir());
 
-        // run through the whole key set and try to delete existing files
-        for (String key : preferences.getAll().keySet()) {
-            try {
+        // run through all the entries and try to delete existing files
+        int evictions = 0;
+        for (SAFileCacheEntry entry : index.getEntries()) {
+            File file = new File(context.getFilesDir(), entry.getFilePath());
+            if (file.exists()) {
+                boolean hasBeenDeleted = file.delete();
+                Log.d("SuperAwesome", "Have deleted " + entry.getFilePath() + " ==> " + hasBeenDeleted);
+                if (hasBeenDeleted) evictions++;
+            }
+        }
+        SAFileStatsRecorder.getShared().recordEvictions(evictions);
 
-                // get the current filename
-                String filename = preferences.getString(key, null);
-
-                // and if it exists, delete it
-                if (filename != null) {
-                    String fullPath = context.getFilesDir() + "/" + filename;
-                    File file = new File(context.getFilesDir(), filename);
-                    boolean hasBeenDeleted = false;
-                    if (file.exists()) {
-                        hasBeenDeleted = file.delete();
-                        Log.d("SuperAwesome", "Have deleted " + filename + " ==> " + hasBeenDeleted);
-                    }
+        // and empty the index in one go
+        index.clear();
+        SAFileAssetCache.forDirectory(context.getFilesDir()).invalidateAll();
 
-                    // remove the key from the shared preferences as well
-                    preferences.edit().remove(key).commit();
-                }
+        // finally remove any files still tracked the old way, in the shared preferences
+        cleanupLegacyPreferences(context);
+    }
 
-            } catch (ClassCastException e) {
-                // do nothing
+    /**
+     * Older versions of the library used to keep track of downloaded files in the
+     * "MyPreferences" shared preferences. This method deletes those files and only removes
+     * the library's own keys, committing just once.
+     *
+     * @param context the current context (activity or fragment)
+     */
+    private static void cleanupLegacyPreferences (Context context) {
+
+        SharedPreferences preferences = context.getSharedPreferences(LEGACY_PREFERENCES, Context.MODE_PRIVATE);
+        if (preferences == null) {
+            return;
+        }
+
+        SharedPreferences.Editor editor = null;
+
+        for (Map.Entry<String, ?> pair : preferences.getAll().entrySet()) {
+            if (!pair.getKey().startsWith(LEGACY_KEY_PREFIX) || !(pair.getValue() instanceof String)) {
+                continue;
+            }
+
+            File file = new File(context.getFilesDir(), (String) pair.getValue());
+            if (file.exists()) {
+                file.delete();
+            }
+
+            if (editor == null) {
+                editor = preferences.edit();
             }
+            editor.remove(pair.getKey());
         }
 
-        // apply
-        preferences.edit().commit();
+        if (editor != null) {
+            editor.commit();
+        }
     }
 }
@@ -0,0 +1,19 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+/**
+ * This interface is used by the file downloader to tell the main thread why a download failed,
+ * on top of the SAFileDownloaderInterface callback.
+ */
+public interface SAFileDownloaderErrorInterface {
+
+    /**
+     * Called right before SAFileDownloaderInterface reports a failed download
+     *
+     * @param url   the URL of the file that could not be downloaded
+     * @param error the reason of the failure
+     */
+    void saDidFailToDownloadFile(String url, SAFileDownloadError error);
+}
@@ -0,0 +1,21 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+/**
+ * This interface is used by the file downloader to signal to the main thread how much of a
+ * file has been downloaded so far.
+ */
+public interface SAFileDownloaderProgressInterface {
+
+    /**
+     * The interface's only method - called a limited number of times while a file is being
+     * written to disk, and once more when the whole file has been written
+     *
+     * @param key           the key the file will be saved under
+     * @param bytesWritten  the number of bytes written to disk so far
+     * @param totalBytes    the total size of the file, or -1 if the server didn't send it
+     */
+    void saDidUpdateProgress(String key, long bytesWritten, long totalBytes);
+}
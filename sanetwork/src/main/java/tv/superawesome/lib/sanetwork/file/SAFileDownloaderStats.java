@@ -0,0 +1,158 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * This class is a snapshot of how the downloader's cache has performed since the process
+ * started (or since the statistics were last reset).
+ *
+ * Download durations are counted in a fixed histogram: bucket i holds the downloads that took
+ * less than getDurationBuckets()[i] milliseconds (and at least the previous bound), and the last
+ * bucket holds all the downloads that took longer than the last bound.
+ */
+public class SAFileDownloaderStats {
+
+    // constants
+    private static final long[] DURATION_BUCKETS = {100, 250, 500, 1000, 2500, 5000, 10000};
+
+    // private member variables
+    private final long hits;
+    private final long misses;
+    private final long revalidations;
+    private final long staleServed;
+    private final long bytesDownloaded;
+    private final long bytesFromCache;
+    private final long evictions;
+    private final Map<SAFileDownloadError, Long> failures;
+    private final long[] durations;
+
+    SAFileDownloaderStats(long hits,
+                          long misses,
+                          long revalidations,
+                          long staleServed,
+                          long bytesDownloaded,
+                          long bytesFromCache,
+                          long evictions,
+                          EnumMap<SAFileDownloadError, Long> failures,
+                          long[] durations) {
+        this.hits = hits;
+        this.misses = misses;
+        this.revalidations = revalidations;
+        this.staleServed = staleServed;
+        this.bytesDownloaded = bytesDownloaded;
+        this.bytesFromCache = bytesFromCache;
+        this.evictions = evictions;
+        this.failures = Collections.unmodifiableMap(new EnumMap<>(failures));
+        this.durations = Arrays.copyOf(durations, durations.length);
+    }
+
+    /**
+     * @return the number of requests answered straight from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of requests that had to go to the network
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of misses the server answered with 304 Not Modified
+     */
+    public long getRevalidations() {
+        return revalidations;
+    }
+
+    /**
+     * @return the number of misses answered with a stale copy because the network failed
+     */
+    public long getStaleServed() {
+        return staleServed;
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    /**
+     * @return the size of all the files handed out from the cache, including revalidated
+     *         and stale copies
+     */
+    public long getBytesFromCache() {
+        return bytesFromCache;
+    }
+
+    /**
+     * @return the number of files removed from the cache
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of failed downloads, by cause
+     */
+    public Map<SAFileDownloadError, Long> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @param error a failure cause
+     * @return      the number of downloads that failed for that cause
+     */
+    public long getFailures(SAFileDownloadError error) {
+        Long count = failures.get(error);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * @return a copy of the upper bounds of the duration histogram's buckets, in milliseconds
+     */
+    public static long[] getDurationBuckets() {
+        return Arrays.copyOf(DURATION_BUCKETS, DURATION_BUCKETS.length);
+    }
+
+    /**
+     * @return the number of buckets of the duration histogram
+     */
+    static int getDurationBucketCount() {
+        return DURATION_BUCKETS.length + 1;
+    }
+
+    /**
+     * @param duration  a download duration, in milliseconds
+     * @return          the index of the histogram bucket it falls in
+     */
+    static int bucketOf(long duration) {
+        for (int i = 0; i < DURATION_BUCKETS.length; i++) {
+            if (duration < DURATION_BUCKETS[i]) return i;
+        }
+        return DURATION_BUCKETS.length;
+    }
+
+    /**
+     * @return a copy of the download duration histogram, with getDurationBuckets().length + 1
+     *         buckets
+     */
+    public long[] getDurations() {
+        return Arrays.copyOf(durations, durations.length);
+    }
+
+    /**
+     * @return the share of requests answered without downloading the body, between 0 and 1
+     */
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) (hits + revalidations + staleServed) / total;
+    }
+}
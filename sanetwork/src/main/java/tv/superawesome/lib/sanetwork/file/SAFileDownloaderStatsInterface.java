@@ -0,0 +1,18 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+/**
+ * This interface is used by the file downloader to signal to the main thread that its cache
+ * statistics have changed.
+ */
+public interface SAFileDownloaderStatsInterface {
+
+    /**
+     * Called every time a request has been answered, from the cache or the network
+     *
+     * @param stats a snapshot of the statistics
+     */
+    void saDidUpdateStats(SAFileDownloaderStats stats);
+}
@@ -6,6 +6,8 @@ package tv.superawesome.lib.sanetwork.file;
 
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Locale;
 
 /**
  * This class represents a single File Item - an object that tries to group two pieces of
@@ -14,11 +16,22 @@ import java.net.URL;
  *  - all the possible 3rd parties that would be interested in knowing if the file has been
  *  downloaded (by using a List of SAFileDownloaderInterfaces to keep a track of who needs to be
  *  notified)
+ *
+ * File names are derived from a 64 bit hash of the normalized URL (keeping the original
+ * extension, so that players can still recognize the file type), so that two URLs that only
+ * differ in host, path or query never end up in the same file. Files are spread over
+ * CACHE_DIR in SHARD_LENGTH hex character subdirectories, to keep directory lookups fast
+ * when thousands of files are cached.
  */
 public class SAFileItem {
 
     // private constants
     private static final String SA_KEY_PREFIX = "sasdkkey_";
+    static final String CACHE_DIR = "sacache";
+    private static final int SHARD_LENGTH = 2;
+    private static final int MAX_EXTENSION_LENGTH = 5;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
 
     // private member functions
     private URL    url = null;
@@ -43,7 +56,7 @@ public class SAFileItem {
         try {
             this.url = new URL(url);
             fileName = fileNameOf(url);
-            filePath = fileName;
+            filePath = filePathOf(fileName);
             key = getKeyForDiskName(fileName);
         } catch (Exception e) {
             // do nothing
@@ -69,16 +82,96 @@ public class SAFileItem {
         return SA_KEY_PREFIX + "_" + diskName;
     }
 
+    /**
+     * Get the file name for an URL, as the hex hash of the normalized URL followed by the
+     * original extension (if there is one)
+     *
+     * @param url   a remote resource URL
+     * @return      a file name or null if the URL can't be parsed
+     */
     private String fileNameOf (String url) {
         try {
             URI uri = new URI(url);
-            String[] segments = uri.getPath().split("/");
-            return segments[segments.length-1];
+            String path = uri.getPath();
+            if (path == null || uri.getHost() == null) return null;
+
+            String[] segments = path.split("/");
+            String lastSegment = segments.length > 0 ? segments[segments.length - 1] : "";
+            String hash = hashOf(normalize(uri));
+
+            String extension = extensionOf(lastSegment);
+            return extension != null ? hash + "." + extension : hash;
         } catch (Exception e) {
             return null;
         }
     }
 
+    /**
+     * Get the path of a file, relative to the app's files dir, inside its shard directory
+     *
+     * @param fileName  a hashed file name
+     * @return          the relative path or null if there's no file name
+     */
+    private String filePathOf (String fileName) {
+        if (fileName == null) return null;
+        return CACHE_DIR + "/" + fileName.substring(0, SHARD_LENGTH) + "/" + fileName;
+    }
+
+    /**
+     * Normalize an URL so that equivalent ways of writing it map to the same file: the scheme
+     * and host are lower cased, default ports and fragments are dropped, while the path and the
+     * query are kept as they are.
+     *
+     * @param uri   the parsed URL
+     * @return      the normalized URL
+     */
+    static String normalize (URI uri) {
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.US) : "";
+        String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.US) : "";
+        int port = uri.getPort();
+        if ((scheme.equals("http") && port == 80) || (scheme.equals("https") && port == 443)) {
+            port = -1;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(scheme).append("://").append(host);
+        if (port != -1) builder.append(':').append(port);
+        builder.append(uri.getRawPath() != null && uri.getRawPath().length() > 0 ? uri.getRawPath() : "/");
+        if (uri.getRawQuery() != null) builder.append('?').append(uri.getRawQuery());
+        return builder.toString();
+    }
+
+    /**
+     * 64 bit FNV-1a hash of a string's UTF-8 bytes, as 16 hex characters
+     *
+     * @param value the string to hash
+     * @return      the hex hash
+     */
+    static String hashOf (String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(Charset.forName("UTF-8"))) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        String hex = Long.toHexString(hash);
+        while (hex.length() < 16) {
+            hex = "0" + hex;
+        }
+        return hex;
+    }
+
+    private static String extensionOf (String segment) {
+        int dot = segment.lastIndexOf('.');
+        if (dot < 0 || dot == segment.length() - 1) return null;
+
+        String extension = segment.substring(dot + 1).toLowerCase(Locale.US);
+        if (extension.length() > MAX_EXTENSION_LENGTH) return null;
+        for (int i = 0; i < extension.length(); i++) {
+            if (!Character.isLetterOrDigit(extension.charAt(i))) return null;
+        }
+        return extension;
+    }
+
     public URL getUrl() {
         return url;
     }
@@ -0,0 +1,55 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+/**
+ * This class decides when a download's progress is worth reporting, so that the copy loop
+ * doesn't flood the main thread with one update per chunk. An update is only let through once
+ * both the minimum interval has passed and the download has advanced by the minimum
+ * percentage step since the last reported update.
+ */
+class SAFileProgressThrottle {
+
+    // private member variables
+    private final long interval;
+    private final int step;
+    private long lastTime = -1;
+    private long lastPercent = -1;
+
+    /**
+     * Constructor
+     *
+     * @param interval  minimum time between two updates, in milliseconds
+     * @param step      minimum percentage between two updates
+     */
+    SAFileProgressThrottle(long interval, int step) {
+        this.interval = interval;
+        this.step = step;
+    }
+
+    /**
+     * Check if a progress update should be reported and, if so, remember it as the last one
+     *
+     * @param bytesWritten  bytes written so far
+     * @param totalBytes    total bytes, or a value <= 0 if unknown
+     * @param now           current time, in milliseconds
+     * @return              true if the update should be reported
+     */
+    boolean shouldReport(long bytesWritten, long totalBytes, long now) {
+        long percent = totalBytes > 0 ? (bytesWritten * 100) / totalBytes : -1;
+
+        // the first and the last update always get through
+        boolean isFirst = lastTime < 0;
+        boolean isLast = percent >= 100 && lastPercent < 100;
+
+        if (!isFirst && !isLast) {
+            if (now - lastTime < interval) return false;
+            if (percent >= 0 && percent - lastPercent < step) return false;
+        }
+
+        lastTime = now;
+        lastPercent = percent;
+        return true;
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+
+import tv.superawesome.lib.sanetwork.request.SAThreadPool;
+
+/**
+ * This class decides when downloads get handed to the downloader's executors.
+ *
+ * On-demand downloads are executed straight away, on an executor of their own, so that they
+ * never wait behind a prefetch that's already running. Prefetches wait in a priority queue
+ * and are only started while no on-demand download is pending, and never more than a fixed
+ * number at a time, so that speculative work never delays a file that's needed now.
+ * Prefetches can also be paused while the device is low on memory or storage.
+ */
+class SAFileScheduler {
+
+    // constants
+    static final int DEFAULT_MAX_CONCURRENT_PREFETCHES = 1;
+
+    /**
+     * A queued prefetch
+     */
+    private static class Prefetch implements Comparable<Prefetch> {
+
+        final String key;
+        final SAPrefetchRequest request;
+        final SAPrefetchGroup group;
+        final Runnable task;
+        final SAFileDownloaderInterface listener;
+        final Runnable onExpired;
+        final long sequence;
+
+        Prefetch(String key, SAPrefetchRequest request, SAPrefetchGroup group, Runnable task, SAFileDownloaderInterface listener, Runnable onExpired, long sequence) {
+            this.key = key;
+            this.request = request;
+            this.group = group;
+            this.task = task;
+            this.listener = listener;
+            this.onExpired = onExpired;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Higher priority first, then earliest deadline, then first come first served
+         */
+        @Override
+        public int compareTo(Prefetch other) {
+            if (request.getPriority() != other.request.getPriority()) {
+                return request.getPriority() > other.request.getPriority() ? -1 : 1;
+            }
+            long deadline = request.getDeadline() == SAPrefetchRequest.NO_DEADLINE ? Long.MAX_VALUE : request.getDeadline();
+            long otherDeadline = other.request.getDeadline() == SAPrefetchRequest.NO_DEADLINE ? Long.MAX_VALUE : other.request.getDeadline();
+            if (deadline != otherDeadline) {
+                return deadline < otherDeadline ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    // private member variables
+    private final Executor executor;
+    private final Executor prefetchExecutor;
+    private final PriorityQueue<Prefetch> prefetches = new PriorityQueue<>();
+    private int maxConcurrentPrefetches;
+    private int pendingOnDemand = 0;
+    private int runningPrefetches = 0;
+    private long sequence = 0;
+    private boolean isPaused = false;
+    private long pausedUntil = 0;
+
+    /**
+     * Constructor
+     *
+     * @param executor                  the executor all downloads run on
+     * @param maxConcurrentPrefetches   how many prefetches can run at the same time
+     */
+    SAFileScheduler(Executor executor, int maxConcurrentPrefetches) {
+        this(executor, executor, maxConcurrentPrefetches);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param executor                  the executor on-demand downloads run on
+     * @param prefetchExecutor          the executor prefetches run on, which should have
+     *                                  enough threads to run maxConcurrentPrefetches at once
+     * @param maxConcurrentPrefetches   how many prefetches can run at the same time
+     */
+    SAFileScheduler(Executor executor, Executor prefetchExecutor, int maxConcurrentPrefetches) {
+        this.executor = executor;
+        this.prefetchExecutor = prefetchExecutor;
+        this.maxConcurrentPrefetches = maxConcurrentPrefetches;
+    }
+
+    /**
+     * Run an on-demand download as soon as possible
+     *
+     * @param task the download to run
+     */
+    void schedule(final Runnable task) {
+        synchronized (this) {
+            pendingOnDemand++;
+        }
+        executor.execute(new SAThreadPool.DroppableTask() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    didFinishOnDemand();
+                }
+            }
+
+            @Override
+            public void onDropped() {
+                try {
+                    SAThreadPool.drop(task);
+                } finally {
+                    didFinishOnDemand();
+                }
+            }
+        });
+    }
+
+    private void didFinishOnDemand() {
+        synchronized (this) {
+            pendingOnDemand--;
+        }
+        pump();
+    }
+
+    /**
+     * Queue a prefetch, to be run once there's nothing more urgent to do. Nothing is started
+     * until pump() gets called, so that a whole batch can be queued (and ordered) first.
+     *
+     * @param key       the cache key of the file
+     * @param request   the prefetch request
+     * @param group     the group the prefetch belongs to
+     * @param task      the download to run
+     * @param listener  the listener of the download, handed over if the file gets requested
+     *                  on demand while still queued
+     * @param onExpired run instead of the task if the request's deadline passes while queued
+     */
+    void schedulePrefetch(String key, SAPrefetchRequest request, SAPrefetchGroup group, Runnable task, SAFileDownloaderInterface listener, Runnable onExpired) {
+        synchronized (this) {
+            prefetches.add(new Prefetch(key, request, group, task, listener, onExpired, sequence++));
+        }
+    }
+
+    /**
+     * Remove a queued prefetch for a file that has just been requested on demand
+     *
+     * @param key   the cache key of the file
+     * @return      the listeners of the removed prefetches, so they can be notified when the
+     *              on-demand download finishes
+     */
+    synchronized List<SAFileDownloaderInterface> promote(String key) {
+        List<SAFileDownloaderInterface> listeners = new ArrayList<>();
+        Iterator<Prefetch> iterator = prefetches.iterator();
+        while (iterator.hasNext()) {
+            Prefetch prefetch = iterator.next();
+            if (prefetch.key.equals(key)) {
+                iterator.remove();
+                if (!prefetch.group.isCancelled()) {
+                    listeners.add(prefetch.listener);
+                }
+            }
+        }
+        return listeners;
+    }
+
+    /**
+     * Drop all the queued prefetches of a group
+     *
+     * @param group the group to cancel
+     */
+    synchronized void cancel(SAPrefetchGroup group) {
+        Iterator<Prefetch> iterator = prefetches.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().group == group) {
+                iterator.remove();
+            }
+        }
+    }
+
+    void setMaxConcurrentPrefetches(int maxConcurrentPrefetches) {
+        synchronized (this) {
+            this.maxConcurrentPrefetches = Math.max(0, maxConcurrentPrefetches);
+        }
+        pump();
+    }
+
+    /**
+     * Stop starting prefetches, e.g. while the device is low on storage; the ones already
+     * running carry on
+     *
+     * @param isPaused  true to pause, false to resume
+     */
+    void setPaused(boolean isPaused) {
+        synchronized (this) {
+            this.isPaused = isPaused;
+        }
+        pump();
+    }
+
+    /**
+     * Stop starting prefetches for a while, e.g. when the system is low on memory
+     *
+     * @param time  the time (as in System.currentTimeMillis()) until which not to start any
+     */
+    synchronized void pauseUntil(long time) {
+        pausedUntil = Math.max(pausedUntil, time);
+    }
+
+    synchronized boolean isPaused() {
+        return isPaused || System.currentTimeMillis() < pausedUntil;
+    }
+
+    synchronized int getQueuedPrefetches() {
+        return prefetches.size();
+    }
+
+    synchronized int getRunningPrefetches() {
+        return runningPrefetches;
+    }
+
+    /**
+     * Start as many queued prefetches as currently allowed
+     */
+    void pump() {
+        while (true) {
+            final Prefetch next;
+            boolean isExpired;
+
+            synchronized (this) {
+                if (pendingOnDemand > 0 || runningPrefetches >= maxConcurrentPrefetches) return;
+                if (isPaused || System.currentTimeMillis() < pausedUntil) return;
+
+                next = prefetches.poll();
+                if (next == null) return;
+
+                isExpired = next.request.isExpired(System.currentTimeMillis());
+                if (!isExpired) {
+                    runningPrefetches++;
+                }
+            }
+
+            if (isExpired) {
+                next.onExpired.run();
+                continue;
+            }
+
+            prefetchExecutor.execute(new SAThreadPool.DroppableTask() {
+                @Override
+                public void run() {
+                    try {
+                        if (!next.group.isCancelled()) {
+                            next.task.run();
+                        }
+                    } finally {
+                        didFinishPrefetch();
+                    }
+                }
+
+                @Override
+                public void onDropped() {
+                    try {
+                        SAThreadPool.drop(next.task);
+                    } finally {
+                        didFinishPrefetch();
+                    }
+                }
+            });
+        }
+    }
+
+    private void didFinishPrefetch() {
+        synchronized (this) {
+            runningPrefetches--;
+        }
+        pump();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * This class counts what happens to the downloaded files, across all the downloaders in the
+ * process, and tells the registered listeners after every change.
+ */
+class SAFileStatsRecorder {
+
+    // shared recorder used by all downloaders
+    private static final SAFileStatsRecorder shared = new SAFileStatsRecorder();
+
+    // private member variables
+    private long hits = 0;
+    private long misses = 0;
+    private long revalidations = 0;
+    private long staleServed = 0;
+    private long bytesDownloaded = 0;
+    private long bytesFromCache = 0;
+    private long evictions = 0;
+    private final EnumMap<SAFileDownloadError, Long> failures = new EnumMap<>(SAFileDownloadError.class);
+    private final long[] durations = new long[SAFileDownloaderStats.getDurationBucketCount()];
+    private final List<SAFileDownloaderStatsInterface> listeners = new ArrayList<>();
+
+    /**
+     * @return the recorder shared by all downloaders in the process
+     */
+    static SAFileStatsRecorder getShared() {
+        return shared;
+    }
+
+    void recordHit(long size) {
+        synchronized (this) {
+            hits++;
+            bytesFromCache += size;
+        }
+        notifyListeners();
+    }
+
+    void recordMiss() {
+        synchronized (this) {
+            misses++;
+        }
+    }
+
+    void recordDownload(long bytes, long duration) {
+        synchronized (this) {
+            bytesDownloaded += bytes;
+            durations[SAFileDownloaderStats.bucketOf(duration)]++;
+        }
+        notifyListeners();
+    }
+
+    void recordRevalidation(long size) {
+        synchronized (this) {
+            revalidations++;
+            bytesFromCache += size;
+        }
+        notifyListeners();
+    }
+
+    void recordStaleServed(long size) {
+        synchronized (this) {
+            staleServed++;
+            bytesFromCache += size;
+        }
+        notifyListeners();
+    }
+
+    void recordFailure(SAFileDownloadError error, long bytes) {
+        synchronized (this) {
+            Long count = failures.get(error);
+            failures.put(error, count != null ? count + 1 : 1);
+            bytesDownloaded += bytes;
+        }
+        notifyListeners();
+    }
+
+    void recordEvictions(int count) {
+        if (count <= 0) return;
+        synchronized (this) {
+            evictions += count;
+        }
+        notifyListeners();
+    }
+
+    synchronized SAFileDownloaderStats snapshot() {
+        return new SAFileDownloaderStats(hits, misses, revalidations, staleServed, bytesDownloaded, bytesFromCache, evictions, failures, durations);
+    }
+
+    synchronized void reset() {
+        hits = misses = revalidations = staleServed = bytesDownloaded = bytesFromCache = evictions = 0;
+        failures.clear();
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = 0;
+        }
+    }
+
+    synchronized void addListener(SAFileDownloaderStatsInterface listener) {
+        listeners.add(listener);
+    }
+
+    synchronized void removeListener(SAFileDownloaderStatsInterface listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners() {
+        List<SAFileDownloaderStatsInterface> current;
+        SAFileDownloaderStats stats;
+        synchronized (this) {
+            if (listeners.isEmpty()) return;
+            current = new ArrayList<>(listeners);
+            stats = snapshot();
+        }
+        for (SAFileDownloaderStatsInterface listener : current) {
+            listener.saDidUpdateStats(stats);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class keeps the file cache from filling up the device: it checks there is room for a
+ * download before it starts and makes room by evicting the least recently used cached files.
+ */
+class SAFileStorage {
+
+    // constants
+    static final long DEFAULT_MIN_FREE_SPACE = 8 * 1024 * 1024;
+
+    /**
+     * Interface used to find out how much space is left on a volume
+     */
+    interface SpaceProvider {
+
+        /**
+         * @param directory a directory on the volume
+         * @return          the number of bytes that can still be written to it
+         */
+        long getUsableSpace(File directory);
+    }
+
+    /**
+     * Space provider that asks the file system
+     */
+    static final SpaceProvider SYSTEM = new SpaceProvider() {
+        @Override
+        public long getUsableSpace(File directory) {
+            return directory.getUsableSpace();
+        }
+    };
+
+    // the space provider, only ever changed by tests
+    static SpaceProvider spaceProvider = SYSTEM;
+
+    /**
+     * Make sure a file fits on disk, leaving some free space for the rest of the device,
+     * evicting cached files if needed
+     *
+     * @param directory     the app's files dir
+     * @param bytes         the size of the file, or 0 if it's not known
+     * @param minFreeSpace  the space that has to be left free once the file is written
+     * @return              true if the file fits
+     */
+    static boolean ensureSpace(File directory, long bytes, long minFreeSpace) {
+        long usable = spaceProvider.getUsableSpace(directory);
+        long missing = Math.max(0, bytes) + minFreeSpace - usable;
+        if (missing <= 0) return true;
+        return evict(directory, missing) >= missing;
+    }
+
+    /**
+     * Evict cached files, least recently used first, until enough space has been freed
+     *
+     * @param directory the app's files dir
+     * @param bytes     the number of bytes to free
+     * @return          the number of bytes freed
+     */
+    static long evict(File directory, long bytes) {
+        SAFileCacheIndex index = SAFileCacheIndex.forDirectory(directory);
+        SAFileAssetCache assets = SAFileAssetCache.forDirectory(directory);
+
+        List<SAFileCacheEntry> entries = index.getEntries();
+        Collections.sort(entries, new Comparator<SAFileCacheEntry>() {
+            @Override
+            public int compare(SAFileCacheEntry first, SAFileCacheEntry second) {
+                long a = Math.max(first.getAccessedAt(), first.getCreatedAt());
+                long b = Math.max(second.getAccessedAt(), second.getCreatedAt());
+                return a < b ? -1 : (a == b ? 0 : 1);
+            }
+        });
+
+        long freed = 0;
+        int evictions = 0;
+        for (SAFileCacheEntry entry : entries) {
+            if (freed >= bytes) break;
+
+            File file = new File(directory, entry.getFilePath());
+            long size = file.length();
+            index.remove(entry.getKey());
+            assets.invalidate(entry.getKey());
+            if (!file.exists() || file.delete()) {
+                freed += size;
+                evictions++;
+            }
+        }
+
+        if (evictions > 0) {
+            SAFileStatsRecorder.getShared().recordEvictions(evictions);
+        }
+        return freed;
+    }
+
+    /**
+     * Evict cached files, least recently used first, until the cache takes at most a number
+     * of bytes
+     *
+     * @param directory the app's files dir
+     * @param maxBytes  the maximum size of the cache
+     * @return          the number of bytes freed
+     */
+    static long trimTo(File directory, long maxBytes) {
+        long total = 0;
+        for (SAFileCacheEntry entry : SAFileCacheIndex.forDirectory(directory).getEntries()) {
+            total += entry.getSize();
+        }
+        return total > maxBytes ? evict(directory, total - maxBytes) : 0;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is returned when prefetching a list of files and allows all of them to be
+ * cancelled at once, e.g. when the ads they were fetched for won't be shown after all.
+ * Files that haven't started downloading yet are dropped and their listener is never called;
+ * files that are downloading are stopped, their partial data is deleted and their listener is
+ * told they failed.
+ */
+public class SAPrefetchGroup {
+
+    // private member variables
+    private final SAFileScheduler scheduler;
+    private final List<SAFileDownloadHandle> handles = new ArrayList<>();
+    private volatile boolean isCancelled = false;
+
+    /**
+     * Constructor
+     *
+     * @param scheduler the scheduler the group's downloads are queued on
+     */
+    SAPrefetchGroup(SAFileScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Cancel all the downloads in this group, whether they're queued or already running
+     */
+    public void cancel() {
+        List<SAFileDownloadHandle> running;
+        synchronized (this) {
+            isCancelled = true;
+            running = new ArrayList<>(handles);
+        }
+        scheduler.cancel(this);
+        for (SAFileDownloadHandle handle : running) {
+            handle.cancel();
+        }
+    }
+
+    /**
+     * Add the handle of one of the group's downloads, so that it gets cancelled with the group
+     *
+     * @param handle the download's handle
+     */
+    void add(SAFileDownloadHandle handle) {
+        synchronized (this) {
+            if (!isCancelled) {
+                handles.add(handle);
+                return;
+            }
+        }
+        handle.cancel();
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+}
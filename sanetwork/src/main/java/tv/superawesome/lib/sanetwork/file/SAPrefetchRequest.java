@@ -0,0 +1,65 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+/**
+ * This class describes a single file to be downloaded ahead of time, together with how
+ * urgent it is.
+ */
+public class SAPrefetchRequest {
+
+    // constants
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 5;
+    public static final int PRIORITY_HIGH = 10;
+    public static final long NO_DEADLINE = 0;
+
+    // private member variables
+    private String url = null;
+    private int priority = PRIORITY_NORMAL;
+    private long deadline = NO_DEADLINE;
+
+    /**
+     * Constructor with normal priority and no deadline
+     *
+     * @param url the remote URL from where to get the file
+     */
+    public SAPrefetchRequest(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param url       the remote URL from where to get the file
+     * @param priority  higher priorities get downloaded first
+     * @param deadline  time (as in System.currentTimeMillis()) after which the file is not
+     *                  needed anymore and won't be downloaded, or NO_DEADLINE
+     */
+    public SAPrefetchRequest(String url, int priority, long deadline) {
+        this.url = url;
+        this.priority = priority;
+        this.deadline = deadline;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @param now   the current time
+     * @return      true if the request has a deadline that has already passed
+     */
+    boolean isExpired(long now) {
+        return deadline != NO_DEADLINE && now > deadline;
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+
+/**
+ * This class represents a file that may still be downloading. The bytes between 0 and
+ * getAvailableBytes() are already on disk and can be read straight away, while streams opened
+ * with openStream() block until further bytes arrive, so that a player can start as soon as
+ * the first few seconds of a video have been buffered instead of waiting for the whole file.
+ *
+ * The available range is always contiguous, since downloads are written sequentially. If the
+ * bytes already made available get replaced, e.g. because the server sent a different version
+ * of the file or a stale cached copy is served instead, streams that had started reading
+ * fail with an IOException rather than mix both versions; the others read the new bytes.
+ */
+public class SAProgressiveFile {
+
+    // private member variables
+    private final String key;
+    private final String filePath;
+    private File file = null;
+    private long availableBytes = 0;
+    private long totalBytes = -1;
+    private boolean isComplete = false;
+    private boolean isFailed = false;
+    // changes every time the bytes already made available get replaced
+    private int version = 0;
+    private SAFileDownloadHandle handle = null;
+
+    /**
+     * Constructor
+     *
+     * @param key       the key the file will be saved under
+     * @param filePath  the path of the complete file, relative to the app's files dir
+     */
+    SAProgressiveFile(String key, String filePath) {
+        this.key = key;
+        this.filePath = filePath;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return the handle to pause, resume or cancel the download with
+     */
+    public synchronized SAFileDownloadHandle getHandle() {
+        return handle;
+    }
+
+    synchronized void setHandle(SAFileDownloadHandle handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @return the number of bytes, from the start of the file, that can already be read
+     */
+    public synchronized long getAvailableBytes() {
+        return availableBytes;
+    }
+
+    /**
+     * @return the total size of the file, or -1 if it's not known (yet)
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized boolean isComplete() {
+        return isComplete;
+    }
+
+    public synchronized boolean isFailed() {
+        return isFailed;
+    }
+
+    /**
+     * Block until at least a number of bytes is available, the download ends or a timeout passes
+     *
+     * @param bytes     the number of bytes to wait for
+     * @param timeout   the maximum time to wait, in milliseconds
+     * @return          the number of bytes available when the method returns
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public synchronized long awaitBytes(long bytes, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (availableBytes < bytes && !isComplete && !isFailed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) break;
+            wait(remaining);
+        }
+        return availableBytes;
+    }
+
+    /**
+     * Open a stream over the file. Reads never return bytes past the available range: they
+     * block until more of the file arrives, return -1 once the whole file has been read and
+     * throw an IOException if the download fails.
+     * Must not be called on the main thread.
+     *
+     * @return a new input stream, that must be closed by the caller
+     */
+    public InputStream openStream() {
+        return new ProgressiveInputStream();
+    }
+
+    synchronized void start(File file, long totalBytes) {
+        this.file = file;
+        this.totalBytes = totalBytes > 0 ? totalBytes : -1;
+        notifyAll();
+    }
+
+    /**
+     * @param availableBytes    the number of bytes available; going backwards means the file
+     *                          is being written again from there, e.g. the server answered a
+     *                          Range request with the whole file
+     */
+    synchronized void advance(long availableBytes) {
+        if (availableBytes < this.availableBytes) {
+            version++;
+        }
+        this.availableBytes = availableBytes;
+        notifyAll();
+    }
+
+    synchronized void complete(File file, long size) {
+        this.file = file;
+        this.availableBytes = size;
+        this.totalBytes = size;
+        this.isComplete = true;
+        notifyAll();
+    }
+
+    /**
+     * Same as complete(), with a file that isn't the one being downloaded, e.g. a stale cached
+     * copy served while offline
+     */
+    synchronized void replace(File file, long size) {
+        version++;
+        complete(file, size);
+    }
+
+    synchronized void fail() {
+        this.isFailed = true;
+        notifyAll();
+    }
+
+    /**
+     * Wait until the byte at a position is available, or the download is over
+     *
+     * @param stream    the stream that's reading
+     * @param position  position in the file
+     * @return          the file to read from, or null if the position is past the end
+     * @throws IOException if the download failed, the bytes the stream started reading got
+     *                     replaced or the thread got interrupted
+     */
+    private synchronized File awaitPosition(ProgressiveInputStream stream, long position) throws IOException {
+        while (true) {
+            if (isFailed) {
+                throw new IOException("Download of " + key + " failed");
+            }
+            if (stream.version != -1 && stream.version != version) {
+                throw new IOException("File " + key + " was replaced while being read");
+            }
+            if (position < availableBytes || isComplete) break;
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        // from now on the stream reads this version of the file
+        stream.version = version;
+        return position < availableBytes ? file : null;
+    }
+
+    /**
+     * Fail a stream if the version of the file it reads has been replaced
+     */
+    private synchronized void checkVersion(ProgressiveInputStream stream) throws IOException {
+        if (stream.version != version) {
+            throw new IOException("File " + key + " was replaced while being read");
+        }
+    }
+
+    /**
+     * Input stream that reads the file through a RandomAccessFile, opened on the first read.
+     * Once opened, the file descriptor stays valid even after the partial file is renamed.
+     */
+    private class ProgressiveInputStream extends InputStream {
+
+        private RandomAccessFile input = null;
+        private long position = 0;
+        private boolean isClosed = false;
+        // the version of the file this stream reads, or -1 until it starts reading
+        private int version = -1;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return count == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException {
+            if (isClosed) throw new IOException("Stream closed");
+            if (length == 0) return 0;
+
+            File source;
+            long available;
+            synchronized (SAProgressiveFile.this) {
+                source = awaitPosition(this, position);
+                available = availableBytes;
+            }
+            if (source == null) return -1;
+
+            if (input == null) {
+                input = new RandomAccessFile(source, "r");
+            }
+
+            int count = (int) Math.min(length, available - position);
+            input.seek(position);
+            count = input.read(data, offset, count);
+
+            // the bytes may have been replaced while they were being read
+            checkVersion(this);
+
+            if (count > 0) position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            if (count <= 0) return 0;
+            long skipped;
+            synchronized (SAProgressiveFile.this) {
+                awaitPosition(this, position + count - 1);
+                skipped = Math.min(count, availableBytes - position);
+            }
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, getAvailableBytes() - position));
+        }
+
+        @Override
+        public void close() throws IOException {
+            isClosed = true;
+            if (input != null) {
+                input.close();
+                input = null;
+            }
+        }
+    }
+}
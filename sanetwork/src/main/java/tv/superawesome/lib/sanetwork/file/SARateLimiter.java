@@ -0,0 +1,123 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.file;
+
+import java.io.InterruptedIOException;
+
+/**
+ * This class is a token bucket that limits how many bytes per second can go through it.
+ *
+ * The bucket holds up to a quarter of a second worth of bytes, so short bursts go through
+ * straight away while the average rate stays at the set limit. Callers that take more than
+ * what's left get the bytes on credit and are made to wait until the bucket has refilled, so a
+ * single large chunk never blocks forever. The rate can be changed at any time, including
+ * while downloads are going through the limiter: callers that are waiting are let go straight
+ * away. Waits happen in short slices, so that a download that gets paused or cancelled while
+ * throttled stops waiting within MAX_WAIT_SLICE.
+ */
+public class SARateLimiter {
+
+    /**
+     * Interface used to stop waiting early, e.g. once the download has been cancelled
+     */
+    interface StopSignal {
+
+        /**
+         * @return true if the caller doesn't need the bytes anymore
+         */
+        boolean isStopped();
+    }
+
+    // constants
+    public static final long UNLIMITED = 0;
+    static final long MAX_WAIT_SLICE = 50;
+    private static final long BURST_DIVIDER = 4;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    // private member variables
+    private long bytesPerSecond;
+    private double tokens = 0;
+    private long lastRefill = System.nanoTime();
+    private int rateChanges = 0;
+
+    /**
+     * Constructor
+     *
+     * @param bytesPerSecond    the initial rate, or UNLIMITED
+     */
+    public SARateLimiter(long bytesPerSecond) {
+        setRate(bytesPerSecond);
+    }
+
+    /**
+     * Change the rate of the limiter
+     *
+     * @param bytesPerSecond    the new rate, or UNLIMITED
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(UNLIMITED, bytesPerSecond);
+        this.tokens = capacity();
+        this.lastRefill = System.nanoTime();
+        this.rateChanges++;
+        notifyAll();
+    }
+
+    public synchronized long getRate() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Take a number of bytes from the bucket, waiting until they are allowed through
+     *
+     * @param bytes the number of bytes about to be transferred
+     * @throws InterruptedIOException if the thread gets interrupted while waiting
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+        acquire(bytes, null);
+    }
+
+    /**
+     * Same as the method above, but stops waiting as soon as a signal says so
+     *
+     * @param bytes     the number of bytes about to be transferred
+     * @param signal    checked between two slices of the wait, or null
+     * @throws InterruptedIOException if the thread gets interrupted while waiting
+     */
+    synchronized void acquire(int bytes, StopSignal signal) throws InterruptedIOException {
+        if (bytesPerSecond == UNLIMITED) return;
+
+        refill();
+        tokens -= bytes;
+        if (tokens >= 0) return;
+
+        long deadline = System.nanoTime() + (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond);
+        int changes = rateChanges;
+
+        try {
+            while (true) {
+                // a new rate starts from a full bucket
+                if (rateChanges != changes) return;
+                if (signal != null && signal.isStopped()) return;
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return;
+                wait(Math.max(1, Math.min(MAX_WAIT_SLICE, remaining / NANOS_PER_MILLI)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity(), tokens + (double) (now - lastRefill) * bytesPerSecond / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+
+    private double capacity() {
+        return (double) bytesPerSecond / BURST_DIVIDER;
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.future;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+
+import tv.superawesome.lib.sanetwork.request.SAThreadPool;
+
+/**
+ * This class holds the result of an asynchronous operation, such as a network request or a
+ * file download, that will either succeed with a value or fail with an error.
+ *
+ * Futures can be chained with then(), so that each step starts as soon as the one it depends
+ * on has a value, and combined with all() and any(), so that independent steps run in
+ * parallel, without nesting callbacks. Any failure is passed on to the futures that depend on
+ * it.
+ *
+ * Listeners and functions are called on the thread that completes the future, which for the
+ * library's own futures is the main thread; they should therefore only do light work, e.g.
+ * start the next request.
+ */
+public class SAFuture<T> {
+
+    /**
+     * The state of a future
+     */
+    private enum State {
+        PENDING,
+        SUCCEEDED,
+        FAILED
+    }
+
+
+    // private member variables
+    private State state = State.PENDING;
+    private T value = null;
+    private Throwable error = null;
+    private List<SAFutureListener<T>> listeners = new ArrayList<>();
+
+    /**
+     * @param value the value
+     * @return      a future that has already succeeded with a value
+     */
+    public static <T> SAFuture<T> succeeded(T value) {
+        SAFuture<T> future = new SAFuture<>();
+        future.complete(value);
+        return future;
+    }
+
+    /**
+     * @param error the error
+     * @return      a future that has already failed with an error
+     */
+    public static <T> SAFuture<T> failed(Throwable error) {
+        SAFuture<T> future = new SAFuture<>();
+        future.fail(error);
+        return future;
+    }
+
+    /**
+     * Complete the future with a value. Only the first call to complete() or fail() counts.
+     *
+     * @param value the value
+     * @return      true if this call completed the future
+     */
+    public boolean complete(T value) {
+        return finish(State.SUCCEEDED, value, null);
+    }
+
+    /**
+     * Complete the future with an error. Only the first call to complete() or fail() counts.
+     *
+     * @param error the error
+     * @return      true if this call completed the future
+     */
+    public boolean fail(Throwable error) {
+        return finish(State.FAILED, null, error != null ? error : new Exception("Unknown error"));
+    }
+
+    public synchronized boolean isDone() {
+        return state != State.PENDING;
+    }
+
+    public synchronized boolean isSuccessful() {
+        return state == State.SUCCEEDED;
+    }
+
+    /**
+     * @return the value, or null if the future hasn't succeeded
+     */
+    public synchronized T getValue() {
+        return value;
+    }
+
+    /**
+     * @return the error, or null if the future hasn't failed
+     */
+    public synchronized Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Block until the future completes. Must not be called on the main thread, since that's
+     * where the library's futures complete.
+     *
+     * @param timeout   the maximum time to wait, in milliseconds
+     * @return          the value
+     * @throws ExecutionException   if the future failed, wrapping its error
+     * @throws TimeoutException     if the future didn't complete in time
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public synchronized T get(long timeout) throws ExecutionException, TimeoutException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (state == State.PENDING) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) throw new TimeoutException();
+            wait(remaining);
+        }
+        if (state == State.FAILED) throw new ExecutionException(error);
+        return value;
+    }
+
+    /**
+     * Add a listener that gets called once the future completes, or straight away if it
+     * already has
+     *
+     * @param listener  instance of SAFutureListener
+     * @return          this instance
+     */
+    public SAFuture<T> onComplete(SAFutureListener<T> listener) {
+        synchronized (this) {
+            if (state == State.PENDING) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+        listener.saDidComplete(this);
+        return this;
+    }
+
+    /**
+     * Start a step that depends on the value of this future
+     *
+     * @param function  the function that starts the step, called as soon as this future
+     *                  succeeds; it's not called if this future fails
+     * @return          a future for the result of the step, that fails if this future, the
+     *                  function or the step fail
+     */
+    public <R> SAFuture<R> then(final SAFutureFunction<T, R> function) {
+        final SAFuture<R> result = new SAFuture<>();
+        onComplete(new SAFutureListener<T>() {
+            @Override
+            public void saDidComplete(SAFuture<T> future) {
+                if (!future.isSuccessful()) {
+                    result.fail(future.getError());
+                    return;
+                }
+
+                SAFuture<R> next;
+                try {
+                    next = function.apply(future.getValue());
+                } catch (Exception e) {
+                    result.fail(e);
+                    return;
+                }
+
+                if (next == null) {
+                    result.fail(new NullPointerException("then() function returned null"));
+                    return;
+                }
+                next.onComplete(new SAFutureListener<R>() {
+                    @Override
+                    public void saDidComplete(SAFuture<R> future) {
+                        result.copyFrom(future);
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Limit the time this future can take. A timeout is reported on the main thread, like the
+     * outcome of the library's own futures.
+     *
+     * @param timeout   the maximum time, in milliseconds
+     * @return          a future with the same outcome as this one, or that fails with a
+     *                  TimeoutException if this one hasn't completed in time, or with a
+     *                  CancellationException if SAThreadPool gets shut down before then
+     */
+    public SAFuture<T> timeout(long timeout) {
+        final SAFuture<T> result = new SAFuture<>();
+        if (isDone()) {
+            result.copyFrom(this);
+            return result;
+        }
+
+        final ScheduledFuture<?> timeoutTask = SAThreadPool.getShared().schedule(new SAThreadPool.DroppableTask() {
+            @Override
+            public void run() {
+                failOnMainThread(result, new TimeoutException());
+            }
+
+            @Override
+            public void onDropped() {
+                // the timer is gone, so the timeout can't be enforced any more
+                failOnMainThread(result, new CancellationException());
+            }
+        }, Math.max(0, timeout));
+
+        onComplete(new SAFutureListener<T>() {
+            @Override
+            public void saDidComplete(SAFuture<T> future) {
+                timeoutTask.cancel(false);
+                result.copyFrom(future);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Wait for several independent futures, that keep running in parallel
+     *
+     * @param futures   a list of futures
+     * @return          a future that succeeds with all their values, in the same order, once
+     *                  they have all succeeded, or fails as soon as any of them fails
+     */
+    public static <T> SAFuture<List<T>> all(List<SAFuture<T>> futures) {
+        final SAFuture<List<T>> result = new SAFuture<>();
+        final int count = futures.size();
+        if (count == 0) {
+            result.complete(Collections.<T>emptyList());
+            return result;
+        }
+
+        final Object[] values = new Object[count];
+        final int[] remaining = { count };
+
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            futures.get(i).onComplete(new SAFutureListener<T>() {
+                @Override
+                public void saDidComplete(SAFuture<T> future) {
+                    if (!future.isSuccessful()) {
+                        result.fail(future.getError());
+                        return;
+                    }
+
+                    boolean isLast;
+                    synchronized (values) {
+                        values[index] = future.getValue();
+                        isLast = --remaining[0] == 0;
+                    }
+                    if (isLast) {
+                        @SuppressWarnings("unchecked")
+                        List<T> list = (List<T>) (List<?>) Arrays.asList(values);
+                        result.complete(list);
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Wait for the first of several alternative futures to succeed, e.g. the same file on two
+     * different hosts
+     *
+     * @param futures   a list of futures
+     * @return          a future that succeeds with the first value, or fails with the last
+     *                  error once all of them have failed
+     */
+    public static <T> SAFuture<T> any(List<SAFuture<T>> futures) {
+        final SAFuture<T> result = new SAFuture<>();
+        final int count = futures.size();
+        if (count == 0) {
+            result.fail(new IllegalArgumentException("any() needs at least one future"));
+            return result;
+        }
+
+        final int[] remaining = { count };
+
+        for (SAFuture<T> future : futures) {
+            future.onComplete(new SAFutureListener<T>() {
+                @Override
+                public void saDidComplete(SAFuture<T> future) {
+                    if (future.isSuccessful()) {
+                        result.complete(future.getValue());
+                        return;
+                    }
+
+                    boolean isLast;
+                    synchronized (remaining) {
+                        isLast = --remaining[0] == 0;
+                    }
+                    if (isLast) {
+                        result.fail(future.getError());
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Fail a future on the main thread if there is one, or on the current thread otherwise,
+     * as in a testing environment, so that a timeout doesn't call listeners on the timer's
+     * thread
+     */
+    private static <T> void failOnMainThread(final SAFuture<T> future, final Throwable error) {
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                future.fail(error);
+            }
+        };
+        try {
+            new Handler(Looper.getMainLooper()).post(runnable);
+        } catch (Exception e) {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Complete this future the same way as another, completed, one
+     */
+    private void copyFrom(SAFuture<T> future) {
+        if (future.isSuccessful()) {
+            complete(future.getValue());
+        } else {
+            fail(future.getError());
+        }
+    }
+
+    /**
+     * Set the outcome and call the listeners, outside of the lock
+     */
+    private boolean finish(State state, T value, Throwable error) {
+        List<SAFutureListener<T>> toNotify;
+        synchronized (this) {
+            if (this.state != State.PENDING) return false;
+            this.state = state;
+            this.value = value;
+            this.error = error;
+            toNotify = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        for (SAFutureListener<T> listener : toNotify) {
+            listener.saDidComplete(this);
+        }
+        return true;
+    }
+}
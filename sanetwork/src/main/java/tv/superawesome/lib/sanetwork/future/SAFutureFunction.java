@@ -0,0 +1,19 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.future;
+
+/**
+ * Interface used by SAFuture.then() to start a step that depends on the value of a previous one.
+ */
+public interface SAFutureFunction<T, R> {
+
+    /**
+     * Called with the value of the previous step, as soon as it's available
+     *
+     * @param value         the value of the previous step
+     * @return              the future of this step; SAFuture.succeeded() wraps a plain value
+     * @throws Exception    to fail this step
+     */
+    SAFuture<R> apply(T value) throws Exception;
+}
@@ -0,0 +1,17 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.future;
+
+/**
+ * Interface used by SAFuture to signal that it has completed, either with a value or an error.
+ */
+public interface SAFutureListener<T> {
+
+    /**
+     * Called once the future has completed
+     *
+     * @param future    the completed future
+     */
+    void saDidComplete(SAFuture<T> future);
+}
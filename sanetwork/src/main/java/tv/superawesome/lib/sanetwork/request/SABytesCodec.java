@@ -0,0 +1,44 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+/**
+ * Codec that passes bytes through unchanged, for payloads that are already encoded
+ */
+public class SABytesCodec implements SANetworkCodec<byte[]> {
+
+    // private member variables
+    private final String contentType;
+
+    /**
+     * Constructor for generic binary data
+     */
+    public SABytesCodec() {
+        this("application/octet-stream");
+    }
+
+    /**
+     * Constructor
+     *
+     * @param contentType   the media type of the bytes, e.g. "application/x-protobuf"
+     */
+    public SABytesCodec(String contentType) {
+        this.contentType = contentType;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public byte[] encode(byte[] value) {
+        return value;
+    }
+
+    @Override
+    public byte[] decode(byte[] data) {
+        return data;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class keeps a circuit breaker for each host SANetwork talks to, so that a host that's
+ * down doesn't tie up the request threads for a whole timeout on every call.
+ *
+ * A host's circuit opens after FAILURE_THRESHOLD consecutive failures (errors, timeouts or
+ * 5xx answers). While it's open, requests to the host are rejected straight away. Once the
+ * open period has passed the circuit becomes half-open and lets a single probe request
+ * through: if it succeeds the circuit closes, otherwise it opens again for twice as long, up
+ * to MAX_OPEN_DURATION.
+ */
+public class SACircuitBreaker {
+
+    /**
+     * The state of a host's circuit
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    // constants
+    static final int FAILURE_THRESHOLD = 5;
+    static final long OPEN_DURATION = 30 * 1000;
+    static final long MAX_OPEN_DURATION = 5 * 60 * 1000;
+
+    /**
+     * The circuit of a single host
+     */
+    private static class Circuit {
+        State state = State.CLOSED;
+        int failures = 0;
+        long openDuration;
+        long openedAt = 0;
+
+        Circuit(long openDuration) {
+            this.openDuration = openDuration;
+        }
+    }
+
+    // shared breaker used by the whole library
+    private static final SACircuitBreaker shared = new SACircuitBreaker(FAILURE_THRESHOLD, OPEN_DURATION);
+
+    // private member variables
+    private final int failureThreshold;
+    private final long openDuration;
+    private final Map<String, Circuit> circuits = new HashMap<>();
+    private SACircuitBreakerInterface listener = null;
+
+    /**
+     * Constructor
+     *
+     * @param failureThreshold  the number of consecutive failures that opens a circuit
+     * @param openDuration      how long a circuit first stays open, in milliseconds
+     */
+    SACircuitBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * @return the breaker shared by all requests in the process
+     */
+    public static SACircuitBreaker getShared() {
+        return shared;
+    }
+
+    /**
+     * Set a listener that gets told every time a circuit changes state
+     *
+     * @param listener  instance of SACircuitBreakerInterface, or null
+     */
+    public synchronized void setListener(SACircuitBreakerInterface listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param host  the host, including its port if it's not the default one
+     * @return      the state of its circuit
+     */
+    public synchronized State getState(String host) {
+        Circuit circuit = circuits.get(host);
+        return circuit != null ? circuit.state : State.CLOSED;
+    }
+
+    /**
+     * @return the state of every host whose circuit is not closed
+     */
+    public synchronized Map<String, State> getStates() {
+        Map<String, State> states = new HashMap<>();
+        for (Map.Entry<String, Circuit> entry : circuits.entrySet()) {
+            if (entry.getValue().state != State.CLOSED) {
+                states.put(entry.getKey(), entry.getValue().state);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Close every circuit, e.g. when the network changes
+     */
+    public synchronized void reset() {
+        circuits.clear();
+    }
+
+    /**
+     * Called before sending a request
+     *
+     * @param host  the host, including its port if it's not the default one
+     * @return      true if the request can go ahead, false if it has to be rejected
+     */
+    boolean allowRequest(String host) {
+        SACircuitBreakerInterface toNotify;
+        synchronized (this) {
+            Circuit circuit = circuits.get(host);
+            if (circuit == null || circuit.state == State.CLOSED) return true;
+            if (circuit.state == State.HALF_OPEN) return false;
+
+            long elapsed = System.currentTimeMillis() - circuit.openedAt;
+            if (elapsed >= 0 && elapsed < circuit.openDuration) return false;
+
+            // let a single probe through
+            circuit.state = State.HALF_OPEN;
+            toNotify = listener;
+        }
+        notifyListener(toNotify, host, State.HALF_OPEN);
+        return true;
+    }
+
+    /**
+     * Called when a request got an answer that shows the host is healthy
+     *
+     * @param host  the host, including its port if it's not the default one
+     */
+    void recordSuccess(String host) {
+        SACircuitBreakerInterface toNotify;
+        synchronized (this) {
+            Circuit circuit = circuits.remove(host);
+            if (circuit == null || circuit.state == State.CLOSED) return;
+            toNotify = listener;
+        }
+        notifyListener(toNotify, host, State.CLOSED);
+    }
+
+    /**
+     * Called when a request failed, timed out or got a server error
+     *
+     * @param host  the host, including its port if it's not the default one
+     */
+    void recordFailure(String host) {
+        SACircuitBreakerInterface toNotify;
+        synchronized (this) {
+            Circuit circuit = circuits.get(host);
+            if (circuit == null) {
+                circuit = new Circuit(openDuration);
+                circuits.put(host, circuit);
+            }
+
+            if (circuit.state == State.OPEN) return;
+
+            if (circuit.state == State.HALF_OPEN) {
+                // the probe failed, so stay away for longer
+                circuit.openDuration = Math.min(MAX_OPEN_DURATION, circuit.openDuration * 2);
+            } else if (++circuit.failures < failureThreshold) {
+                return;
+            }
+
+            circuit.state = State.OPEN;
+            circuit.openedAt = System.currentTimeMillis();
+            toNotify = listener;
+        }
+        notifyListener(toNotify, host, State.OPEN);
+    }
+
+    private static void notifyListener(SACircuitBreakerInterface listener, String host, State state) {
+        if (listener != null) {
+            listener.saDidChangeState(host, state);
+        }
+    }
+}
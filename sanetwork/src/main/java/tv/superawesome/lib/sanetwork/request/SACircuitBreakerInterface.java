@@ -0,0 +1,18 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+/**
+ * Interface used by SACircuitBreaker to signal that the circuit of a host opened or closed
+ */
+public interface SACircuitBreakerInterface {
+
+    /**
+     * Called, on the thread that made the change, every time a host's circuit changes state
+     *
+     * @param host  the host, including its port if it's not the default one
+     * @param state the new state
+     */
+    void saDidChangeState(String host, SACircuitBreaker.State state);
+}
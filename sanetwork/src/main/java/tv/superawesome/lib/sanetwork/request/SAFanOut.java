@@ -0,0 +1,241 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import tv.superawesome.lib.sanetwork.future.SAFuture;
+import tv.superawesome.lib.sanetwork.future.SAFutureListener;
+
+/**
+ * This class sends the same event to several URLs (e.g. an ad's third party trackers) in
+ * parallel. No more than MAX_REQUESTS_PER_HOST requests run against the same host at a time,
+ * across all fan-outs in the process, and the whole fan-out shares a single deadline: requests
+ * that haven't started by then are dropped and the result reports whatever has answered.
+ */
+class SAFanOut {
+
+    // constants
+    static final int MAX_REQUESTS_PER_HOST = 4;
+
+    /**
+     * Interface used to execute a single request on the current thread
+     */
+    interface Request {
+
+        /**
+         * @param url           the URL to send the request to
+         * @param timeout       the connect and read timeouts, in milliseconds
+         * @return              the response
+         * @throws Exception    if the server could not be reached
+         */
+        SANetworkResponse execute(String url, int timeout) throws Exception;
+    }
+
+    // requests running and waiting for each host, across all fan-outs
+    private static final Map<String, Integer> running = new HashMap<>();
+    private static final Map<String, Queue<Runnable>> waiting = new HashMap<>();
+
+    // private member variables
+    private final Executor executor;
+    private final Request request;
+
+    /**
+     * Constructor
+     *
+     * @param executor  the executor requests run on, which should have several threads
+     * @param request   the request to send to each URL
+     */
+    SAFanOut(Executor executor, Request request) {
+        this.executor = executor;
+        this.request = request;
+    }
+
+    /**
+     * Send the request to all the URLs
+     *
+     * @param urls      the URLs
+     * @param timeout   the time the whole fan-out can take, in milliseconds
+     * @return          a future that succeeds, on the main thread, once all the URLs have
+     *                  answered or the timeout has passed
+     */
+    SAFuture<SAFanOutResult> send(List<String> urls, long timeout) {
+        final List<String> list = new ArrayList<>(urls);
+        final int[] statuses = new int[list.size()];
+        final int[] remaining = { list.size() };
+        final long deadline = System.currentTimeMillis() + timeout;
+        final SAFuture<Void> answered = new SAFuture<>();
+        final SAFuture<SAFanOutResult> result = new SAFuture<>();
+
+        // once everything has answered or the deadline has passed, report what's known so far
+        answered.timeout(timeout).onComplete(new SAFutureListener<Void>() {
+            @Override
+            public void saDidComplete(SAFuture<Void> future) {
+                final SAFanOutResult snapshot;
+                synchronized (statuses) {
+                    snapshot = new SAFanOutResult(list, statuses);
+                }
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        result.complete(snapshot);
+                    }
+                });
+            }
+        });
+
+        if (list.isEmpty()) {
+            answered.complete(null);
+            return result;
+        }
+
+        for (int i = 0; i < list.size(); i++) {
+            final int index = i;
+            final String url = list.get(i);
+            Runnable task = new SAThreadPool.DroppableTask() {
+                @Override
+                public void run() {
+                    int status = 0;
+                    long left = deadline - System.currentTimeMillis();
+                    if (left > 0) {
+                        try {
+                            status = request.execute(url, (int) Math.min(Integer.MAX_VALUE, left)).getStatus();
+                        } catch (Exception e) {
+                            // reported as status 0
+                        }
+                    }
+                    finish(status);
+                }
+
+                @Override
+                public void onDropped() {
+                    finish(0);
+                }
+
+                private void finish(int status) {
+                    boolean isLast;
+                    synchronized (statuses) {
+                        statuses[index] = status;
+                        isLast = --remaining[0] == 0;
+                    }
+                    if (isLast) {
+                        answered.complete(null);
+                    }
+                }
+            };
+
+            String host = hostOf(url);
+            if (host == null) {
+                task.run();
+            } else {
+                acquire(host, task);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Run a task now if its host has a free slot, or queue it until one is released
+     */
+    private void acquire(String host, Runnable task) {
+        synchronized (running) {
+            Integer count = running.get(host);
+            if (count != null && count >= MAX_REQUESTS_PER_HOST) {
+                Queue<Runnable> queue = waiting.get(host);
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    waiting.put(host, queue);
+                }
+                queue.add(task);
+                return;
+            }
+            running.put(host, count == null ? 1 : count + 1);
+        }
+        execute(host, task);
+    }
+
+    /**
+     * Run a task on the executor, handing its host's slot over to the next waiting task
+     */
+    private void execute(final String host, final Runnable task) {
+        executor.execute(new SAThreadPool.DroppableTask() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    release(host);
+                }
+            }
+
+            @Override
+            public void onDropped() {
+                try {
+                    SAThreadPool.drop(task);
+                } finally {
+                    release(host);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hand a host's slot over to the next task waiting for it, or free it if there's none
+     */
+    private void release(String host) {
+        Runnable next;
+        synchronized (running) {
+            Queue<Runnable> queue = waiting.get(host);
+            next = queue != null ? queue.poll() : null;
+            if (queue != null && queue.isEmpty()) {
+                waiting.remove(host);
+            }
+            if (next == null) {
+                int count = running.get(host) - 1;
+                if (count > 0) {
+                    running.put(host, count);
+                } else {
+                    running.remove(host);
+                }
+            }
+        }
+        if (next != null) {
+            execute(host, next);
+        }
+    }
+
+    /**
+     * @param url   a URL
+     * @return      its host, or null if it's not a valid URL
+     */
+    private static String hostOf(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Run on the main thread if there is one, or on the current thread otherwise
+     */
+    private static void dispatch(Runnable runnable) {
+        try {
+            new Handler(Looper.getMainLooper()).post(runnable);
+        } catch (Exception e) {
+            runnable.run();
+        }
+    }
+}
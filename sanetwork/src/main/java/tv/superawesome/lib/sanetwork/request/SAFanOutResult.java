@@ -0,0 +1,74 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds the outcome of a fan-out, i.e. of one event sent to several URLs at once,
+ * with the status of each URL in the order they were given
+ */
+public class SAFanOutResult {
+
+    // private member variables
+    private final List<String> urls;
+    private final int[] statuses;
+
+    /**
+     * Constructor
+     *
+     * @param urls      the URLs the event was sent to
+     * @param statuses  the HTTP status of each URL, or 0 if it could not be reached in time
+     */
+    SAFanOutResult(List<String> urls, int[] statuses) {
+        this.urls = new ArrayList<>(urls);
+        this.statuses = statuses.clone();
+    }
+
+    /**
+     * @return the number of URLs
+     */
+    public int getCount() {
+        return urls.size();
+    }
+
+    public String getUrl(int index) {
+        return urls.get(index);
+    }
+
+    /**
+     * @param index the index of a URL
+     * @return      its HTTP status, or 0 if it failed or didn't answer before the deadline
+     */
+    public int getStatus(int index) {
+        return statuses[index];
+    }
+
+    /**
+     * @param index the index of a URL
+     * @return      true if it answered with a 2xx or 3xx status
+     */
+    public boolean isSuccessful(int index) {
+        return statuses[index] > 0 && statuses[index] < 400;
+    }
+
+    /**
+     * @return the number of URLs that answered successfully
+     */
+    public int getSuccessCount() {
+        int count = 0;
+        for (int i = 0; i < statuses.length; i++) {
+            if (isSuccessful(i)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return true if all the URLs answered successfully
+     */
+    public boolean isSuccessful() {
+        return getSuccessCount() == statuses.length;
+    }
+}
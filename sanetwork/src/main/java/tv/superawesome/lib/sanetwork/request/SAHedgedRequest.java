@@ -0,0 +1,149 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
+import tv.superawesome.lib.sanetwork.future.SAFuture;
+import tv.superawesome.lib.sanetwork.future.SAFutureListener;
+
+/**
+ * This class runs a hedged request: a first attempt is started straight away and, if it hasn't
+ * answered after the policy's delay and the budget allows it, a second one is started. The
+ * first attempt to get an answer wins and the other one is cancelled; if an attempt fails,
+ * the other one still gets a chance to answer.
+ */
+class SAHedgedRequest {
+
+    /**
+     * Interface used to execute one attempt on the current thread
+     */
+    interface Request {
+
+        /**
+         * @param attempt       the attempt, that must be attached to the connection
+         * @return              the response
+         * @throws Exception    if the server could not be reached or the attempt got cancelled
+         */
+        SANetworkResponse execute(SARequestAttempt attempt) throws Exception;
+    }
+
+    // private member variables
+    private final Executor executor;
+    private final SAHedgingPolicy policy;
+    private final Request request;
+    private final SAFuture<SANetworkResponse> result = new SAFuture<>();
+    private final List<SARequestAttempt> attempts = new ArrayList<>();
+    private int pending = 0;
+
+    /**
+     * Constructor
+     *
+     * @param executor  the executor attempts run on, which must be able to run two at once
+     * @param policy    the hedging policy
+     * @param request   the request to send
+     */
+    SAHedgedRequest(Executor executor, SAHedgingPolicy policy, Request request) {
+        this.executor = executor;
+        this.policy = policy;
+        this.request = request;
+    }
+
+    /**
+     * Start the request
+     *
+     * @return  a future that succeeds with the first answer, or fails once all the attempts
+     *          have failed
+     */
+    SAFuture<SANetworkResponse> send() {
+        policy.recordRequest();
+
+        final SAFuture<SANetworkResponse> first = start();
+        first.timeout(policy.getDelay()).onComplete(new SAFutureListener<SANetworkResponse>() {
+            @Override
+            public void saDidComplete(SAFuture<SANetworkResponse> future) {
+                boolean isSlow = !future.isSuccessful() && future.getError() instanceof TimeoutException;
+                if (isSlow && !result.isDone() && policy.tryHedge()) {
+                    start();
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Start an attempt on the executor
+     */
+    private SAFuture<SANetworkResponse> start() {
+        final SARequestAttempt attempt = new SARequestAttempt();
+        final SAFuture<SANetworkResponse> future = new SAFuture<>();
+
+        synchronized (this) {
+            attempts.add(attempt);
+            pending++;
+        }
+
+        executor.execute(new SAThreadPool.DroppableTask() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    SANetworkResponse response = request.execute(attempt);
+                    policy.addLatency(System.currentTimeMillis() - start);
+                    future.complete(response);
+                    win(attempt, response);
+                } catch (Exception e) {
+                    future.fail(e);
+                    lose(e);
+                }
+            }
+
+            @Override
+            public void onDropped() {
+                IOException e = new IOException("Request dropped");
+                future.fail(e);
+                lose(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Complete the request with an attempt's answer and cancel the other attempts
+     */
+    private void win(SARequestAttempt winner, SANetworkResponse response) {
+        if (!result.complete(response)) return;
+
+        List<SARequestAttempt> losers;
+        synchronized (this) {
+            losers = new ArrayList<>(attempts);
+        }
+        for (SARequestAttempt attempt : losers) {
+            if (attempt != winner) {
+                attempt.cancel();
+            }
+        }
+    }
+
+    /**
+     * Fail the request if no other attempt is still running
+     */
+    private void lose(Exception e) {
+        boolean isLast;
+        synchronized (this) {
+            isLast = --pending == 0;
+        }
+        // a hedge may still be started after this, but then the first attempt failed
+        // before the delay, so there's nothing to hedge any more
+        if (isLast) {
+            result.fail(e);
+        }
+    }
+}
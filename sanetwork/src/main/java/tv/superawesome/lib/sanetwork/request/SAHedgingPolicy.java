@@ -0,0 +1,133 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.util.Arrays;
+
+/**
+ * This class configures hedging for latency critical GET requests, such as ad requests: if a
+ * request hasn't answered after a delay, a second attempt is started and whichever answers
+ * first wins, while the other is cancelled.
+ *
+ * The delay is a percentile (95th by default) of the times the policy's requests took
+ * recently, so that only the slowest few requests get hedged. A budget limits hedges to a
+ * fraction of the requests, so that a slow server never sees twice the traffic.
+ *
+ * The same instance should be reused for all the requests to an endpoint, since it keeps
+ * their latencies and the budget; all setters return the same instance so that they can be
+ * chained.
+ */
+public class SAHedgingPolicy {
+
+    // constants
+    static final int SAMPLE_WINDOW = 32;
+    static final int MIN_SAMPLES = 5;
+    private static final int DEFAULT_PERCENTILE = 95;
+    private static final long DEFAULT_DELAY = 1000;
+    private static final long DEFAULT_MIN_DELAY = 50;
+    private static final double DEFAULT_BUDGET = 0.1;
+    private static final double MAX_TOKENS = 2;
+
+    // private member variables
+    private int percentile = DEFAULT_PERCENTILE;
+    private long defaultDelay = DEFAULT_DELAY;
+    private long minDelay = DEFAULT_MIN_DELAY;
+    private double budget = DEFAULT_BUDGET;
+    private final long[] latencies = new long[SAMPLE_WINDOW];
+    private int samples = 0;
+    private double tokens = 1;
+
+    /**
+     * Set which percentile of the recent latencies a request has to exceed to get hedged
+     *
+     * @param percentile    percentile, between 1 and 99
+     * @return              this instance
+     */
+    public synchronized SAHedgingPolicy setPercentile(int percentile) {
+        this.percentile = Math.max(1, Math.min(99, percentile));
+        return this;
+    }
+
+    /**
+     * Set the delay to use until enough latencies are known; the network's pessimistic time
+     * to first byte is used instead, if it's known
+     *
+     * @param defaultDelay  time in milliseconds
+     * @return              this instance
+     */
+    public synchronized SAHedgingPolicy setDefaultDelay(long defaultDelay) {
+        this.defaultDelay = Math.max(0, defaultDelay);
+        return this;
+    }
+
+    /**
+     * Set the shortest delay before hedging, whatever the latencies
+     *
+     * @param minDelay  time in milliseconds
+     * @return          this instance
+     */
+    public synchronized SAHedgingPolicy setMinDelay(long minDelay) {
+        this.minDelay = Math.max(0, minDelay);
+        return this;
+    }
+
+    /**
+     * Set the fraction of requests that can be hedged
+     *
+     * @param budget    fraction between 0 (never hedge) and 1 (hedge every slow request)
+     * @return          this instance
+     */
+    public synchronized SAHedgingPolicy setBudget(double budget) {
+        this.budget = Math.max(0, Math.min(1, budget));
+        this.tokens = Math.min(this.tokens, this.budget > 0 ? MAX_TOKENS : 0);
+        return this;
+    }
+
+    /**
+     * @return the time to wait for an answer before hedging, in milliseconds
+     */
+    public synchronized long getDelay() {
+        long delay;
+        if (samples < MIN_SAMPLES) {
+            long timeToFirstByte = SANetworkEstimator.getShared().getEstimate().getTimeToFirstByteHigh();
+            delay = timeToFirstByte != SANetworkEstimate.UNKNOWN ? timeToFirstByte : defaultDelay;
+        } else {
+            long[] sorted = Arrays.copyOf(latencies, Math.min(samples, SAMPLE_WINDOW));
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            delay = sorted[Math.max(0, index)];
+        }
+        return Math.max(minDelay, delay);
+    }
+
+    /**
+     * Called when a hedged request starts, to add its share to the budget
+     */
+    synchronized void recordRequest() {
+        if (budget > 0) {
+            tokens = Math.min(MAX_TOKENS, tokens + budget);
+        }
+    }
+
+    /**
+     * Called when a request is slow enough to be hedged
+     *
+     * @return true if the budget allows it
+     */
+    synchronized boolean tryHedge() {
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * Called when an attempt answered
+     *
+     * @param latency   the time it took, in milliseconds
+     */
+    synchronized void addLatency(long latency) {
+        latencies[samples % SAMPLE_WINDOW] = latency;
+        samples++;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Codec for JSON objects, encoded as UTF-8
+ */
+public class SAJsonCodec implements SANetworkCodec<JSONObject> {
+
+    // constants
+    private static final String CHARSET = "UTF-8";
+
+    @Override
+    public String getContentType() {
+        return "application/json; charset=utf-8";
+    }
+
+    @Override
+    public byte[] encode(JSONObject value) throws IOException {
+        return value.toString().getBytes(CHARSET);
+    }
+
+    @Override
+    public JSONObject decode(byte[] data) throws IOException {
+        try {
+            return new JSONObject(new String(data, CHARSET));
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+}
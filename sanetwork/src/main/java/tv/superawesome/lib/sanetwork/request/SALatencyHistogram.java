@@ -0,0 +1,90 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records request latencies into a fixed number of log-linear buckets: every power
+ * of two is split into SUB_BUCKETS linear buckets, so that the relative error of any value is
+ * at most 1 / SUB_BUCKETS, from 1ms up to MAX_VALUE, in a few KB.
+ *
+ * Recording only uses atomic operations, so that request threads never wait on each other.
+ */
+class SALatencyHistogram {
+
+    // constants
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final long MAX_VALUE = (1L << 24) - 1;
+    static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    // private member variables
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a request
+     *
+     * @param latency   its latency, in milliseconds
+     * @param success   whether it succeeded
+     */
+    void record(long latency, boolean success) {
+        long value = Math.max(0, Math.min(MAX_VALUE, latency));
+        counts.incrementAndGet(indexOf(value));
+        (success ? successes : errors).incrementAndGet();
+        sum.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) break;
+        }
+    }
+
+    /**
+     * Take a snapshot of the histogram
+     *
+     * @param endpoint  the endpoint the histogram is for
+     * @param reset     whether to start a new interval; requests recorded while the snapshot
+     *                  is taken count towards one interval or the other
+     * @return          a snapshot
+     */
+    SALatencySnapshot snapshot(String endpoint, boolean reset) {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+        }
+        return new SALatencySnapshot(endpoint, buckets,
+                reset ? successes.getAndSet(0) : successes.get(),
+                reset ? errors.getAndSet(0) : errors.get(),
+                reset ? sum.getAndSet(0) : sum.get(),
+                reset ? max.getAndSet(0) : max.get());
+    }
+
+    /**
+     * @param value a latency, between 0 and MAX_VALUE
+     * @return      the index of its bucket
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return      the highest latency that goes into it
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
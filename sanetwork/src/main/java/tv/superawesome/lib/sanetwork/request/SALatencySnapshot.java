@@ -0,0 +1,104 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+/**
+ * This class is an immutable copy of an endpoint's latency histogram and success and error
+ * counts, as returned by SANetworkMetrics
+ */
+public class SALatencySnapshot {
+
+    // private member variables
+    private final String endpoint;
+    private final long[] buckets;
+    private final long successes;
+    private final long errors;
+    private final long sum;
+    private final long max;
+
+    SALatencySnapshot(String endpoint, long[] buckets, long successes, long errors, long sum, long max) {
+        this.endpoint = endpoint;
+        this.buckets = buckets;
+        this.successes = successes;
+        this.errors = errors;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * @return the endpoint, as "host/path/template"
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the number of requests recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    public long getSuccesses() {
+        return successes;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the fraction of requests that failed, or 0 if there were none
+     */
+    public double getErrorRate() {
+        long total = successes + errors;
+        return total == 0 ? 0 : (double) errors / total;
+    }
+
+    /**
+     * @return the average latency in milliseconds, or 0 if there were no requests
+     */
+    public long getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @return the highest latency in milliseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile    a percentile, between 0 and 100
+     * @return              the latency, in milliseconds, that this percentage of the requests
+     *                      didn't exceed, accurate to the width of its bucket
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(max, SALatencyHistogram.upperBoundOf(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return a copy of the bucket counts; see SALatencyHistogram for their bounds
+     */
+    public long[] getBuckets() {
+        return buckets.clone();
+    }
+}
@@ -11,32 +11,54 @@ import android.util.Log;
 import org.json.JSONObject;
 
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import javax.net.ssl.HttpsURLConnection;
 
+import tv.superawesome.lib.sanetwork.future.SAFuture;
+import tv.superawesome.lib.sanetwork.future.SAFutureListener;
+
 /**
  * This is the main class that abstracts away most major network operations needed in order
  * to communicate with the ad server
  */
 public class SANetwork {
 
+    // how long an idle connection stays in the system's connection pool
+    static final long KEEP_ALIVE = 5 * 60 * 1000;
+
+    // the origins that were preconnected and when, shared since the connection pool is
+    private static final Map<String, Long> preconnected = new HashMap<>();
+
     private int timeout = 15000;
     private Executor executor = null;
+    // runs requests that have to run alongside each other: fan-outs and hedged attempts
+    private Executor parallelExecutor = null;
     private SANetworkUtils utils = new SANetworkUtils();
+    private SACircuitBreaker breaker = SACircuitBreaker.getShared();
+    private SANetworkMetrics metrics = SANetworkMetrics.getShared();
 
     /**
-     * Constructor without any executor, so choose a new single thread executor
+     * Constructor without any executor, so requests run one after another on the shared
+     * SAThreadPool's request lane, and fan-outs, hedged attempts and preconnects on its
+     * parallel lane
      */
     public SANetwork () {
-        this.executor = Executors.newSingleThreadExecutor();
+        SAThreadPool pool = SAThreadPool.getShared();
+        this.executor = pool.newSerialExecutor(pool.getRequestExecutor());
+        this.parallelExecutor = pool.getParallelExecutor();
     }
 
     /**
@@ -45,6 +67,7 @@ public class SANetwork {
      */
     public SANetwork (Executor executor, int timeout) {
         this.executor = executor;
+        this.parallelExecutor = executor;
         this.timeout = timeout;
     }
 
@@ -56,6 +79,49 @@ public class SANetwork {
         sendRequest(url, "GET", query, header, new JSONObject(), listener);
     }
 
+    /**
+     * Same as the sendGET method above, but hedged: if no answer arrives within the policy's
+     * delay (a percentile of the recent latencies), a second attempt is started on another
+     * thread, the first answer wins and the other attempt is cancelled. Meant for idempotent,
+     * latency critical requests such as ad requests.
+     *
+     * @param policy    the hedging policy, reused across the requests to the same endpoint;
+     *                  if null the request is sent normally
+     */
+    public void sendGET(String url, JSONObject query, JSONObject header, SAHedgingPolicy policy, final SANetworkInterface listener) {
+        if (policy == null) {
+            sendGET(url, query, header, listener);
+            return;
+        }
+
+        // let background downloads know a request is waiting, until sendBack gets called
+        SARequestTracker.begin();
+
+        final String finalEndpoint = url + (!utils.isJSONEmpty(query) ? "?" + utils.formGetQueryFromDict(query) : "");
+        final JSONObject finalHeader = header;
+
+        SAHedgedRequest request = new SAHedgedRequest(parallelExecutor, policy, new SAHedgedRequest.Request() {
+            @Override
+            public SANetworkResponse execute(SARequestAttempt attempt) throws Exception {
+                return SANetwork.this.execute(finalEndpoint, "GET", finalHeader, null, null, timeout, attempt);
+            }
+        });
+
+        request.send().onComplete(new SAFutureListener<SANetworkResponse>() {
+            @Override
+            public void saDidComplete(SAFuture<SANetworkResponse> future) {
+                SANetworkResponse response = future.getValue();
+                if (response == null) {
+                    sendBack(listener, 0, null, false);
+                } else if (response.getStatus() < HttpsURLConnection.HTTP_BAD_REQUEST && response.getPayload() != null) {
+                    sendBack(listener, response.getStatus(), response.getPayload(), true);
+                } else {
+                    sendBack(listener, response.getStatus(), null, false);
+                }
+            }
+        });
+    }
+
     /**
      * This is a sister method to the private "sendRequest" method that will execute a POST
      * HTTP request
@@ -73,6 +139,326 @@ public class SANetwork {
         sendRequest(url, "PUT", query, header, body, listener);
     }
 
+    /**
+     * Same as the sendGET method above, but returns a future instead of taking a listener, so
+     * that the request can be chained and combined with other operations
+     *
+     * @return a future that succeeds with the response, or fails with a SANetworkException
+     */
+    public SAFuture<SANetworkResponse> sendGET(String url, JSONObject query, JSONObject header) {
+        SAFuture<SANetworkResponse> future = new SAFuture<>();
+        sendGET(url, query, header, listenerFor(future));
+        return future;
+    }
+
+    /**
+     * Same as the sendPOST method above, but returns a future instead of taking a listener
+     *
+     * @return a future that succeeds with the response, or fails with a SANetworkException
+     */
+    public SAFuture<SANetworkResponse> sendPOST(String url, JSONObject query, JSONObject header, JSONObject body) {
+        SAFuture<SANetworkResponse> future = new SAFuture<>();
+        sendPOST(url, query, header, body, listenerFor(future));
+        return future;
+    }
+
+    /**
+     * Same as the sendPUT method above, but returns a future instead of taking a listener
+     *
+     * @return a future that succeeds with the response, or fails with a SANetworkException
+     */
+    public SAFuture<SANetworkResponse> sendPUT(String url, JSONObject query, JSONObject header, JSONObject body) {
+        SAFuture<SANetworkResponse> future = new SAFuture<>();
+        sendPUT(url, query, header, body, listenerFor(future));
+        return future;
+    }
+
+    /**
+     * This method sends a request with a binary body and hands back the response's raw bytes,
+     * e.g. for payloads that are already encoded or for binary responses, which the String
+     * based methods would corrupt
+     *
+     * @param url           URL to send the request to
+     * @param method        the HTTP method, e.g. "GET" or "POST"
+     * @param query         a JSON object containing all the query parameters, or null
+     * @param header        a JSON object containing all the header parameters, or null
+     * @param body          the body, for POST and PUT requests, or null
+     * @param contentType   the Content-Type of the body, or null to leave it to the headers
+     * @param listener      a listener of type SANetworkDataInterface
+     */
+    public void sendData(final String url,
+                         final String method,
+                         final JSONObject query,
+                         final JSONObject header,
+                         final byte[] body,
+                         final String contentType,
+                         final SANetworkDataInterface listener) {
+
+        // let background downloads know a request is waiting, until the listener is called
+        SARequestTracker.begin();
+
+        executor.execute(new SAThreadPool.DroppableTask() {
+            @Override
+            public void run() {
+                final String finalEndpoint = url + (!utils.isJSONEmpty(query) ? "?" + utils.formGetQueryFromDict(query) : "");
+
+                int status = 0;
+                byte[] data = null;
+                try {
+                    SANetworkResponse response = execute(finalEndpoint, method, header, body, contentType, timeout, null);
+                    status = response.getStatus();
+                    data = response.getData();
+                } catch (Exception e) {
+                    // reported as a failure with status 0
+                }
+
+                final int finalStatus = status;
+                final byte[] finalData = data;
+                final boolean success = status > 0 && status < HttpsURLConnection.HTTP_BAD_REQUEST && data != null;
+
+                SARequestTracker.end();
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (listener != null) {
+                            listener.saDidGetResponse(finalStatus, success ? finalData : null, success);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onDropped() {
+                SARequestTracker.end();
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (listener != null) {
+                            listener.saDidGetResponse(0, null, false);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * This method sends a request whose body and response are encoded with codecs, e.g. to
+     * send events as protobuf or MessagePack instead of JSON. The body is encoded and the
+     * response decoded on the request's thread, the encoder sets the Content-Type and the
+     * decoder the Accept header (unless the headers already have one).
+     *
+     * @param url       URL to send the request to
+     * @param method    the HTTP method, e.g. "GET" or "POST"
+     * @param query     a JSON object containing all the query parameters, or null
+     * @param header    a JSON object containing all the header parameters, or null
+     * @param body      the body, for POST and PUT requests, or null
+     * @param encoder   the codec for the body; may be null if there's no body
+     * @param decoder   the codec for the response
+     * @return          a future that succeeds, on the main thread, with the decoded response,
+     *                  or fails with a SANetworkException if the server could not be reached
+     *                  or answered with an error, or with the codec's exception if the body
+     *                  could not be encoded or the response decoded
+     */
+    public <T, R> SAFuture<R> send(final String url,
+                                   final String method,
+                                   final JSONObject query,
+                                   final JSONObject header,
+                                   final T body,
+                                   final SANetworkCodec<T> encoder,
+                                   final SANetworkCodec<R> decoder) {
+
+        final SAFuture<R> future = new SAFuture<>();
+
+        // let background downloads know a request is waiting, until the future completes
+        SARequestTracker.begin();
+
+        executor.execute(new SAThreadPool.DroppableTask() {
+            @Override
+            public void run() {
+                final String finalEndpoint = url + (!utils.isJSONEmpty(query) ? "?" + utils.formGetQueryFromDict(query) : "");
+
+                R value = null;
+                Exception error = null;
+                try {
+                    JSONObject finalHeader = new JSONObject();
+                    if (header != null) {
+                        Iterator<String> keys = header.keys();
+                        while (keys.hasNext()) {
+                            String key = keys.next();
+                            finalHeader.put(key, header.opt(key));
+                        }
+                    }
+                    if (!finalHeader.has("Accept")) {
+                        finalHeader.put("Accept", decoder.getContentType());
+                    }
+
+                    byte[] data = body != null && encoder != null ? encoder.encode(body) : null;
+                    String contentType = data != null ? encoder.getContentType() : null;
+
+                    SANetworkResponse response;
+                    try {
+                        response = execute(finalEndpoint, method, finalHeader, data, contentType, timeout, null);
+                    } catch (Exception e) {
+                        throw new SANetworkException(0);
+                    }
+
+                    if (response.getStatus() >= HttpsURLConnection.HTTP_BAD_REQUEST) {
+                        throw new SANetworkException(response.getStatus());
+                    }
+                    value = decoder.decode(response.getData() != null ? response.getData() : new byte[0]);
+                } catch (Exception e) {
+                    error = e;
+                }
+
+                final R finalValue = value;
+                final Exception finalError = error;
+
+                SARequestTracker.end();
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (finalError != null) {
+                            future.fail(finalError);
+                        } else {
+                            future.complete(finalValue);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onDropped() {
+                SARequestTracker.end();
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        future.fail(new SANetworkException(0));
+                    }
+                });
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * This method sends the same GET request to several URLs in parallel, e.g. to fire all the
+     * third party trackers of an ad event. Requests run on SAThreadPool's parallel lane, at
+     * most SAFanOut.MAX_REQUESTS_PER_HOST at a time against the same host, and the whole
+     * fan-out shares one deadline instead of each URL getting its own timeout.
+     *
+     * @param urls      the URLs to send the request to
+     * @param header    a JSON object containing the headers to add to every request
+     * @param timeout   the time the whole fan-out can take, in milliseconds
+     * @return          a future that succeeds once all the URLs have answered or the timeout
+     *                  has passed, with the status of each URL (0 for the ones that failed or
+     *                  didn't answer in time)
+     */
+    public SAFuture<SAFanOutResult> fanOutGET(List<String> urls, final JSONObject header, long timeout) {
+        SAFanOut fanOut = new SAFanOut(parallelExecutor, new SAFanOut.Request() {
+            @Override
+            public SANetworkResponse execute(String url, int timeout) throws Exception {
+                return SANetwork.this.execute(url, "GET", header, null, timeout);
+            }
+        });
+        return fanOut.send(urls != null ? urls : new ArrayList<String>(), timeout);
+    }
+
+    /**
+     * @param future    a future to complete
+     * @return          a listener that completes the future with the request's outcome
+     */
+    private static SANetworkInterface listenerFor(final SAFuture<SANetworkResponse> future) {
+        return new SANetworkInterface() {
+            @Override
+            public void saDidGetResponse(int status, String payload, boolean success) {
+                if (success) {
+                    future.complete(new SANetworkResponse(status, payload));
+                } else {
+                    future.fail(new SANetworkException(status));
+                }
+            }
+        };
+    }
+
+    /**
+     * This method warms up the connection to a host ahead of the requests that will need it,
+     * e.g. to the ad server and CDN hosts while the app is idle: the host is resolved and a
+     * HEAD request is sent to its root, so that the DNS lookup (cached by the system), TCP
+     * connect and TLS handshake are done and the connection is left in the system's keep-alive
+     * pool, from where the next request to the same host will pick it up.
+     * Hosts that were preconnected less than KEEP_ALIVE ago are skipped. Preconnects run
+     * alongside this client's requests rather than ahead of them, so that a slow or
+     * unreachable host never delays the requests it was meant to speed up.
+     *
+     * @param url any URL on the host, e.g. "https://ads.superawesome.tv"
+     */
+    public void preconnect(final String url) {
+        parallelExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                HttpURLConnection conn = null;
+                String origin = null;
+                try {
+                    URL Url = new URL(url);
+                    origin = Url.getProtocol() + "://" + Url.getAuthority();
+
+                    synchronized (preconnected) {
+                        Long last = preconnected.get(origin);
+                        long now = System.currentTimeMillis();
+                        if (last != null && now - last >= 0 && now - last < KEEP_ALIVE) return;
+                        preconnected.put(origin, now);
+                    }
+
+                    InetAddress.getAllByName(Url.getHost());
+
+                    conn = (HttpURLConnection) new URL(origin + "/").openConnection();
+                    conn.setReadTimeout(timeout);
+                    conn.setConnectTimeout(timeout);
+                    conn.setUseCaches(false);
+                    conn.setRequestMethod("HEAD");
+                    // a redirect would warm up some other origin
+                    conn.setInstanceFollowRedirects(false);
+
+                    // the response has to be consumed and closed (not disconnected) for the
+                    // connection to go back to the pool
+                    int statusCode = conn.getResponseCode();
+                    InputStream in = statusCode >= HttpURLConnection.HTTP_BAD_REQUEST ? conn.getErrorStream() : conn.getInputStream();
+                    if (in != null) {
+                        byte[] buffer = new byte[1024];
+                        while (in.read(buffer) != -1) {
+                            // drain
+                        }
+                        in.close();
+                    }
+                } catch (Exception e) {
+                    // warming up is best effort; allow another try later on
+                    if (origin != null) {
+                        synchronized (preconnected) {
+                            preconnected.remove(origin);
+                        }
+                    }
+                    if (conn != null) {
+                        conn.disconnect();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * This is a sister method to "preconnect" that warms up a list of hosts
+     *
+     * @param urls URLs on the hosts to preconnect to
+     */
+    public void preconnect(List<String> urls) {
+        if (urls == null) return;
+        for (String url : urls) {
+            preconnect(url);
+        }
+    }
+
     /**
      * This is the generic request method.
      * It abstracts away the standard Android HttpUrlConnection code and wraps it in an
@@ -100,173 +486,192 @@ public class SANetwork {
                              final JSONObject body,
                              final SANetworkInterface listener) {
 
-        executor.execute(new Runnable() {
+        // let background downloads know a request is waiting, until sendBack gets called
+        SARequestTracker.begin();
+
+        executor.execute(new SAThreadPool.DroppableTask() {
             @Override
             public void run() {
 
                 final String finalEndpoint = endpoint + (!utils.isJSONEmpty(query) ? "?" + utils.formGetQueryFromDict(query) : "");
 
                 try {
-                    int statusCode;
-                    String response;
-                    InputStreamReader in;
-                    OutputStream os = null;
-
-                    // create a new URL object from the final endpoint that's being supplied
-                    URL Url = new URL(finalEndpoint);
-
-                    // ang get the protocol (hopefully it being HTTPS or HTTP)
-                    String proto = Url.getProtocol();
-
-                    //
-                    // Case 1: Protocol is HTTPS
-                    if (proto.equals("https")) {
-
-                        // create a new HTTPS Connection
-                        HttpsURLConnection conn = (HttpsURLConnection) Url.openConnection();
-
-                        // set connection parameters
-                        conn.setReadTimeout(timeout);
-                        conn.setConnectTimeout(timeout);
-                        conn.setUseCaches(false);
-                        conn.setDoInput(true);
-                        conn.setRequestMethod(method);
-                        // and in the POST & PUT cases, make sure I can write to the request as well
-                        if (method.equals("POST") || method.equals("PUT")) {
-                            conn.setDoOutput(true);
-                        }
+                    SANetworkResponse response = execute(finalEndpoint, method, header, body, timeout);
+                    int statusCode = response.getStatus();
 
-                        // set headers
-                        if (header != null) {
-                            Iterator<String> keys = header.keys();
-                            while (keys.hasNext()) {
-                                String key = keys.next();
-                                String value = header.optString(key);
-                                conn.setRequestProperty(key, value);
-                            }
-                        }
+                    if (statusCode < HttpsURLConnection.HTTP_BAD_REQUEST && response.getPayload() != null) {
+                        sendBack(listener, statusCode, response.getPayload(), true);
+                    }
+                    else {
+                        sendBack(listener, statusCode, null, false);
+                    }
 
-                        // once the headers have been set, finally open the connection
-                        conn.connect();
+                } catch (Exception e) {
+                    sendBack(listener, 0, null, false);
+                }
+            }
 
-                        // if it's POST & PUT, also write any existing found body
-                        if (body != null && (method.equals("POST") || method.equals("PUT"))) {
-                            String message = body.toString();
-                            os = new BufferedOutputStream(conn.getOutputStream());
-                            os.write(message.getBytes());
-                            os.flush();
-                        }
+            @Override
+            public void onDropped() {
+                sendBack(listener, 0, null, false);
+            }
+        });
+    }
 
-                        // read the result
-                        // error cases are based on HTTP status codes greater than 400
-                        statusCode = conn.getResponseCode();
-                        if (statusCode >= HttpsURLConnection.HTTP_BAD_REQUEST) {
-                            in = new InputStreamReader(conn.getErrorStream());
-                        } else {
-                            in = new InputStreamReader(conn.getInputStream());
-                        }
+    /**
+     * This method executes a request on the current thread
+     *
+     * @param finalEndpoint the URL to send the request to, including its query
+     * @param method        the HTTP method
+     * @param header        the request's headers, or null
+     * @param body          the request's body, for POST and PUT requests
+     * @param timeout       the connect and read timeouts, in milliseconds
+     * @return              the status and body of the response
+     * @throws Exception    if the server could not be reached or the response read, or if
+     *                      the host's circuit is open
+     */
+    private SANetworkResponse execute(String finalEndpoint, String method, JSONObject header, JSONObject body, int timeout) throws Exception {
+        byte[] data = body != null && (method.equals("POST") || method.equals("PUT")) ? body.toString().getBytes() : null;
+        return execute(finalEndpoint, method, header, data, null, timeout, null);
+    }
 
-                        // read the saDidGetResponse from the server
-                        String line;
-                        response = "";
-                        BufferedReader reader = new BufferedReader(in);
-                        while ((line = reader.readLine()) != null) {
-                            response += line;
-                        }
+    /**
+     * Same as the method above, with a binary body, for an attempt that may be cancelled
+     *
+     * @param body          the request's body, or null
+     * @param contentType   the Content-Type of the body, or null to leave it to the headers
+     * @param attempt       the attempt to attach the connection to, or null
+     */
+    private SANetworkResponse execute(String finalEndpoint, String method, JSONObject header, byte[] body, String contentType, int timeout, SARequestAttempt attempt) throws Exception {
 
-                        // close the body writer
-                        if (os != null) {
-                            os.close();
-                        }
+        // create a new URL object from the final endpoint that's being supplied
+        URL Url = new URL(finalEndpoint);
 
-                        // close the reader
-                        in.close();
+        // fail fast if the host has been failing lately
+        String host = Url.getAuthority();
+        if (!breaker.allowRequest(host)) {
+            throw new IOException("Circuit open for " + host);
+        }
 
-                        // disconnect
-                        conn.disconnect();
-                    }
-                    //
-                    // Case 2: Protocol is hopefully HTTP (or any other, in a worse case scenario)
-                    else {
-                        // create a new HTTPS Connection
-                        HttpURLConnection conn = (HttpURLConnection) Url.openConnection();
-
-                        // set connection parameters
-                        conn.setReadTimeout(timeout);
-                        conn.setConnectTimeout(timeout);
-                        conn.setUseCaches(false);
-                        conn.setDoInput(true);
-                        conn.setRequestMethod(method);
-                        // and in the POST & PUT cases, make sure I can write to the request as well
-                        if (method.equals("POST") || method.equals("PUT")) {
-                            conn.setDoOutput(true);
-                        }
+        long start = System.currentTimeMillis();
+        try {
+            SANetworkResponse response = execute(Url, method, header, body, contentType, timeout, attempt);
+            if (response.getStatus() >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                breaker.recordFailure(host);
+            } else {
+                breaker.recordSuccess(host);
+            }
+            metrics.record(Url, System.currentTimeMillis() - start, response.getStatus() < HttpURLConnection.HTTP_BAD_REQUEST);
+            return response;
+        } catch (Exception e) {
+            // a cancelled attempt says nothing about the host's health
+            if (attempt == null || !attempt.isCancelled()) {
+                breaker.recordFailure(host);
+                metrics.record(Url, System.currentTimeMillis() - start, false);
+            }
+            throw e;
+        }
+    }
 
-                        // set headers
-                        if (header != null) {
-                            Iterator<String> keys = header.keys();
-                            while (keys.hasNext()) {
-                                String key = keys.next();
-                                String value = header.optString(key);
-                                conn.setRequestProperty(key, value);
-                            }
-                        }
+    /**
+     * This method executes a request to a URL on the current thread, ignoring the breaker
+     */
+    private SANetworkResponse execute(URL Url, String method, JSONObject header, byte[] body, String contentType, int timeout, SARequestAttempt attempt) throws Exception {
+        int statusCode;
+        InputStream in;
+        OutputStream os = null;
+
+        // create a new connection; HttpsURLConnection extends HttpURLConnection, so
+        // both HTTP and HTTPS are set up the same way
+        HttpURLConnection conn = (HttpURLConnection) Url.openConnection();
+        if (attempt != null && !attempt.attach(conn)) {
+            throw new IOException("Request cancelled");
+        }
 
-                        // once the headers have been set, finally open the connection
-                        conn.connect();
+        // set connection parameters
+        conn.setReadTimeout(timeout);
+        conn.setConnectTimeout(timeout);
+        conn.setUseCaches(false);
+        conn.setDoInput(true);
+        conn.setRequestMethod(method);
+        // and in the POST & PUT cases, make sure I can write to the request as well
+        if (method.equals("POST") || method.equals("PUT")) {
+            conn.setDoOutput(true);
+        }
+        if (contentType != null) {
+            conn.setRequestProperty("Content-Type", contentType);
+        }
 
-                        // if it's POST & PUT, also write any existing found body
-                        if (body != null && (method.equals("POST") || method.equals("PUT"))) {
-                            String message = body.toString();
-                            os = new BufferedOutputStream(conn.getOutputStream());
-                            os.write(message.getBytes());
-                            os.flush();
-                        }
+        // set headers
+        if (header != null) {
+            Iterator<String> keys = header.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                String value = header.optString(key);
+                conn.setRequestProperty(key, value);
+            }
+        }
 
-                        // read the result
-                        // error cases are based on HTTP status codes greater than 400
-                        statusCode = conn.getResponseCode();
-                        if (statusCode >= HttpsURLConnection.HTTP_BAD_REQUEST) {
-                            in = new InputStreamReader(conn.getErrorStream());
-                        } else {
-                            in = new InputStreamReader(conn.getInputStream());
-                        }
+        // once the headers have been set, finally open the connection
+        long start = System.currentTimeMillis();
+        conn.connect();
 
-                        // read the saDidGetResponse from the server
-                        String line;
-                        response = "";
-                        BufferedReader reader = new BufferedReader(in);
-                        while ((line = reader.readLine()) != null) {
-                            response += line;
-                        }
+        // if it's POST & PUT, also write any existing found body
+        if (body != null && (method.equals("POST") || method.equals("PUT"))) {
+            os = new BufferedOutputStream(conn.getOutputStream());
+            os.write(body);
+            os.flush();
+        }
 
-                        // close the body writer
-                        if (os != null) {
-                            os.close();
-                        }
+        // read the result
+        // error cases are based on HTTP status codes greater than 400
+        statusCode = conn.getResponseCode();
+        SANetworkEstimator.getShared().addTimeToFirstByteSample(System.currentTimeMillis() - start);
 
-                        // close the reader
-                        in.close();
+        // an error response may have no body at all
+        InputStream stream = statusCode >= HttpsURLConnection.HTTP_BAD_REQUEST ? conn.getErrorStream() : conn.getInputStream();
+        if (stream == null) {
+            return new SANetworkResponse(statusCode, (byte[]) null);
+        }
+        in = stream;
+
+        // read the saDidGetResponse from the server, as bytes so that binary bodies survive
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            response.write(buffer, 0, count);
+        }
 
-                        // disconnect
-                        conn.disconnect();
-                    }
+        // close the body writer
+        if (os != null) {
+            os.close();
+        }
 
-                    if (statusCode < HttpsURLConnection.HTTP_BAD_REQUEST && response != null) {
-                        sendBack(listener, statusCode, response, true);
-                    }
-                    else {
-                        sendBack(listener, statusCode, null, false);
-                    }
+        // close the reader; the connection isn't disconnected, so that it can
+        // go back to the keep-alive pool and be reused by the next request
+        in.close();
 
-                } catch (Exception e) {
-                    sendBack(listener, 0, null, false);
-                }
-            }
-        });
+        return new SANetworkResponse(statusCode, response.toByteArray());
+    }
+
+    /**
+     * Run on the main thread if there is one, or on the current thread otherwise, as in a
+     * testing environment
+     */
+    private static void dispatch(Runnable runnable) {
+        try {
+            new Handler(Looper.getMainLooper()).post(runnable);
+        } catch (Exception e) {
+            runnable.run();
+        }
     }
 
     private void sendBack (final SANetworkInterface listener, final int status, final String response, final boolean success) {
+
+        // every request ends with exactly one call to this method
+        SARequestTracker.end();
+
         /**
          * And try to return it on the main thread
          */
@@ -0,0 +1,33 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.io.IOException;
+
+/**
+ * Interface used by SANetwork to turn request and response bodies into bytes and back, so that
+ * payloads can use any encoding (JSON, protobuf, MessagePack, ...) without SANetwork knowing it.
+ */
+public interface SANetworkCodec<T> {
+
+    /**
+     * @return the media type of the encoded bytes, sent as the request's Content-Type and as
+     *         the Accept header of the requests whose response the codec decodes
+     */
+    String getContentType();
+
+    /**
+     * @param value         a value
+     * @return              its encoding
+     * @throws IOException  if the value can't be encoded
+     */
+    byte[] encode(T value) throws IOException;
+
+    /**
+     * @param data          an encoded value
+     * @return              the value
+     * @throws IOException  if the bytes aren't a valid encoding
+     */
+    T decode(byte[] data) throws IOException;
+}
@@ -0,0 +1,20 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+/**
+ * Interface that is used by SANetwork to send a callback when a request with a binary body
+ * finishes.
+ */
+public interface SANetworkDataInterface {
+
+    /**
+     * Called on the main thread once the request has an answer or has failed
+     *
+     * @param status    the HTTP status of the network call
+     * @param data      the raw body of the response, or null if the request failed
+     * @param success   whether the operation was successful or not
+     */
+    void saDidGetResponse(int status, byte[] data, boolean success);
+}
@@ -0,0 +1,93 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+/**
+ * This class is a snapshot of what SANetworkEstimator knows about a network at a given time.
+ * Values that haven't been measured yet are reported as UNKNOWN.
+ */
+public class SANetworkEstimate {
+
+    // constants
+    public static final long UNKNOWN = -1;
+
+    // private member variables
+    private final String network;
+    private final long bandwidth;
+    private final long bandwidthLow;
+    private final int bandwidthSamples;
+    private final long timeToFirstByte;
+    private final long timeToFirstByteHigh;
+    private final int timeToFirstByteSamples;
+
+    SANetworkEstimate(String network,
+                      long bandwidth,
+                      long bandwidthLow,
+                      int bandwidthSamples,
+                      long timeToFirstByte,
+                      long timeToFirstByteHigh,
+                      int timeToFirstByteSamples) {
+        this.network = network;
+        this.bandwidth = bandwidth;
+        this.bandwidthLow = bandwidthLow;
+        this.bandwidthSamples = bandwidthSamples;
+        this.timeToFirstByte = timeToFirstByte;
+        this.timeToFirstByteHigh = timeToFirstByteHigh;
+        this.timeToFirstByteSamples = timeToFirstByteSamples;
+    }
+
+    public String getNetwork() {
+        return network;
+    }
+
+    /**
+     * @return the smoothed (EWMA) throughput of recent downloads, in bytes per second
+     */
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * @return the 10th percentile of recent download throughputs, in bytes per second, i.e. a
+     *         pessimistic value to size assets with
+     */
+    public long getBandwidthLow() {
+        return bandwidthLow;
+    }
+
+    public int getBandwidthSamples() {
+        return bandwidthSamples;
+    }
+
+    /**
+     * @return the smoothed (EWMA) time between sending a request and getting the response's
+     *         status line, in milliseconds; this includes the connection's round trips
+     */
+    public long getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * @return the 90th percentile of recent times to first byte, in milliseconds, i.e. a
+     *         pessimistic value to set timeouts with
+     */
+    public long getTimeToFirstByteHigh() {
+        return timeToFirstByteHigh;
+    }
+
+    public int getTimeToFirstByteSamples() {
+        return timeToFirstByteSamples;
+    }
+
+    /**
+     * Work out how long a download is likely to take, using the pessimistic estimates
+     *
+     * @param bytes the size of the file
+     * @return      a duration in milliseconds, or UNKNOWN if there isn't enough data yet
+     */
+    public long estimateDownloadTime(long bytes) {
+        if (bandwidthLow <= 0 || timeToFirstByteHigh == UNKNOWN) return UNKNOWN;
+        return timeToFirstByteHigh + (bytes * 1000) / bandwidthLow;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class passively estimates the quality of the network from the traffic the library
+ * already does: SANetwork requests and file downloads report their time to first byte and
+ * downloads also report their throughput.
+ *
+ * Estimates are kept per network, as named by setNetwork() (e.g. "wifi" or "cellular"), so
+ * that switching networks doesn't mix unrelated measurements. For each network the estimator
+ * keeps both an exponentially weighted moving average, which follows changes quickly, and the
+ * last SAMPLE_WINDOW samples, from which pessimistic percentiles are worked out.
+ */
+public class SANetworkEstimator {
+
+    // constants
+    public static final String DEFAULT_NETWORK = "default";
+    static final int SAMPLE_WINDOW = 32;
+    static final long MIN_THROUGHPUT_BYTES = 32 * 1024;
+    static final long MIN_THROUGHPUT_TIME = 50;
+    private static final double EWMA_WEIGHT = 0.25;
+
+    // shared estimator used by the whole library
+    private static final SANetworkEstimator shared = new SANetworkEstimator();
+
+    /**
+     * A series of samples, with its moving average and its most recent values
+     */
+    private static class Samples {
+
+        private final long[] values = new long[SAMPLE_WINDOW];
+        private int count = 0;
+        private double average = 0;
+
+        void add(long value) {
+            average = count == 0 ? value : average + EWMA_WEIGHT * (value - average);
+            values[count % SAMPLE_WINDOW] = value;
+            count++;
+        }
+
+        long average() {
+            return count == 0 ? SANetworkEstimate.UNKNOWN : Math.round(average);
+        }
+
+        long percentile(int percent) {
+            if (count == 0) return SANetworkEstimate.UNKNOWN;
+            long[] sorted = Arrays.copyOf(values, Math.min(count, SAMPLE_WINDOW));
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+    }
+
+    /**
+     * All the samples for one network
+     */
+    private static class Network {
+        final Samples throughput = new Samples();
+        final Samples timeToFirstByte = new Samples();
+    }
+
+    // private member variables
+    private final Map<String, Network> networks = new HashMap<>();
+    private String network = DEFAULT_NETWORK;
+
+    /**
+     * @return the estimator shared by all requests and downloads in the process
+     */
+    public static SANetworkEstimator getShared() {
+        return shared;
+    }
+
+    /**
+     * Set the network new samples belong to, e.g. when connectivity changes
+     *
+     * @param network a name for the network, or null for DEFAULT_NETWORK
+     */
+    public synchronized void setNetwork(String network) {
+        this.network = network != null ? network : DEFAULT_NETWORK;
+    }
+
+    public synchronized String getNetwork() {
+        return network;
+    }
+
+    /**
+     * Add a throughput sample. Transfers that are too small or too short are ignored, since
+     * they measure latency rather than bandwidth.
+     *
+     * @param bytes     the number of bytes transferred
+     * @param millis    the time spent transferring them
+     */
+    public synchronized void addThroughputSample(long bytes, long millis) {
+        if (bytes < MIN_THROUGHPUT_BYTES || millis < MIN_THROUGHPUT_TIME) return;
+        current().throughput.add((bytes * 1000) / millis);
+    }
+
+    /**
+     * Add a time to first byte sample
+     *
+     * @param millis the time between sending a request and getting its status line
+     */
+    public synchronized void addTimeToFirstByteSample(long millis) {
+        if (millis < 0) return;
+        current().timeToFirstByte.add(millis);
+    }
+
+    /**
+     * @return the estimate for the current network
+     */
+    public synchronized SANetworkEstimate getEstimate() {
+        return getEstimate(network);
+    }
+
+    /**
+     * @param network   the name of a network
+     * @return          the estimate for that network
+     */
+    public synchronized SANetworkEstimate getEstimate(String network) {
+        Network samples = networks.get(network);
+        if (samples == null) {
+            samples = new Network();
+        }
+        return new SANetworkEstimate(network,
+                samples.throughput.average(),
+                samples.throughput.percentile(10),
+                samples.throughput.count,
+                samples.timeToFirstByte.average(),
+                samples.timeToFirstByte.percentile(90),
+                samples.timeToFirstByte.count);
+    }
+
+    /**
+     * Forget everything measured so far, on all networks
+     */
+    public synchronized void reset() {
+        networks.clear();
+    }
+
+    private Network current() {
+        Network samples = networks.get(network);
+        if (samples == null) {
+            samples = new Network();
+            networks.put(network, samples);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.io.IOException;
+
+/**
+ * Exception a SANetwork request's SAFuture fails with, carrying the HTTP status of the answer
+ */
+public class SANetworkException extends IOException {
+
+    // constants
+    private static final long serialVersionUID = 1L;
+
+    // private member variables
+    private final int status;
+
+    /**
+     * Constructor
+     *
+     * @param status    the HTTP status, or 0 if the server could not be reached
+     */
+    public SANetworkException(int status) {
+        super(status == 0 ? "Request failed" : "Request failed with status " + status);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
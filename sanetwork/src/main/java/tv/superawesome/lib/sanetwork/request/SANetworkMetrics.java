@@ -0,0 +1,115 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * This class keeps a latency histogram, with success and error counts, for every endpoint
+ * SANetwork sends requests to, so that aggregated network health can be reported instead of
+ * individual requests.
+ *
+ * Endpoints are identified by host and path template: path segments that look like ids
+ * (numbers, hex strings or UUIDs) are replaced by ":id", and the query is left out, so that
+ * e.g. "/ad/1234?test=true" and "/ad/5678" are both recorded as "/ad/:id". Alternatively,
+ * requests can be grouped by host alone.
+ */
+public class SANetworkMetrics {
+
+    // constants
+    static final String ID = ":id";
+    private static final Pattern ID_SEGMENT = Pattern.compile("\\d+|[0-9a-fA-F]{16,}|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    // shared metrics used by the whole library
+    private static final SANetworkMetrics shared = new SANetworkMetrics();
+
+    // private member variables
+    private final ConcurrentHashMap<String, SALatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private volatile boolean isGroupedByHost = false;
+
+    /**
+     * @return the metrics shared by all requests in the process
+     */
+    public static SANetworkMetrics getShared() {
+        return shared;
+    }
+
+    /**
+     * Set whether requests are grouped by host only, instead of by host and path template.
+     * Changing it doesn't affect what was already recorded.
+     *
+     * @param isGroupedByHost   true or false
+     */
+    public void setGroupedByHost(boolean isGroupedByHost) {
+        this.isGroupedByHost = isGroupedByHost;
+    }
+
+    /**
+     * Record a request
+     *
+     * @param url       the URL of the request
+     * @param latency   how long it took, in milliseconds
+     * @param success   whether it got an answer below 400
+     */
+    public void record(URL url, long latency, boolean success) {
+        String endpoint = endpointOf(url);
+        SALatencyHistogram histogram = histograms.get(endpoint);
+        if (histogram == null) {
+            SALatencyHistogram created = new SALatencyHistogram();
+            histogram = histograms.putIfAbsent(endpoint, created);
+            if (histogram == null) histogram = created;
+        }
+        histogram.record(latency, success);
+    }
+
+    /**
+     * @return a snapshot of every endpoint, keyed by endpoint
+     */
+    public Map<String, SALatencySnapshot> getSnapshots() {
+        return snapshots(false);
+    }
+
+    /**
+     * Take a snapshot of every endpoint and start a new reporting interval
+     *
+     * @return a snapshot of every endpoint, keyed by endpoint
+     */
+    public Map<String, SALatencySnapshot> getSnapshotsAndReset() {
+        return snapshots(true);
+    }
+
+    /**
+     * Forget all the endpoints
+     */
+    public void reset() {
+        histograms.clear();
+    }
+
+    private Map<String, SALatencySnapshot> snapshots(boolean reset) {
+        Map<String, SALatencySnapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, SALatencyHistogram> entry : histograms.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot(entry.getKey(), reset));
+        }
+        return snapshots;
+    }
+
+    /**
+     * @param url   a URL
+     * @return      the endpoint it belongs to
+     */
+    String endpointOf(URL url) {
+        if (isGroupedByHost) return url.getAuthority();
+
+        StringBuilder endpoint = new StringBuilder(url.getAuthority());
+        for (String segment : url.getPath().split("/")) {
+            if (segment.isEmpty()) continue;
+            endpoint.append('/').append(ID_SEGMENT.matcher(segment).matches() ? ID : segment);
+        }
+        return endpoint.toString();
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * This class holds the answer to a SANetwork request, as the value of its SAFuture
+ */
+public class SANetworkResponse {
+
+    // private member variables
+    private final int status;
+    private final byte[] data;
+    private String payload = null;
+
+    /**
+     * Constructor
+     *
+     * @param status    the HTTP status of the request
+     * @param payload   the body of the response
+     */
+    public SANetworkResponse(int status, String payload) {
+        this.status = status;
+        this.payload = payload;
+        this.data = payload != null ? payload.getBytes() : null;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param status    the HTTP status of the request
+     * @param data      the raw body of the response, or null if it had none
+     */
+    SANetworkResponse(int status, byte[] data) {
+        this.status = status;
+        this.data = data;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the raw body of the response, or null if it had none
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the body of the response as text, with its lines joined as SANetwork has always
+     *         returned it, or null if it had none
+     */
+    public synchronized String getPayload() {
+        if (payload == null && data != null) {
+            payload = joinLines(data);
+        }
+        return payload;
+    }
+
+    private static String joinLines(byte[] data) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data)));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                builder.append(line);
+            }
+        } catch (IOException e) {
+            // can't happen when reading from memory
+        }
+        return builder.toString();
+    }
+}
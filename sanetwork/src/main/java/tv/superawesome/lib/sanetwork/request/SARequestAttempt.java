@@ -0,0 +1,47 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.net.HttpURLConnection;
+
+/**
+ * This class lets a request that's running on another thread be cancelled, by disconnecting
+ * its connection, e.g. the slower attempt of a hedged request
+ */
+class SARequestAttempt {
+
+    // private member variables
+    private HttpURLConnection connection = null;
+    private boolean isCancelled = false;
+
+    /**
+     * Called by the request once its connection has been opened
+     *
+     * @param connection    the connection
+     * @return              false if the attempt was cancelled already
+     */
+    synchronized boolean attach(HttpURLConnection connection) {
+        this.connection = connection;
+        return !isCancelled;
+    }
+
+    /**
+     * Stop the attempt; its request fails with an IOException
+     */
+    void cancel() {
+        HttpURLConnection toDisconnect;
+        synchronized (this) {
+            if (isCancelled) return;
+            isCancelled = true;
+            toDisconnect = connection;
+        }
+        if (toDisconnect != null) {
+            toDisconnect.disconnect();
+        }
+    }
+
+    synchronized boolean isCancelled() {
+        return isCancelled;
+    }
+}
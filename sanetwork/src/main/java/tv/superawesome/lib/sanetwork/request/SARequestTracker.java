@@ -0,0 +1,65 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+/**
+ * This class keeps a process wide count of the SANetwork requests that are waiting for an
+ * answer, so that background work such as file downloads can step aside while a latency
+ * critical request (e.g. an ad request) is in flight.
+ */
+public class SARequestTracker {
+
+    // the number of requests in flight
+    private static int requests = 0;
+    private static final Object lock = new Object();
+
+    /**
+     * Called when a request gets sent
+     */
+    public static void begin() {
+        synchronized (lock) {
+            requests++;
+        }
+    }
+
+    /**
+     * Called when a request gets an answer or fails
+     */
+    public static void end() {
+        synchronized (lock) {
+            requests = Math.max(0, requests - 1);
+            if (requests == 0) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    public static int getRequestsInFlight() {
+        synchronized (lock) {
+            return requests;
+        }
+    }
+
+    /**
+     * Block until no request is in flight or a timeout passes
+     *
+     * @param timeout   the maximum time to wait, in milliseconds
+     * @return          true if no request is in flight any more
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public static boolean awaitIdle(long timeout) throws InterruptedException {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (requests > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                lock.wait(remaining);
+            }
+            return true;
+        }
+    }
+}
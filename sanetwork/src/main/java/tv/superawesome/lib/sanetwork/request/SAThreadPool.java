@@ -0,0 +1,516 @@
+/**
+ * @Copyright:   SuperAwesome Trading Limited 2018
+ */
+package tv.superawesome.lib.sanetwork.request;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds the threads shared by every SANetwork and SAFileDownloader in the process,
+ * so that creating clients freely doesn't leave idle threads behind.
+ *
+ * Work runs on one of four lanes, each with a bounded number of threads: a request lane for
+ * short requests and cache lookups, a parallel lane for fan-outs, hedged attempts and
+ * preconnects, a download lane for files that are needed now and a prefetch lane for files
+ * downloaded ahead of time. That way a burst of slow tracking URLs or a large file never
+ * holds up an ad request, and prefetches never hold up a file that's needed now. Threads are
+ * only started when there's work and are stopped again once they've been idle for
+ * IDLE_TIMEOUT.
+ *
+ * Clients get a serial executor on top of a lane, which runs their tasks one after another
+ * just like the single thread executor each of them used to create. A single timer thread,
+ * reaped just like the lanes' threads, runs delayed tasks such as SAFuture timeouts.
+ *
+ * Tasks that keep some state until they run (a request in flight, a busy slot, a pending
+ * future) should be DroppableTasks, so that the state gets cleaned up if shutdown() drops
+ * them before they get to run.
+ */
+public class SAThreadPool {
+
+    /**
+     * A task that has to clean up after itself if it never runs
+     */
+    public interface DroppableTask extends Runnable {
+
+        /**
+         * Called instead of run() when the pool gets shut down before the task started, on
+         * the thread calling shutdown(). Should be short, e.g. fail a future or release a slot.
+         */
+        void onDropped();
+    }
+
+    // constants
+    static final int REQUEST_THREADS = 8;
+    static final int PARALLEL_THREADS = 8;
+    static final int DOWNLOAD_THREADS = 2;
+    static final int PREFETCH_THREADS = 4;
+    static final long IDLE_TIMEOUT = 30 * 1000;
+
+    // shared pool used by the whole library
+    private static final SAThreadPool shared = new SAThreadPool(REQUEST_THREADS, PARALLEL_THREADS, DOWNLOAD_THREADS, PREFETCH_THREADS, IDLE_TIMEOUT);
+
+    // private member variables
+    private final int requestThreads;
+    private final int parallelThreads;
+    private final int downloadThreads;
+    private final int prefetchThreads;
+    private final long idleTimeout;
+    private ThreadPoolExecutor requests = null;
+    private ThreadPoolExecutor parallel = null;
+    private ThreadPoolExecutor downloads = null;
+    private ThreadPoolExecutor prefetches = null;
+    private ScheduledThreadPoolExecutor timer = null;
+    private int generation = 0;
+    // serial executors that have a task running or queued, so that shutdown() can drop them
+    private final Set<SerialExecutor> busy = new HashSet<>();
+
+    private final Executor requestLane = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            submit(getRequestPool(), task);
+        }
+    };
+
+    private final Executor parallelLane = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            submit(getParallelPool(), task);
+        }
+    };
+
+    private final Executor downloadLane = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            submit(getDownloadPool(), task);
+        }
+    };
+
+    private final Executor prefetchLane = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            submit(getPrefetchPool(), task);
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param requestThreads    the maximum number of threads of the request lane
+     * @param parallelThreads   the maximum number of threads of the parallel lane
+     * @param downloadThreads   the maximum number of threads of the download lane
+     * @param prefetchThreads   the maximum number of threads of the prefetch lane
+     * @param idleTimeout       how long an idle thread is kept, in milliseconds
+     */
+    SAThreadPool(int requestThreads, int parallelThreads, int downloadThreads, int prefetchThreads, long idleTimeout) {
+        this.requestThreads = requestThreads;
+        this.parallelThreads = parallelThreads;
+        this.downloadThreads = downloadThreads;
+        this.prefetchThreads = prefetchThreads;
+        this.idleTimeout = idleTimeout;
+    }
+
+    public static SAThreadPool getShared() {
+        return shared;
+    }
+
+    /**
+     * @return an executor that runs tasks in parallel on the request lane
+     */
+    public Executor getRequestExecutor() {
+        return requestLane;
+    }
+
+    /**
+     * @return an executor that runs tasks in parallel on the parallel lane, meant for requests
+     *         that have to run alongside each other, such as fan-outs and hedged attempts
+     */
+    public Executor getParallelExecutor() {
+        return parallelLane;
+    }
+
+    /**
+     * @return an executor that runs tasks in parallel on the download lane
+     */
+    public Executor getDownloadExecutor() {
+        return downloadLane;
+    }
+
+    /**
+     * @return an executor that runs tasks in parallel on the prefetch lane
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetchLane;
+    }
+
+    /**
+     * Create an executor that runs its tasks one after another on one of this pool's lanes
+     *
+     * @param lane  one of the executors of this pool's lanes
+     * @return      a new serial executor
+     */
+    public Executor newSerialExecutor(Executor lane) {
+        return new SerialExecutor(lane);
+    }
+
+    /**
+     * Clean up after a task that's not going to run, if it's a DroppableTask
+     *
+     * @param task  the task
+     */
+    public static void drop(Runnable task) {
+        if (task instanceof DroppableTask) {
+            ((DroppableTask) task).onDropped();
+        }
+    }
+
+    /**
+     * Run a task once a delay has passed, on the pool's timer thread. Tasks should be short,
+     * e.g. failing a future or handing work over to a lane.
+     *
+     * @param task  the task to run
+     * @param delay the delay, in milliseconds
+     * @return      a future that can be used to cancel the task
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return getTimer().schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of threads currently alive across all lanes and the timer
+     */
+    public synchronized int getThreadCount() {
+        return sizeOf(requests) + sizeOf(parallel) + sizeOf(downloads) + sizeOf(prefetches) + sizeOf(timer);
+    }
+
+    /**
+     * Stop all the threads straight away, e.g. when the SDK is torn down. Running tasks are
+     * interrupted, and queued or scheduled tasks never run: the DroppableTasks among them
+     * get onDropped() called instead, so that their requests, downloads and futures fail
+     * rather than wait forever. Clients stay usable: new threads are started if they get
+     * used afterwards.
+     */
+    public void shutdown() {
+        List<ThreadPoolExecutor> old = new ArrayList<>();
+        List<SerialExecutor> serials;
+
+        synchronized (this) {
+            old.add(requests);
+            old.add(parallel);
+            old.add(downloads);
+            old.add(prefetches);
+            old.add(timer);
+            requests = null;
+            parallel = null;
+            downloads = null;
+            prefetches = null;
+            timer = null;
+            generation++;
+            serials = new ArrayList<>(busy);
+            busy.clear();
+        }
+
+        List<Runnable> dropped = new ArrayList<>();
+        for (ThreadPoolExecutor pool : old) {
+            if (pool == null) continue;
+            for (Runnable task : pool.shutdownNow()) {
+                if (task instanceof ScheduledTask) {
+                    ScheduledTask<?> scheduled = (ScheduledTask<?>) task;
+                    if (!scheduled.isCancelled()) dropped.add(scheduled.task);
+                } else {
+                    dropped.add(task);
+                }
+            }
+        }
+        for (SerialExecutor serial : serials) {
+            dropped.addAll(serial.checkGeneration());
+        }
+
+        for (Runnable task : dropped) {
+            drop(task);
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getRequestPool() {
+        if (requests == null) {
+            requests = newPool(requestThreads, "SANetwork-request");
+        }
+        return requests;
+    }
+
+    private synchronized ThreadPoolExecutor getParallelPool() {
+        if (parallel == null) {
+            parallel = newPool(parallelThreads, "SANetwork-parallel");
+        }
+        return parallel;
+    }
+
+    private synchronized ThreadPoolExecutor getDownloadPool() {
+        if (downloads == null) {
+            downloads = newPool(downloadThreads, "SANetwork-download");
+        }
+        return downloads;
+    }
+
+    private synchronized ThreadPoolExecutor getPrefetchPool() {
+        if (prefetches == null) {
+            prefetches = newPool(prefetchThreads, "SANetwork-prefetch");
+        }
+        return prefetches;
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getTimer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, newThreadFactory("SANetwork-timer-")) {
+                // keep hold of the tasks, so that the dropped ones can be told
+                @Override
+                protected <V> RunnableScheduledFuture<V> decorateTask(Runnable runnable, RunnableScheduledFuture<V> task) {
+                    return new ScheduledTask<>(runnable, task);
+                }
+            };
+            timer.setKeepAliveTime(idleTimeout, TimeUnit.MILLISECONDS);
+            timer.allowCoreThreadTimeOut(true);
+        }
+        return timer;
+    }
+
+    private synchronized int getGeneration() {
+        return generation;
+    }
+
+    private synchronized void setBusy(SerialExecutor serial, boolean isBusy) {
+        if (isBusy) {
+            busy.add(serial);
+        } else {
+            busy.remove(serial);
+        }
+    }
+
+    /**
+     * Hand a task over to a lane, or drop it if the lane is being shut down
+     */
+    private static void submit(ThreadPoolExecutor pool, Runnable task) {
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            drop(task);
+        }
+    }
+
+    private static int sizeOf(ThreadPoolExecutor pool) {
+        return pool != null ? pool.getPoolSize() : 0;
+    }
+
+    /**
+     * Create a lane whose threads are all allowed to time out, so that an idle lane holds
+     * no thread at all
+     */
+    private ThreadPoolExecutor newPool(int threads, String name) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, idleTimeout, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), newThreadFactory(name + "-"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, name + count.incrementAndGet());
+            }
+        };
+    }
+
+    /**
+     * Scheduled task that remembers the task it runs, which the timer otherwise hides
+     */
+    private static class ScheduledTask<V> implements RunnableScheduledFuture<V> {
+
+        private final Runnable task;
+        private final RunnableScheduledFuture<V> future;
+
+        ScheduledTask(Runnable task, RunnableScheduledFuture<V> future) {
+            this.task = task;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            future.run();
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return future.isPeriodic();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return future.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return future.compareTo(other instanceof ScheduledTask ? ((ScheduledTask<?>) other).future : other);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return future.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return future.get(timeout, unit);
+        }
+    }
+
+    /**
+     * Executor that hands its tasks to a lane one at a time. Whatever it had queued when the
+     * pool was shut down is dropped.
+     */
+    private class SerialExecutor implements Executor {
+
+        private final Executor lane;
+        private final Queue<SerialTask> tasks = new ArrayDeque<>();
+        private SerialTask active = null;
+        private int generation;
+
+        SerialExecutor(Executor lane) {
+            this.lane = lane;
+            this.generation = getGeneration();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            List<SerialTask> dropped;
+            SerialTask next = null;
+
+            synchronized (this) {
+                dropped = checkGeneration();
+                tasks.offer(new SerialTask(task));
+                if (active == null) {
+                    next = activateNext();
+                }
+            }
+
+            // tasks are handed over and dropped outside of the lock, since dropping one runs
+            // its clean up and the lane may drop the task straight away
+            for (SerialTask serialTask : dropped) {
+                drop(serialTask);
+            }
+            if (next != null) {
+                lane.execute(next);
+            }
+        }
+
+        /**
+         * Start the next task once the active one is over, whether it ran or got dropped
+         */
+        private void didFinish(SerialTask finished) {
+            List<SerialTask> dropped;
+            SerialTask next;
+
+            synchronized (this) {
+                // a task dropped by a shutdown doesn't get to start the next one
+                if (active != finished) return;
+                active = null;
+                dropped = checkGeneration();
+                next = activateNext();
+            }
+
+            for (SerialTask serialTask : dropped) {
+                drop(serialTask);
+            }
+            if (next != null) {
+                lane.execute(next);
+            }
+        }
+
+        /**
+         * Forget about the queued and active tasks if the pool was shut down since
+         *
+         * @return the queued tasks, to be dropped once out of the lock
+         */
+        private synchronized List<SerialTask> checkGeneration() {
+            List<SerialTask> dropped = new ArrayList<>();
+            int current = getGeneration();
+            if (current != generation) {
+                generation = current;
+                dropped.addAll(tasks);
+                tasks.clear();
+                active = null;
+                setBusy(this, false);
+            }
+            return dropped;
+        }
+
+        private SerialTask activateNext() {
+            active = tasks.poll();
+            setBusy(this, active != null);
+            return active;
+        }
+
+        /**
+         * Task that starts the next one once it's over
+         */
+        private class SerialTask implements DroppableTask {
+
+            private final Runnable task;
+
+            SerialTask(Runnable task) {
+                this.task = task;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    didFinish(this);
+                }
+            }
+
+            @Override
+            public void onDropped() {
+                try {
+                    drop(task);
+                } finally {
+                    didFinish(this);
+                }
+            }
+        }
+    }
+}
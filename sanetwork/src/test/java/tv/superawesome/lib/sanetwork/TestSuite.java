@@ -3,10 +3,32 @@ package tv.superawesome.lib.sanetwork;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import tv.superawesome.lib.sanetwork.file.TestSAFileAssetCache;
+import tv.superawesome.lib.sanetwork.file.TestSAFileBufferPool;
+import tv.superawesome.lib.sanetwork.file.TestSAFileCacheIndex;
+import tv.superawesome.lib.sanetwork.file.TestSAFileCopier;
+import tv.superawesome.lib.sanetwork.file.TestSAFileDeadlineEstimator;
+import tv.superawesome.lib.sanetwork.file.TestSAFileDigest;
+import tv.superawesome.lib.sanetwork.file.TestSAFileDownloadHandle;
 import tv.superawesome.lib.sanetwork.file.TestSAFileDownloader;
 import tv.superawesome.lib.sanetwork.file.TestSAFileItem;
+import tv.superawesome.lib.sanetwork.file.TestSAFileProgressThrottle;
+import tv.superawesome.lib.sanetwork.file.TestSAFileScheduler;
+import tv.superawesome.lib.sanetwork.file.TestSAFileStatsRecorder;
+import tv.superawesome.lib.sanetwork.file.TestSAFileStorage;
+import tv.superawesome.lib.sanetwork.file.TestSARateLimiter;
+import tv.superawesome.lib.sanetwork.file.TestSAProgressiveFile;
 import tv.superawesome.lib.sanetwork.request.TestSANetwork;
+import tv.superawesome.lib.sanetwork.future.TestSAFuture;
+import tv.superawesome.lib.sanetwork.load.TestSALoad;
+import tv.superawesome.lib.sanetwork.request.TestSACircuitBreaker;
+import tv.superawesome.lib.sanetwork.request.TestSAFanOut;
+import tv.superawesome.lib.sanetwork.request.TestSAHedgedRequest;
+import tv.superawesome.lib.sanetwork.request.TestSANetworkEstimator;
+import tv.superawesome.lib.sanetwork.request.TestSANetworkMetrics;
 import tv.superawesome.lib.sanetwork.request.TestSANetworkUtils;
+import tv.superawesome.lib.sanetwork.request.TestSARequestTracker;
+import tv.superawesome.lib.sanetwork.request.TestSAThreadPool;
 
 /**
  * Created by gabriel.coman on 30/04/2018.
@@ -16,7 +38,29 @@ import tv.superawesome.lib.sanetwork.request.TestSANetworkUtils;
         TestSAFileItem.class,
         TestSANetwork.class,
         TestSAFileDownloader.class,
-        TestSANetworkUtils.class
+        TestSANetworkUtils.class,
+        TestSAFileCacheIndex.class,
+        TestSAFileProgressThrottle.class,
+        TestSAFileBufferPool.class,
+        TestSAFileCopier.class,
+        TestSAProgressiveFile.class,
+        TestSAFileScheduler.class,
+        TestSAFileDigest.class,
+        TestSARateLimiter.class,
+        TestSARequestTracker.class,
+        TestSAFileDownloadHandle.class,
+        TestSAFileAssetCache.class,
+        TestSAFileDeadlineEstimator.class,
+        TestSANetworkEstimator.class,
+        TestSAFileStatsRecorder.class,
+        TestSAFileStorage.class,
+        TestSAFuture.class,
+        TestSAFanOut.class,
+        TestSACircuitBreaker.class,
+        TestSAHedgedRequest.class,
+        TestSALoad.class,
+        TestSANetworkMetrics.class,
+        TestSAThreadPool.class
 })
 public class TestSuite {
 }
@@ -0,0 +1,191 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class TestSAFileAssetCache {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private SAFileBufferPool pool;
+
+    @Before
+    public void setUp () throws Exception {
+        directory = folder.newFolder("files");
+        pool = new SAFileBufferPool(1024 * 1024);
+    }
+
+    @Test
+    public void test_SAFileAssetCache_SmallFile_IsReadOnce () throws Exception {
+        // given
+        byte[] data = randomBytes(10000);
+        cache("small", "small.html", data);
+        SAFileAssetCache cache = new SAFileAssetCache(directory, pool, 1024 * 1024);
+
+        // when
+        SAFileAsset first = cache.open("small");
+        write("small.html", randomBytes(10000));
+        SAFileAsset second = cache.open("small");
+
+        // then
+        assertFalse(first.isMapped());
+        assertEquals(data.length, first.getSize());
+        assertTrue(Arrays.equals(data, first.getBytes()));
+        assertTrue(Arrays.equals(data, second.getBytes()));
+        assertEquals(data.length, cache.getBytes());
+    }
+
+    @Test
+    public void test_SAFileAssetCache_LargeFile_IsMapped () throws Exception {
+        // given
+        byte[] data = randomBytes(SAFileBufferPool.MAX_SIZE + 1);
+        cache("large", "large.mp4", data);
+        SAFileAssetCache cache = new SAFileAssetCache(directory, pool, 4 * 1024 * 1024);
+
+        // when
+        SAFileAsset asset = cache.open("large");
+
+        // then
+        assertTrue(asset.isMapped());
+        ByteBuffer buffer = asset.getBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertEquals(data.length, buffer.remaining());
+        assertTrue(Arrays.equals(data, asset.getBytes()));
+    }
+
+    @Test
+    public void test_SAFileAssetCache_Views_AreIndependent () throws Exception {
+        // given
+        cache("small", "small.html", randomBytes(100));
+        SAFileAssetCache cache = new SAFileAssetCache(directory, pool, 1024 * 1024);
+        SAFileAsset asset = cache.open("small");
+
+        // when
+        ByteBuffer first = asset.getBuffer();
+        first.get(new byte[50]);
+        ByteBuffer second = asset.getBuffer();
+
+        // then
+        assertEquals(50, first.remaining());
+        assertEquals(100, second.remaining());
+    }
+
+    @Test
+    public void test_SAFileAssetCache_Invalidate_WhileInUse_KeepsContent () throws Exception {
+        // given
+        byte[] data = randomBytes(10000);
+        cache("small", "small.html", data);
+        SAFileAssetCache cache = new SAFileAssetCache(directory, pool, 1024 * 1024);
+        SAFileAsset asset = cache.open("small");
+        int pooledBefore = pool.getPooledBytes();
+
+        // when
+        cache.invalidate("small");
+
+        // then
+        assertEquals(0, cache.getBytes());
+        assertEquals(pooledBefore, pool.getPooledBytes());
+        assertTrue(Arrays.equals(data, asset.getBytes()));
+
+        // and the buffer only goes back to the pool once released
+        asset.release();
+        asset.release();
+        assertEquals(pooledBefore + SAFileBufferPool.capacityFor(data.length), pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_SAFileAssetCache_Released_CannotBeRead () throws Exception {
+        // given
+        cache("small", "small.html", randomBytes(100));
+        SAFileAssetCache cache = new SAFileAssetCache(directory, pool, 1024 * 1024);
+        SAFileAsset asset = cache.open("small");
+
+        // when
+        asset.close();
+
+        // then
+        try {
+            asset.getBuffer();
+            fail();
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void test_SAFileAssetCache_Trim_SkipsContentInUse () throws Exception {
+        // given
+        byte[] dataA = randomBytes(30000);
+        byte[] dataB = randomBytes(30001);
+        byte[] dataC = randomBytes(30002);
+        cache("a", "a.html", dataA);
+        cache("b", "b.html", dataB);
+        cache("c", "c.html", dataC);
+        SAFileAssetCache cache = new SAFileAssetCache(directory, pool, 64 * 1024);
+
+        // when
+        SAFileAsset a = cache.open("a");
+        SAFileAsset b = cache.open("b");
+        b.release();
+        SAFileAsset c = cache.open("c");
+
+        byte[] newB = randomBytes(30001);
+        write("a.html", randomBytes(30000));
+        write("b.html", newB);
+        write("c.html", randomBytes(30002));
+
+        // then (b was the only one not in use, so it's the only one read again)
+        assertEquals(60002, cache.getBytes());
+        assertTrue(Arrays.equals(dataA, cache.open("a").getBytes()));
+        assertTrue(Arrays.equals(dataC, cache.open("c").getBytes()));
+        assertTrue(Arrays.equals(newB, cache.open("b").getBytes()));
+    }
+
+    @Test
+    public void test_SAFileAssetCache_WithWrongSize_ReturnsNull () throws Exception {
+        // given
+        cache("small", "small.html", randomBytes(100));
+        write("small.html", randomBytes(50));
+        SAFileAssetCache cache = new SAFileAssetCache(directory, pool, 1024 * 1024);
+
+        // then
+        assertNull(cache.open("small"));
+        assertNull(cache.open("unknown"));
+    }
+
+    private void cache (String key, String path, byte[] data) throws IOException {
+        write(path, data);
+        SAFileCacheEntry entry = new SAFileCacheEntry(key, path);
+        entry.setSize(data.length);
+        SAFileCacheIndex.forDirectory(directory).put(entry);
+    }
+
+    private void write (String path, byte[] data) throws IOException {
+        FileOutputStream output = new FileOutputStream(new File(directory, path));
+        output.write(data);
+        output.close();
+    }
+
+    private static byte[] randomBytes (int count) {
+        byte[] data = new byte[count];
+        new Random(count).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,68 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+
+public class TestSAFileBufferPool {
+
+    @Test
+    public void test_SAFileBufferPool_CapacityFor_RoundsToPowerOfTwo () {
+        assertEquals(SAFileBufferPool.MIN_SIZE, SAFileBufferPool.capacityFor(0));
+        assertEquals(SAFileBufferPool.MIN_SIZE, SAFileBufferPool.capacityFor(4096));
+        assertEquals(8192, SAFileBufferPool.capacityFor(4097));
+        assertEquals(65536, SAFileBufferPool.capacityFor(65536));
+        assertEquals(SAFileBufferPool.MAX_SIZE, SAFileBufferPool.capacityFor(10 * 1024 * 1024));
+    }
+
+    @Test
+    public void test_SAFileBufferPool_ReleasedBuffer_IsReused () {
+        // given
+        SAFileBufferPool pool = new SAFileBufferPool(1024 * 1024);
+        ByteBuffer buffer = pool.acquire(10000);
+        buffer.put((byte) 1);
+
+        // when
+        pool.release(buffer);
+        ByteBuffer result = pool.acquire(16384);
+
+        // then
+        assertSame(buffer, result);
+        assertEquals(0, result.position());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_SAFileBufferPool_WhenFull_DropsBuffers () {
+        // given
+        SAFileBufferPool pool = new SAFileBufferPool(8192);
+        ByteBuffer first = pool.acquire(8192);
+        ByteBuffer second = pool.acquire(8192);
+
+        // when
+        pool.release(first);
+        pool.release(second);
+
+        // then
+        assertEquals(8192, pool.getPooledBytes());
+        assertSame(first, pool.acquire(8192));
+        assertNotSame(second, pool.acquire(8192));
+    }
+
+    @Test
+    public void test_SAFileBufferPool_ForeignBuffer_IsIgnored () {
+        // given
+        SAFileBufferPool pool = new SAFileBufferPool(1024 * 1024);
+
+        // when
+        pool.release(ByteBuffer.allocate(5000));
+        pool.release(ByteBuffer.allocateDirect(4096));
+
+        // then
+        assertEquals(0, pool.getPooledBytes());
+    }
+}
@@ -0,0 +1,152 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSAFileCacheIndex {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp () throws Exception {
+        file = new File(folder.newFolder("files"), SAFileCacheIndex.INDEX_FILE);
+    }
+
+    @Test
+    public void test_SAFileCacheIndex_WithNoFile_IsEmpty () {
+        // when
+        SAFileCacheIndex index = new SAFileCacheIndex(file);
+
+        // then
+        assertEquals(0, index.size());
+        assertNull(index.get("key"));
+    }
+
+    @Test
+    public void test_SAFileCacheIndex_Put_IsReloaded () {
+        // given
+        SAFileCacheEntry entry = new SAFileCacheEntry("key", "file.mp4");
+        entry.setSize(1024);
+        entry.setCreatedAt(1);
+        entry.setAccessedAt(2);
+        entry.setValidatedAt(3);
+        entry.setEtag("\"etag\"");
+        entry.setDigest("digest");
+
+        // when
+        new SAFileCacheIndex(file).put(entry);
+        SAFileCacheEntry result = new SAFileCacheIndex(file).get("key");
+
+        // then
+        assertNotNull(result);
+        assertEquals("file.mp4", result.getFilePath());
+        assertEquals(1024, result.getSize());
+        assertEquals(1, result.getCreatedAt());
+        assertEquals(2, result.getAccessedAt());
+        assertEquals(3, result.getValidatedAt());
+        assertEquals("\"etag\"", result.getEtag());
+        assertNull(result.getLastModified());
+        assertEquals("digest", result.getDigest());
+    }
+
+    @Test
+    public void test_SAFileCacheIndex_Remove_IsReloaded () {
+        // given
+        SAFileCacheIndex index = new SAFileCacheIndex(file);
+        index.put(new SAFileCacheEntry("key1", "file1.mp4"));
+        index.put(new SAFileCacheEntry("key2", "file2.mp4"));
+
+        // when
+        index.remove("key1");
+        SAFileCacheIndex reloaded = new SAFileCacheIndex(file);
+
+        // then
+        assertEquals(1, reloaded.size());
+        assertNull(reloaded.get("key1"));
+        assertNotNull(reloaded.get("key2"));
+    }
+
+    @Test
+    public void test_SAFileCacheIndex_ManyUpdates_AreCompacted () {
+        // given
+        SAFileCacheIndex index = new SAFileCacheIndex(file);
+        index.put(new SAFileCacheEntry("key", "file.mp4"));
+        long singleRecordLength = file.length();
+
+        // when
+        for (int i = 0; i < 1000; i++) {
+            SAFileCacheEntry entry = new SAFileCacheEntry("key", "file.mp4");
+            entry.setAccessedAt(i);
+            index.put(entry);
+        }
+
+        // then
+        assertTrue(file.length() < singleRecordLength * 100);
+        assertEquals(999, new SAFileCacheIndex(file).get("key").getAccessedAt());
+    }
+
+    @Test
+    public void test_SAFileCacheIndex_WithTruncatedRecord_KeepsPreviousRecords () throws Exception {
+        // given
+        SAFileCacheIndex index = new SAFileCacheIndex(file);
+        index.put(new SAFileCacheEntry("key1", "file1.mp4"));
+        index.put(new SAFileCacheEntry("key2", "file2.mp4"));
+
+        // when
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 5);
+        raf.close();
+        SAFileCacheIndex reloaded = new SAFileCacheIndex(file);
+        reloaded.put(new SAFileCacheEntry("key3", "file3.mp4"));
+
+        // then
+        SAFileCacheIndex result = new SAFileCacheIndex(file);
+        assertEquals(2, result.size());
+        assertNotNull(result.get("key1"));
+        assertNull(result.get("key2"));
+        assertNotNull(result.get("key3"));
+    }
+
+    @Test
+    public void test_SAFileCacheIndex_WithUnknownFile_StartsEmpty () throws Exception {
+        // given
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("<map><string name=\"a\">b</string></map>".getBytes());
+        out.close();
+
+        // when
+        SAFileCacheIndex index = new SAFileCacheIndex(file);
+        index.put(new SAFileCacheEntry("key", "file.mp4"));
+
+        // then
+        assertEquals(1, new SAFileCacheIndex(file).size());
+    }
+
+    @Test
+    public void test_SAFileCacheIndex_Clear_IsReloaded () {
+        // given
+        SAFileCacheIndex index = new SAFileCacheIndex(file);
+        index.put(new SAFileCacheEntry("key1", "file1.mp4"));
+        index.put(new SAFileCacheEntry("key2", "file2.mp4"));
+
+        // when
+        index.clear();
+
+        // then
+        assertEquals(0, new SAFileCacheIndex(file).size());
+    }
+}
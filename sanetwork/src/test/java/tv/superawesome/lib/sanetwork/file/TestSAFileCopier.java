@@ -0,0 +1,249 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSAFileCopier {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_SAFileCopier_Copy_WritesAllBytes () throws Exception {
+        // given
+        byte[] data = randomBytes(1024 * 1024 + 17);
+        File file = folder.newFile("out.bin");
+        SAFileCopier copier = new SAFileCopier(new SAFileBufferPool(1024 * 1024), SAFileCopier.ADAPTIVE, true);
+
+        // when
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        long total = copier.copy(new ByteArrayInputStream(data), output, data.length, null);
+        output.close();
+
+        // then
+        assertEquals(data.length, total);
+        assertTrue(Arrays.equals(data, readFile(file)));
+    }
+
+    @Test
+    public void test_SAFileCopier_WithWrongContentLength_TruncatesFile () throws Exception {
+        // given
+        byte[] data = randomBytes(10000);
+        File file = folder.newFile("out.bin");
+        SAFileCopier copier = new SAFileCopier(new SAFileBufferPool(1024 * 1024), 4096, true);
+
+        // when
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        copier.copy(new ByteArrayInputStream(data), output, 50000, null);
+        output.close();
+
+        // then
+        assertEquals(data.length, file.length());
+    }
+
+    @Test
+    public void test_SAFileCopier_WithOffset_KeepsFirstBytes () throws Exception {
+        // given
+        byte[] data = randomBytes(30000);
+        File file = folder.newFile("out.bin");
+        OutputStream old = new FileOutputStream(file);
+        old.write(data, 0, 12345);
+        old.close();
+        SAFileCopier copier = new SAFileCopier(new SAFileBufferPool(1024 * 1024), 4096, true);
+
+        // when
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        long total = copier.copy(new ByteArrayInputStream(data, 12345, data.length - 12345), output, 12345, data.length - 12345, null);
+        output.close();
+
+        // then
+        assertEquals(data.length, total);
+        assertTrue(Arrays.equals(data, readFile(file)));
+    }
+
+    @Test
+    public void test_SAFileCopier_WhenStopped_KeepsOnlyWrittenBytes () throws Exception {
+        // given
+        byte[] data = randomBytes(50000);
+        File file = folder.newFile("out.bin");
+        SAFileCopier copier = new SAFileCopier(new SAFileBufferPool(1024 * 1024), 4096, true);
+        final long[] written = {0};
+
+        // when
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            copier.copy(new ByteArrayInputStream(data), output, data.length, new SAFileCopier.Listener() {
+                @Override
+                public void didCopy(byte[] chunk, int offset, int count, long bytesWritten) throws IOException {
+                    written[0] = bytesWritten;
+                    if (bytesWritten >= 10000) throw new IOException("stop");
+                }
+            });
+        } catch (IOException expected) {
+            // expected
+        }
+        output.close();
+
+        // then
+        assertEquals(written[0], file.length());
+        assertTrue(written[0] < data.length);
+    }
+
+    @Test
+    public void test_SAFileCopier_OverExistingFile_ReplacesContent () throws Exception {
+        // given
+        byte[] data = randomBytes(5000);
+        File file = folder.newFile("out.bin");
+        OutputStream old = new FileOutputStream(file);
+        old.write(randomBytes(20000));
+        old.close();
+        SAFileCopier copier = new SAFileCopier(new SAFileBufferPool(1024 * 1024), SAFileCopier.ADAPTIVE, false);
+
+        // when
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        copier.copy(new ByteArrayInputStream(data), output, -1, null);
+        output.close();
+
+        // then
+        assertTrue(Arrays.equals(data, readFile(file)));
+    }
+
+    @Test
+    public void test_SAFileCopier_Listener_SeesEveryChunk () throws Exception {
+        // given
+        byte[] data = randomBytes(100000);
+        File file = folder.newFile("out.bin");
+        final long[] seen = new long[2];
+        SAFileCopier copier = new SAFileCopier(new SAFileBufferPool(1024 * 1024), 4096, false);
+
+        // when
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        copier.copy(new ByteArrayInputStream(data), output, data.length, new SAFileCopier.Listener() {
+            @Override
+            public void didCopy(byte[] chunk, int offset, int count, long bytesWritten) {
+                seen[0] += count;
+                seen[1] = bytesWritten;
+            }
+        });
+        output.close();
+
+        // then
+        assertEquals(data.length, seen[0]);
+        assertEquals(data.length, seen[1]);
+    }
+
+    @Test
+    public void test_SAFileCopier_Copy_ReturnsBufferToPool () throws Exception {
+        // given
+        SAFileBufferPool pool = new SAFileBufferPool(1024 * 1024);
+        File file = folder.newFile("out.bin");
+        SAFileCopier copier = new SAFileCopier(pool, 8192, false);
+
+        // when
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        copier.copy(new ByteArrayInputStream(randomBytes(100)), output, 100, null);
+        output.close();
+
+        // then
+        assertEquals(8192, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_SAFileCopier_InitialSizeFor () {
+        assertEquals(16 * 1024, SAFileCopier.initialSizeFor(-1));
+        assertEquals(SAFileBufferPool.MIN_SIZE, SAFileCopier.initialSizeFor(1000));
+        assertEquals(64 * 1024, SAFileCopier.initialSizeFor(4 * 1024 * 1024));
+        assertEquals(SAFileBufferPool.MAX_SIZE, SAFileCopier.initialSizeFor(100 * 1024 * 1024));
+    }
+
+    /**
+     * Compares the old 4KB byte[] + OutputStream loop with SAFileCopier, downloading the same
+     * file from a local server. Only runs with -Dsanetwork.benchmark=true.
+     */
+    @Test
+    public void benchmark_SAFileCopier_AgainstStreamLoop () throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("sanetwork.benchmark"));
+
+        int size = 16 * 1024 * 1024;
+        int rounds = 10;
+        Buffer body = new Buffer().write(randomBytes(size));
+        MockWebServer server = new MockWebServer();
+        server.start();
+
+        SAFileBufferPool pool = new SAFileBufferPool(1024 * 1024);
+        long streamTime = 0;
+        long copierTime = 0;
+
+        try {
+            for (int i = 0; i < rounds * 2; i++) {
+                server.enqueue(new MockResponse().setBody(body.clone()));
+                HttpURLConnection connection = (HttpURLConnection) new URL(server.url("/video.mp4").toString()).openConnection();
+                InputStream input = connection.getInputStream();
+                File file = new File(folder.getRoot(), "bench" + i);
+
+                long start = System.nanoTime();
+                if (i % 2 == 0) {
+                    OutputStream output = new FileOutputStream(file);
+                    byte data[] = new byte[4096];
+                    int count;
+                    while ((count = input.read(data)) != -1) {
+                        output.write(data, 0, count);
+                    }
+                    output.close();
+                    streamTime += System.nanoTime() - start;
+                } else {
+                    RandomAccessFile output = new RandomAccessFile(file, "rw");
+                    new SAFileCopier(pool, SAFileCopier.ADAPTIVE, true).copy(input, output, connection.getContentLength(), null);
+                    output.close();
+                    copierTime += System.nanoTime() - start;
+                }
+
+                input.close();
+                connection.disconnect();
+                assertEquals(size, file.length());
+                file.delete();
+            }
+        } finally {
+            server.shutdown();
+        }
+
+        System.out.println("SAFileCopier benchmark, " + rounds + " x " + (size / (1024 * 1024)) + "MB: " +
+                "stream loop " + (streamTime / rounds / 1000000) + "ms, " +
+                "copier " + (copierTime / rounds / 1000000) + "ms");
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) input.length()];
+        input.readFully(data);
+        input.close();
+        return data;
+    }
+}
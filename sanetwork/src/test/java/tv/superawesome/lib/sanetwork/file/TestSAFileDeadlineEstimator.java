@@ -0,0 +1,47 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSAFileDeadlineEstimator {
+
+    @Test
+    public void test_SAFileDeadlineEstimator_WithoutDeadline_AlwaysFinishes () {
+        SAFileDeadlineEstimator estimator = new SAFileDeadlineEstimator(SAFileDownloadOptions.NO_DEADLINE, 0, 0);
+        assertTrue(estimator.canFinish(1, 1000000000L, 1000000));
+    }
+
+    @Test
+    public void test_SAFileDeadlineEstimator_AfterDeadline_CantFinish () {
+        SAFileDeadlineEstimator estimator = new SAFileDeadlineEstimator(1000, 0, 0);
+        assertFalse(estimator.canFinish(0, -1, 1001));
+        assertTrue(estimator.canFinish(0, -1, 999));
+    }
+
+    @Test
+    public void test_SAFileDeadlineEstimator_WaitsForEnoughData () {
+        // given (a rate that would never make it)
+        SAFileDeadlineEstimator estimator = new SAFileDeadlineEstimator(10000, 0, 0);
+
+        // then
+        assertTrue(estimator.canFinish(1024, 100 * 1024 * 1024, SAFileDeadlineEstimator.MIN_ELAPSED - 1));
+        assertTrue(estimator.canFinish(SAFileDeadlineEstimator.MIN_BYTES - 1, 100 * 1024 * 1024, 5000));
+        assertFalse(estimator.canFinish(SAFileDeadlineEstimator.MIN_BYTES, 100 * 1024 * 1024, 5000));
+    }
+
+    @Test
+    public void test_SAFileDeadlineEstimator_ProjectsFromObservedRate () {
+        // given: started at 1000, with 100KB already on disk from before a pause
+        SAFileDeadlineEstimator estimator = new SAFileDeadlineEstimator(6000, 1000, 100 * 1024);
+
+        // when 100KB more arrived in 1s, the remaining 400KB take 4s
+        long total = 600 * 1024;
+        long written = 200 * 1024;
+
+        // then
+        assertTrue(estimator.canFinish(written, total, 2000));
+        assertFalse(estimator.canFinish(written, total, 2001));
+    }
+}
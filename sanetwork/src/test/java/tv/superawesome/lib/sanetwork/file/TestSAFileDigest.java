@@ -0,0 +1,69 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.fail;
+
+public class TestSAFileDigest {
+
+    @Test
+    public void test_SAFileDigest_CRC32_InChunks () {
+        // given
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes();
+        SAFileDigest digest = new SAFileDigest(SAFileDigest.CRC32);
+
+        // when
+        digest.update(data, 0, 10);
+        digest.update(data, 10, data.length - 10);
+
+        // then
+        assertEquals("crc32:414fa339", digest.getValue());
+    }
+
+    @Test
+    public void test_SAFileDigest_SHA256 () {
+        // given
+        byte[] data = "abc".getBytes();
+        SAFileDigest digest = new SAFileDigest(SAFileDigest.SHA256);
+
+        // when
+        digest.update(data, 0, data.length);
+
+        // then
+        assertEquals("sha256:ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", digest.getValue());
+        assertEquals(digest.getValue(), digest.getValue());
+    }
+
+    @Test
+    public void test_SAFileDigest_WithUnknownAlgorithm_UsesCRC32 () {
+        assertEquals(SAFileDigest.CRC32, new SAFileDigest(null).getAlgorithm());
+        assertEquals(SAFileDigest.CRC32, new SAFileDigest("md5").getAlgorithm());
+    }
+
+    @Test
+    public void test_SAFileDigest_Normalize () {
+        assertEquals("sha256:ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                SAFileDigest.normalize("BA7816BF8F01CFEA414140DE5DAE2223B00361A396177A9CB410FF61F20015AD"));
+        assertEquals("crc32:414fa339", SAFileDigest.normalize("CRC32:414FA339"));
+        assertNull(SAFileDigest.normalize("md5:abc"));
+        assertNull(SAFileDigest.normalize("abc"));
+        assertNull(SAFileDigest.normalize(null));
+        assertNull(SAFileDigest.normalize("sha265:ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+        assertNull(SAFileDigest.normalize("sha256:ba7816bf"));
+        assertNull(SAFileDigest.normalize("sha256:ungWv48Bz+pBQUDeXa4iI7ADYaOWF3qctBD/YfIAFa0="));
+        assertNull(SAFileDigest.normalize("crc32:414fa33z"));
+    }
+
+    @Test
+    public void test_SAFileDigest_UnsupportedExpectedDigest_IsRejected () {
+        assertNull(new SAFileDownloadOptions().setExpectedDigest(null).getExpectedDigest());
+        try {
+            new SAFileDownloadOptions().setExpectedDigest("md5:d41d8cd98f00b204e9800998ecf8427e");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
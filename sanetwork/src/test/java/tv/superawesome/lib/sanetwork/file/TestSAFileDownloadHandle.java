@@ -0,0 +1,100 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSAFileDownloadHandle {
+
+    @Test
+    public void test_SAFileDownloadHandle_PauseAndResume_WhileQueued () {
+        // given
+        SAFileDownloadHandle handle = new SAFileDownloadHandle("https://example.com/file.mp4");
+        final int[] resumed = {0};
+        handle.setResumeAction(new Runnable() {
+            @Override
+            public void run() {
+                resumed[0]++;
+            }
+        });
+
+        // when
+        handle.pause();
+        boolean canStartWhilePaused = handle.start();
+        handle.resume();
+        handle.resume();
+
+        // then
+        assertFalse(canStartWhilePaused);
+        assertEquals(SAFileDownloadHandle.State.QUEUED, handle.getState());
+        assertEquals(1, resumed[0]);
+        assertTrue(handle.start());
+        assertEquals(SAFileDownloadHandle.State.RUNNING, handle.getState());
+    }
+
+    @Test
+    public void test_SAFileDownloadHandle_Cancel_WhileQueued_RunsCancelAction () {
+        // given
+        SAFileDownloadHandle handle = new SAFileDownloadHandle("https://example.com/file.mp4");
+        final int[] cancelled = {0};
+        handle.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                cancelled[0]++;
+            }
+        });
+
+        // when
+        handle.cancel();
+        handle.cancel();
+        handle.resume();
+
+        // then
+        assertEquals(1, cancelled[0]);
+        assertEquals(SAFileDownloadHandle.State.CANCELLED, handle.getState());
+        assertFalse(handle.start());
+    }
+
+    @Test
+    public void test_SAFileDownloadHandle_Cancel_WhileRunning_LeavesCleanupToTask () {
+        // given
+        SAFileDownloadHandle handle = new SAFileDownloadHandle("https://example.com/file.mp4");
+        final int[] cancelled = {0};
+        handle.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                cancelled[0]++;
+            }
+        });
+        handle.start();
+
+        // when
+        handle.cancel();
+        handle.finish(false);
+
+        // then
+        assertEquals(0, cancelled[0]);
+        assertTrue(handle.isCancelled());
+    }
+
+    @Test
+    public void test_SAFileDownloadHandle_Finish () {
+        // given
+        SAFileDownloadHandle failed = new SAFileDownloadHandle("https://example.com/a.mp4");
+        SAFileDownloadHandle completed = new SAFileDownloadHandle("https://example.com/b.mp4");
+
+        // when
+        failed.start();
+        failed.finish(false);
+        completed.start();
+        completed.finish(true);
+        completed.pause();
+        completed.cancel();
+
+        // then
+        assertEquals(SAFileDownloadHandle.State.FAILED, failed.getState());
+        assertEquals(SAFileDownloadHandle.State.COMPLETED, completed.getState());
+    }
+}
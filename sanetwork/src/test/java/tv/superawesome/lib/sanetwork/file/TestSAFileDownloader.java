@@ -1,29 +1,41 @@
 package tv.superawesome.lib.sanetwork.file;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
-import java.io.FileOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import okhttp3.mockwebserver.SocketPolicy;
 import okio.Buffer;
+import tv.superawesome.lib.sanetwork.future.SAFuture;
 import tv.superawesome.lib.sanetwork.mocks.MockExecutor;
+import tv.superawesome.lib.sanetwork.mocks.MockQueueExecutor;
+import tv.superawesome.lib.sanetwork.request.SARequestTracker;
 import tv.superawesome.lib.sanetwork.testutils.ResourceReader;
 
 import static junit.framework.Assert.assertEquals;
-import static org.mockito.ArgumentMatchers.anyInt;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -32,12 +44,17 @@ import static org.mockito.Mockito.when;
 
 public class TestSAFileDownloader {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private Executor executor;
     private MockWebServer server;
+    private File filesDir;
 
     @Before
     public void setUp () throws Exception {
         executor = new MockExecutor();
+        filesDir = folder.newFolder("files");
         server = new MockWebServer();
         server.start();
     }
@@ -45,31 +62,25 @@ public class TestSAFileDownloader {
     @After
     public void tearDown () throws Exception {
         server.shutdown();
+        SAFileStorage.spaceProvider = SAFileStorage.SYSTEM;
     }
 
     @Test
     public void test_SAFileDownloader_WithPNGFile () throws Exception {
         // given
 
-        String url = server.url("/some/resource/url/pngresource.png").toString();
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
         Buffer responseBody = ResourceReader.readResource("pngresource.png");
+        final long size = responseBody.size();
 
         MockResponse mockResponse = new MockResponse()
                 .setResponseCode(200)
                 .setBody(responseBody);
 
         Context context = mock(Context.class);
-        SharedPreferences prefs = mock(SharedPreferences.class);
-        SharedPreferences.Editor editor = mock(SharedPreferences.Editor.class);
-
-        final FileOutputStream outputStream = new FileOutputStream("diskfile.png");
 
         // when
-        when(context.getSharedPreferences(anyString(), anyInt())).thenReturn(prefs);
-        when(prefs.edit()).thenReturn(editor);
-        when(prefs.edit().putString(anyString(), anyString())).thenReturn(editor);
-        when(editor.commit()).thenReturn(true);
-        when(context.openFileOutput(anyString(), anyInt())).thenReturn(outputStream);
+        when(context.getFilesDir()).thenReturn(filesDir);
 
         server.enqueue(mockResponse);
 
@@ -79,9 +90,9 @@ public class TestSAFileDownloader {
 
                 Assert.assertTrue(success);
                 Assert.assertNotNull(filePath);
-                Assert.assertEquals("sasdkkey__pngresource.png", key);
-                Assert.assertEquals("pngresource.png", filePath);
-                Assert.assertNotNull(outputStream);
+                Assert.assertEquals(new SAFileItem(url).getKey(), key);
+                Assert.assertEquals(new SAFileItem(url).getFilePath(), filePath);
+                Assert.assertEquals(size, new File(filesDir, filePath).length());
             }
         });
 
@@ -93,25 +104,18 @@ public class TestSAFileDownloader {
     @Test
     public void test_SAFileDownloader_WithMP4File () throws Exception {
         // given
-        String url = server.url("/some/resource/url/videoresource.mp4").toString();
+        final String url = server.url("/some/resource/url/videoresource.mp4").toString();
         Buffer responseBody = ResourceReader.readResource("videoresource.mp4");
+        final long size = responseBody.size();
 
         MockResponse mockResponse = new MockResponse()
                 .setResponseCode(200)
                 .setBody(responseBody);
 
         Context context = mock(Context.class);
-        SharedPreferences prefs = mock(SharedPreferences.class);
-        SharedPreferences.Editor editor = mock(SharedPreferences.Editor.class);
-
-        final FileOutputStream outputStream = new FileOutputStream("diskfile.png");
 
         // when
-        when(context.getSharedPreferences(anyString(), anyInt())).thenReturn(prefs);
-        when(prefs.edit()).thenReturn(editor);
-        when(prefs.edit().putString(anyString(), anyString())).thenReturn(editor);
-        when(editor.commit()).thenReturn(true);
-        when(context.openFileOutput(anyString(), anyInt())).thenReturn(outputStream);
+        when(context.getFilesDir()).thenReturn(filesDir);
 
         server.enqueue(mockResponse);
 
@@ -121,9 +125,9 @@ public class TestSAFileDownloader {
 
                 Assert.assertTrue(success);
                 Assert.assertNotNull(filePath);
-                Assert.assertEquals("sasdkkey__videoresource.mp4", key);
-                Assert.assertEquals("videoresource.mp4", filePath);
-                Assert.assertNotNull(outputStream);
+                Assert.assertEquals(new SAFileItem(url).getKey(), key);
+                Assert.assertEquals(new SAFileItem(url).getFilePath(), filePath);
+                Assert.assertEquals(size, new File(filesDir, filePath).length());
             }
         });
 
@@ -135,7 +139,7 @@ public class TestSAFileDownloader {
     @Test
     public void test_SAFileDownloader_WithTimeoutError () throws Exception {
         // given
-        String url = server.url("/some/resource/url/videoresource.mp4").toString();
+        final String url = server.url("/some/resource/url/videoresource.mp4").toString();
         Buffer responseBody = ResourceReader.readResource("videoresource.mp4");
 
         MockResponse badResponse = new MockResponse()
@@ -143,17 +147,9 @@ public class TestSAFileDownloader {
                 .setBody(responseBody);
 
         Context context = mock(Context.class);
-        SharedPreferences prefs = mock(SharedPreferences.class);
-        SharedPreferences.Editor editor = mock(SharedPreferences.Editor.class);
-
-        final FileOutputStream outputStream = new FileOutputStream("diskfile.png");
 
         // when
-        when(context.getSharedPreferences(anyString(), anyInt())).thenReturn(prefs);
-        when(prefs.edit()).thenReturn(editor);
-        when(prefs.edit().putString(anyString(), anyString())).thenReturn(editor);
-        when(editor.commit()).thenReturn(true);
-        when(context.openFileOutput(anyString(), anyInt())).thenReturn(outputStream);
+        when(context.getFilesDir()).thenReturn(filesDir);
 
         server.enqueue(badResponse);
 
@@ -164,7 +160,6 @@ public class TestSAFileDownloader {
                 Assert.assertFalse(success);
                 Assert.assertNull(key);
                 Assert.assertNull(filePath);
-                Assert.assertNotNull(outputStream);
             }
         });
     }
@@ -172,7 +167,7 @@ public class TestSAFileDownloader {
     @Test
     public void test_SAFileDownloader_WithNullContext () throws Exception {
         // given
-        String url = server.url("/some/resource/url/videoresource.mp4").toString();
+        final String url = server.url("/some/resource/url/videoresource.mp4").toString();
 
         // when
         new SAFileDownloader(null, executor, true, 1000).downloadFileFrom(url, new SAFileDownloaderInterface() {
@@ -190,17 +185,9 @@ public class TestSAFileDownloader {
     public void test_SAFileDownloader_WithMalformedUrl () throws Exception {
         // given
         Context context = mock(Context.class);
-        SharedPreferences prefs = mock(SharedPreferences.class);
-        SharedPreferences.Editor editor = mock(SharedPreferences.Editor.class);
-
-        final FileOutputStream outputStream = new FileOutputStream("diskfile.png");
 
         // when
-        when(context.getSharedPreferences(anyString(), anyInt())).thenReturn(prefs);
-        when(prefs.edit()).thenReturn(editor);
-        when(prefs.edit().putString(anyString(), anyString())).thenReturn(editor);
-        when(editor.commit()).thenReturn(true);
-        when(context.openFileOutput(anyString(), anyInt())).thenReturn(outputStream);
+        when(context.getFilesDir()).thenReturn(filesDir);
 
         // when
         new SAFileDownloader(context, executor, true, 1000).downloadFileFrom("jsaksa\\\\\\\\s\\\\\\\\asasaasa", new SAFileDownloaderInterface() {
@@ -213,4 +200,1154 @@ public class TestSAFileDownloader {
             }
         });
     }
+
+    @Test
+    public void test_SAFileDownloader_WithSuccess_AddsEntryToCacheIndex () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+        Buffer responseBody = ResourceReader.readResource("pngresource.png");
+        long size = responseBody.size();
+
+        MockResponse mockResponse = new MockResponse()
+                .setResponseCode(200)
+                .setHeader("ETag", "\"abc\"")
+                .setBody(responseBody);
+
+        Context context = mock(Context.class);
+        // when
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(mockResponse);
+
+        new SAFileDownloader(context, executor, true, 1000).downloadFileFrom(url, null);
+
+        // then
+        SAFileCacheEntry entry = SAFileCacheIndex.forDirectory(filesDir).get(new SAFileItem(url).getKey());
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(new SAFileItem(url).getFilePath(), entry.getFilePath());
+        Assert.assertEquals(size, entry.getSize());
+        Assert.assertEquals("\"abc\"", entry.getEtag());
+        Assert.assertTrue(entry.getCreatedAt() > 0);
+    }
+
+    @Test
+    public void test_SAFileDownloader_Cleanup_EmptiesIndex () throws Exception {
+        // given
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        SAFileCacheEntry entry = new SAFileCacheEntry("sasdkkey__some.mp4", "some.mp4");
+        SAFileCacheIndex.forDirectory(filesDir).put(entry);
+
+        // when
+        SAFileDownloader.cleanup(context);
+
+        // then
+        Assert.assertEquals(0, SAFileCacheIndex.forDirectory(filesDir).size());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithProgressListener_ReportsThrottledProgress () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/videoresource.mp4").toString();
+        Buffer responseBody = ResourceReader.readResource("videoresource.mp4");
+        final long size = responseBody.size();
+
+        MockResponse mockResponse = new MockResponse()
+                .setResponseCode(200)
+                .setBody(responseBody);
+
+        Context context = mock(Context.class);
+        final List<Long> updates = new ArrayList<>();
+        SAFileDownloadOptions options = new SAFileDownloadOptions()
+                .setProgressInterval(0)
+                .setProgressStep(25)
+                .setProgressListener(new SAFileDownloaderProgressInterface() {
+                    @Override
+                    public void saDidUpdateProgress(String key, long bytesWritten, long totalBytes) {
+                        Assert.assertEquals(new SAFileItem(url).getKey(), key);
+                        Assert.assertEquals(size, totalBytes);
+                        updates.add(bytesWritten);
+                    }
+                });
+
+        // when
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(mockResponse);
+
+        new SAFileDownloader(context, executor, true, 1000).downloadFileFrom(url, options, null);
+
+        // then
+        Assert.assertTrue(updates.size() >= 2);
+        Assert.assertTrue(updates.size() <= 5);
+        Assert.assertEquals(size, (long) updates.get(updates.size() - 1));
+    }
+
+    @Test
+    public void test_SAFileDownloader_DownloadProgressively_ReturnsReadableFile () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/videoresource.mp4").toString();
+        Buffer responseBody = ResourceReader.readResource("videoresource.mp4");
+        byte[] expected = responseBody.clone().readByteArray();
+
+        MockResponse mockResponse = new MockResponse()
+                .setResponseCode(200)
+                .setBody(responseBody);
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(mockResponse);
+
+        // when
+        SAProgressiveFile progressive = new SAFileDownloader(context, executor, true, 1000).downloadProgressively(url, null, null);
+
+        // then
+        Assert.assertNotNull(progressive);
+        Assert.assertTrue(progressive.isComplete());
+        Assert.assertEquals(expected.length, progressive.getAvailableBytes());
+        Assert.assertFalse(new File(filesDir, new SAFileItem(url).getFilePath() + SAFileDownloadTask.PARTIAL_SUFFIX).exists());
+
+        InputStream stream = progressive.openStream();
+        byte[] result = new byte[expected.length];
+        int offset = 0;
+        int count;
+        while ((count = stream.read(result, offset, result.length - offset)) > 0) {
+            offset += count;
+        }
+        stream.close();
+        Assert.assertTrue(Arrays.equals(expected, result));
+    }
+
+    @Test
+    public void test_SAFileDownloader_With404_Fails () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/videoresource.mp4").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        final boolean[] called = {false};
+
+        // when
+        new SAFileDownloader(context, executor, true, 1000).downloadFileFrom(url, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean success, String key, String filePath) {
+                called[0] = true;
+                Assert.assertFalse(success);
+            }
+        });
+
+        // then
+        Assert.assertTrue(called[0]);
+        Assert.assertFalse(new File(filesDir, new SAFileItem(url).getFilePath()).exists());
+    }
+
+    @Test
+    public void test_SAFileDownloader_Prefetch_DownloadsAllFiles () throws Exception {
+        // given
+        String url1 = server.url("/some/resource/url/pngresource.png").toString();
+        String url2 = server.url("/some/resource/url/videoresource.mp4").toString();
+
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("videoresource.mp4")));
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        final List<String> keys = new ArrayList<>();
+
+        // when
+        List<SAPrefetchRequest> requests = new ArrayList<>();
+        requests.add(new SAPrefetchRequest(url1, SAPrefetchRequest.PRIORITY_LOW, SAPrefetchRequest.NO_DEADLINE));
+        requests.add(new SAPrefetchRequest(url2, SAPrefetchRequest.PRIORITY_HIGH, SAPrefetchRequest.NO_DEADLINE));
+
+        new SAFileDownloader(context, executor, true, 1000).prefetch(requests, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean success, String key, String filePath) {
+                Assert.assertTrue(success);
+                keys.add(key);
+            }
+        });
+
+        // then
+        Assert.assertEquals(2, keys.size());
+        Assert.assertEquals(new SAFileItem(url2).getKey(), keys.get(0));
+        Assert.assertEquals(new SAFileItem(url1).getKey(), keys.get(1));
+        Assert.assertEquals("GET /some/resource/url/videoresource.mp4 HTTP/1.1", server.takeRequest().getRequestLine());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithExpectedDigest_StoresDigest () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+        Buffer responseBody = ResourceReader.readResource("pngresource.png");
+        String sha256 = responseBody.sha256().hex();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(responseBody));
+
+        final boolean[] success = {false};
+
+        // when
+        new SAFileDownloader(context, executor, true, 1000).downloadFileFrom(url, new SAFileDownloadOptions().setExpectedDigest(sha256), new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+            }
+        });
+
+        // then
+        Assert.assertTrue(success[0]);
+        SAFileCacheEntry entry = SAFileCacheIndex.forDirectory(filesDir).get(new SAFileItem(url).getKey());
+        Assert.assertEquals("sha256:" + sha256, entry.getDigest());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithWrongExpectedDigest_Fails () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+
+        final List<SAFileDownloadError> errors = new ArrayList<>();
+        final boolean[] success = {true};
+        SAFileDownloadOptions options = new SAFileDownloadOptions()
+                .setExpectedDigest("crc32:00000000")
+                .setErrorListener(new SAFileDownloaderErrorInterface() {
+                    @Override
+                    public void saDidFailToDownloadFile(String failedUrl, SAFileDownloadError error) {
+                        Assert.assertEquals(url, failedUrl);
+                        errors.add(error);
+                    }
+                });
+
+        // when
+        new SAFileDownloader(context, executor, true, 1000).downloadFileFrom(url, options, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+            }
+        });
+
+        // then
+        Assert.assertFalse(success[0]);
+        Assert.assertEquals(1, errors.size());
+        Assert.assertEquals(SAFileDownloadError.DIGEST_MISMATCH, errors.get(0));
+        Assert.assertFalse(new File(filesDir, new SAFileItem(url).getFilePath()).exists());
+        Assert.assertNull(SAFileCacheIndex.forDirectory(filesDir).get(new SAFileItem(url).getKey()));
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithCachedFileOfWrongSize_DownloadsAgain () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+        SAFileItem item = new SAFileItem(url);
+
+        File file = new File(filesDir, item.getFilePath());
+        file.getParentFile().mkdirs();
+        Assert.assertTrue(file.createNewFile());
+        SAFileCacheEntry entry = new SAFileCacheEntry(item.getKey(), item.getFilePath());
+        entry.setSize(1000);
+        SAFileCacheIndex.forDirectory(filesDir).put(entry);
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+
+        // when
+        new SAFileDownloader(context, executor, true, 1000).downloadFileFrom(url, null);
+
+        // then
+        Assert.assertEquals(1, server.getRequestCount());
+        Assert.assertEquals(file.length(), SAFileCacheIndex.forDirectory(filesDir).get(item.getKey()).getSize());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithCachedFile_DoesNotDownloadAgain () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+        downloader.downloadFileFrom(url, null);
+
+        final boolean[] success = {false};
+
+        // when
+        downloader.downloadFileFrom(url, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+            }
+        });
+
+        // then
+        Assert.assertTrue(success[0]);
+        Assert.assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithStaleFile_RevalidatesWithValidators () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+        SAFileItem item = new SAFileItem(url);
+        Buffer responseBody = ResourceReader.readResource("pngresource.png");
+        long size = responseBody.size();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse()
+                .setBody(responseBody)
+                .setHeader("ETag", "\"v1\"")
+                .setHeader("Last-Modified", "Mon, 30 Apr 2018 10:00:00 GMT"));
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+        downloader.downloadFileFrom(url, null);
+        long validatedAt = SAFileCacheIndex.forDirectory(filesDir).get(item.getKey()).getValidatedAt();
+        Thread.sleep(5);
+
+        final boolean[] success = {false};
+
+        // when
+        downloader.downloadFileFrom(url, new SAFileDownloadOptions().setMaxAge(0), new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+            }
+        });
+
+        // then
+        server.takeRequest();
+        RecordedRequest request = server.takeRequest();
+        Assert.assertEquals("\"v1\"", request.getHeader("If-None-Match"));
+        Assert.assertEquals("Mon, 30 Apr 2018 10:00:00 GMT", request.getHeader("If-Modified-Since"));
+
+        Assert.assertTrue(success[0]);
+        Assert.assertEquals(size, new File(filesDir, item.getFilePath()).length());
+
+        SAFileCacheEntry entry = SAFileCacheIndex.forDirectory(filesDir).get(item.getKey());
+        Assert.assertTrue(entry.getValidatedAt() > validatedAt);
+        Assert.assertEquals(size, entry.getSize());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithChangedFile_ReplacesIt () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+        SAFileItem item = new SAFileItem(url);
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody("version 1").setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setBody("the second version").setHeader("ETag", "\"v2\""));
+
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+        downloader.downloadFileFrom(url, null);
+
+        // when
+        downloader.downloadFileFrom(url, new SAFileDownloadOptions().setMaxAge(0), null);
+
+        // then
+        Assert.assertEquals(2, server.getRequestCount());
+        Assert.assertEquals("the second version".length(), new File(filesDir, item.getFilePath()).length());
+        Assert.assertEquals("\"v2\"", SAFileCacheIndex.forDirectory(filesDir).get(item.getKey()).getEtag());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithStaleFileAndNoNetwork_ServesStaleCopy () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody("version 1").setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+        downloader.downloadFileFrom(url, null);
+
+        final boolean[] success = {false};
+
+        // when
+        downloader.downloadFileFrom(url, new SAFileDownloadOptions().setMaxAge(0), new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+            }
+        });
+
+        // then
+        Assert.assertTrue(success[0]);
+        Assert.assertTrue(new File(filesDir, new SAFileItem(url).getFilePath()).exists());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithOnDemandBandwidth_IsThrottled () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(new Buffer().write(new byte[48 * 1024])));
+
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+        downloader.setOnDemandBandwidth(64 * 1024);
+
+        final boolean[] success = {false};
+        long start = System.currentTimeMillis();
+
+        // when
+        downloader.downloadFileFrom(url, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+            }
+        });
+
+        // then (16KB go through as a burst, the other 32KB take half a second)
+        long elapsed = System.currentTimeMillis() - start;
+        Assert.assertTrue(success[0]);
+        Assert.assertTrue("took " + elapsed, elapsed >= 400);
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithRequestInFlight_Yields () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody("a small file"));
+        server.enqueue(new MockResponse().setBody("a small file"));
+
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+
+        // when
+        SARequestTracker.begin();
+        long start = System.currentTimeMillis();
+        try {
+            downloader.downloadFileFrom(url, null);
+        } finally {
+            SARequestTracker.end();
+        }
+        long yielding = System.currentTimeMillis() - start;
+
+        SAFileCacheIndex.forDirectory(filesDir).clear();
+        downloader.setYieldingToRequests(false);
+
+        SARequestTracker.begin();
+        start = System.currentTimeMillis();
+        try {
+            downloader.downloadFileFrom(url, null);
+        } finally {
+            SARequestTracker.end();
+        }
+        long notYielding = System.currentTimeMillis() - start;
+
+        // then
+        Assert.assertEquals(2, server.getRequestCount());
+        Assert.assertTrue("took " + yielding, yielding >= 400);
+        Assert.assertTrue("took " + notYielding, notYielding < 400);
+    }
+
+    @Test
+    public void test_SAFileDownloader_DoesNoDiskAccessOnCallerThread () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+        MockQueueExecutor queue = new MockQueueExecutor();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+
+        final boolean[] success = {false};
+
+        // when
+        SAFileDownloader downloader = new SAFileDownloader(context, queue, true, 1000);
+        downloader.downloadFileFrom(url, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+            }
+        });
+
+        // then
+        verify(context, never()).getFilesDir();
+        Assert.assertEquals(2, queue.size());
+        Assert.assertFalse(success[0]);
+
+        queue.runAll();
+
+        Assert.assertTrue(success[0]);
+        verify(context, atLeastOnce()).getFilesDir();
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithCachedFile_AnswersFromPreloadedIndex () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+        new SAFileDownloader(context, executor, true, 1000).downloadFileFrom(url, null);
+
+        MockQueueExecutor queue = new MockQueueExecutor();
+        SAFileDownloader downloader = new SAFileDownloader(context, queue, true, 1000);
+        queue.runAll();
+
+        final boolean[] success = {false};
+
+        // when
+        SAProgressiveFile progressive = downloader.downloadProgressively(url, null, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+            }
+        });
+
+        // then
+        Assert.assertFalse(progressive.isComplete());
+        Assert.assertEquals(1, queue.size());
+
+        queue.runAll();
+
+        Assert.assertTrue(success[0]);
+        Assert.assertTrue(progressive.isComplete());
+        Assert.assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void test_SAFileDownloader_Cancel_WhileQueued () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+        MockQueueExecutor queue = new MockQueueExecutor();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        final List<Boolean> results = new ArrayList<>();
+        final List<SAFileDownloadError> errors = new ArrayList<>();
+        SAFileDownloadOptions options = new SAFileDownloadOptions().setErrorListener(new SAFileDownloaderErrorInterface() {
+            @Override
+            public void saDidFailToDownloadFile(String failedUrl, SAFileDownloadError error) {
+                errors.add(error);
+            }
+        });
+
+        SAFileDownloader downloader = new SAFileDownloader(context, queue, true, 1000);
+        SAFileDownloadHandle handle = downloader.downloadFileFrom(url, options, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                results.add(result);
+            }
+        });
+
+        // when
+        handle.cancel();
+        queue.runAll();
+
+        // then
+        Assert.assertEquals(0, server.getRequestCount());
+        Assert.assertEquals(Arrays.asList(false), results);
+        Assert.assertEquals(Arrays.asList(SAFileDownloadError.CANCELLED), errors);
+        Assert.assertEquals(SAFileDownloadHandle.State.CANCELLED, handle.getState());
+    }
+
+    @Test
+    public void test_SAFileDownloader_Cancel_WhileRunning () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/video.mp4").toString();
+        MockQueueExecutor queue = new MockQueueExecutor();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(new Buffer().write(new byte[64 * 1024])));
+
+        final SAFileDownloadHandle[] handle = {null};
+        final List<Boolean> results = new ArrayList<>();
+        final List<SAFileDownloadError> errors = new ArrayList<>();
+        SAFileDownloadOptions options = new SAFileDownloadOptions()
+                .setBufferSize(4096)
+                .setProgressInterval(0)
+                .setProgressStep(0)
+                .setProgressListener(new SAFileDownloaderProgressInterface() {
+                    @Override
+                    public void saDidUpdateProgress(String key, long bytesWritten, long totalBytes) {
+                        if (bytesWritten >= 8192) handle[0].cancel();
+                    }
+                })
+                .setErrorListener(new SAFileDownloaderErrorInterface() {
+                    @Override
+                    public void saDidFailToDownloadFile(String failedUrl, SAFileDownloadError error) {
+                        errors.add(error);
+                    }
+                });
+
+        SAFileDownloader downloader = new SAFileDownloader(context, queue, true, 1000);
+        handle[0] = downloader.downloadFileFrom(url, options, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                results.add(result);
+            }
+        });
+
+        // when
+        queue.runAll();
+
+        // then
+        SAFileItem item = new SAFileItem(url);
+        Assert.assertEquals(Arrays.asList(false), results);
+        Assert.assertEquals(Arrays.asList(SAFileDownloadError.CANCELLED), errors);
+        Assert.assertFalse(new File(filesDir, item.getFilePath() + SAFileDownloadTask.PARTIAL_SUFFIX).exists());
+        Assert.assertFalse(new File(filesDir, item.getFilePath()).exists());
+    }
+
+    @Test
+    public void test_SAFileDownloader_PauseAndResume_ContinuesFromOffset () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/video.mp4").toString();
+        SAFileItem item = new SAFileItem(url);
+        MockQueueExecutor queue = new MockQueueExecutor();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        byte[] data = new byte[64 * 1024];
+        new java.util.Random(7).nextBytes(data);
+        String sha256 = new Buffer().write(data).sha256().hex();
+
+        server.enqueue(new MockResponse().setBody(new Buffer().write(data)).setHeader("ETag", "\"v1\""));
+
+        final SAFileDownloadHandle[] handle = {null};
+        final boolean[] paused = {false};
+        final List<Boolean> results = new ArrayList<>();
+        SAFileDownloadOptions options = new SAFileDownloadOptions()
+                .setExpectedDigest(sha256)
+                .setBufferSize(4096)
+                .setProgressInterval(0)
+                .setProgressStep(0)
+                .setProgressListener(new SAFileDownloaderProgressInterface() {
+                    @Override
+                    public void saDidUpdateProgress(String key, long bytesWritten, long totalBytes) {
+                        if (bytesWritten >= 16384 && !paused[0]) {
+                            paused[0] = true;
+                            handle[0].pause();
+                        }
+                    }
+                });
+
+        SAFileDownloader downloader = new SAFileDownloader(context, queue, true, 1000);
+        handle[0] = downloader.downloadFileFrom(url, options, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                results.add(result);
+            }
+        });
+
+        // when
+        queue.runAll();
+
+        File partialFile = new File(filesDir, item.getFilePath() + SAFileDownloadTask.PARTIAL_SUFFIX);
+        int offset = (int) partialFile.length();
+
+        Assert.assertEquals(SAFileDownloadHandle.State.PAUSED, handle[0].getState());
+        Assert.assertTrue(results.isEmpty());
+        Assert.assertTrue(offset >= 16384 && offset < data.length);
+
+        server.enqueue(new MockResponse()
+                .setResponseCode(206)
+                .setHeader("ETag", "\"v1\"")
+                .setHeader("Content-Range", "bytes " + offset + "-" + (data.length - 1) + "/" + data.length)
+                .setBody(new Buffer().write(data, offset, data.length - offset)));
+
+        handle[0].resume();
+        queue.runAll();
+
+        // then
+        server.takeRequest();
+        RecordedRequest request = server.takeRequest();
+        Assert.assertEquals("bytes=" + offset + "-", request.getHeader("Range"));
+        Assert.assertEquals("\"v1\"", request.getHeader("If-Range"));
+
+        Assert.assertEquals(Arrays.asList(true), results);
+        Assert.assertEquals(SAFileDownloadHandle.State.COMPLETED, handle[0].getState());
+        Assert.assertFalse(partialFile.exists());
+        Assert.assertEquals(data.length, new File(filesDir, item.getFilePath()).length());
+        Assert.assertEquals("sha256:" + sha256, SAFileCacheIndex.forDirectory(filesDir).get(item.getKey()).getDigest());
+    }
+
+    @Test
+    public void test_SAFileDownloader_OpenAsset_FollowsReplacedFile () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/creative.html").toString();
+        String key = new SAFileItem(url).getKey();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody("<p>first</p>"));
+        server.enqueue(new MockResponse().setBody("<p>second</p>"));
+
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+        downloader.downloadFileFrom(url, null);
+
+        // when
+        SAFileAsset first = downloader.openAsset(key);
+        downloader.downloadFileFrom(url, new SAFileDownloadOptions().setMaxAge(0), null);
+        SAFileAsset second = downloader.openAsset(key);
+
+        // then
+        Assert.assertEquals("<p>first</p>", new String(first.getBytes()));
+        Assert.assertEquals("<p>second</p>", new String(second.getBytes()));
+        Assert.assertNull(downloader.openAsset("sasdkkey__unknown"));
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithPassedDeadline_DoesNotConnect () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/video.mp4").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        final List<SAFileDownloadError> errors = new ArrayList<>();
+        SAFileDownloadOptions options = new SAFileDownloadOptions()
+                .setDeadline(System.currentTimeMillis() - 1)
+                .setErrorListener(new SAFileDownloaderErrorInterface() {
+                    @Override
+                    public void saDidFailToDownloadFile(String failedUrl, SAFileDownloadError error) {
+                        errors.add(error);
+                    }
+                });
+
+        // when
+        new SAFileDownloader(context, executor, true, 1000).downloadFileFrom(url, options, null);
+
+        // then
+        Assert.assertEquals(0, server.getRequestCount());
+        Assert.assertEquals(Arrays.asList(SAFileDownloadError.DEADLINE), errors);
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithUnreachableDeadline_StopsEarly () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/video.mp4").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        // 256KB at 80KB/s take over 3s
+        server.enqueue(new MockResponse()
+                .setBody(new Buffer().write(new byte[256 * 1024]))
+                .throttleBody(16 * 1024, 200, TimeUnit.MILLISECONDS));
+
+        final List<SAFileDownloadError> errors = new ArrayList<>();
+        final boolean[] success = {true};
+        SAFileDownloadOptions options = new SAFileDownloadOptions()
+                .setBufferSize(4096)
+                .setDeadline(System.currentTimeMillis() + 2000)
+                .setErrorListener(new SAFileDownloaderErrorInterface() {
+                    @Override
+                    public void saDidFailToDownloadFile(String failedUrl, SAFileDownloadError error) {
+                        errors.add(error);
+                    }
+                });
+
+        long start = System.currentTimeMillis();
+
+        // when
+        new SAFileDownloader(context, executor, true, 5000).downloadFileFrom(url, options, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+            }
+        });
+
+        // then
+        long elapsed = System.currentTimeMillis() - start;
+        Assert.assertFalse(success[0]);
+        Assert.assertEquals(Arrays.asList(SAFileDownloadError.DEADLINE), errors);
+        Assert.assertTrue("took " + elapsed, elapsed < 2000);
+    }
+
+    @Test
+    public void test_SAFileDownloader_Stats () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+        final String missing = server.url("/some/resource/url/missing.png").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        Buffer responseBody = ResourceReader.readResource("pngresource.png");
+        long size = responseBody.size();
+        server.enqueue(new MockResponse().setBody(responseBody));
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+        downloader.resetStats();
+
+        final List<SAFileDownloaderStats> updates = new ArrayList<>();
+        downloader.setStatsListener(new SAFileDownloaderStatsInterface() {
+            @Override
+            public void saDidUpdateStats(SAFileDownloaderStats stats) {
+                updates.add(stats);
+            }
+        });
+
+        // when
+        downloader.downloadFileFrom(url, null);
+        downloader.downloadFileFrom(url, null);
+        downloader.downloadFileFrom(missing, null);
+        downloader.setStatsListener(null);
+
+        // then
+        SAFileDownloaderStats stats = downloader.getStats();
+        Assert.assertEquals(1, stats.getHits());
+        Assert.assertEquals(2, stats.getMisses());
+        Assert.assertEquals(size, stats.getBytesDownloaded());
+        Assert.assertEquals(size, stats.getBytesFromCache());
+        Assert.assertEquals(1, stats.getFailures(SAFileDownloadError.HTTP_STATUS));
+        Assert.assertEquals(3, updates.size());
+        Assert.assertEquals(1, updates.get(1).getHits());
+    }
+
+    @Test
+    public void test_SAFileDownloader_FetchFiles () throws Exception {
+        // given
+        final String png = server.url("/some/resource/url/pngresource.png").toString();
+        final String missing = server.url("/some/resource/url/missing.png").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+
+        // when
+        SAFuture<List<String>> all = SAFuture.all(Arrays.asList(downloader.fetchFile(png), downloader.fetchFile(missing)));
+        SAFuture<String> found = downloader.fetchFile(png);
+
+        // then
+        Assert.assertTrue(all.getError() instanceof SAFileDownloadException);
+        Assert.assertEquals(SAFileDownloadError.HTTP_STATUS, ((SAFileDownloadException) all.getError()).getError());
+        Assert.assertTrue(new File(filesDir, found.getValue()).exists());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithoutFreeSpace_FailsWithInsufficientStorage () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/pngresource.png").toString();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+
+        SAFileStorage.spaceProvider = new SAFileStorage.SpaceProvider() {
+            @Override
+            public long getUsableSpace(File directory) {
+                return 0;
+            }
+        };
+
+        final List<SAFileDownloadError> errors = new ArrayList<>();
+        SAFileDownloadOptions options = new SAFileDownloadOptions().setErrorListener(new SAFileDownloaderErrorInterface() {
+            @Override
+            public void saDidFailToDownloadFile(String failedUrl, SAFileDownloadError error) {
+                errors.add(error);
+            }
+        });
+
+        // when
+        new SAFileDownloader(context, executor, true, 1000).downloadFileFrom(url, options, null);
+
+        // then
+        Assert.assertEquals(Arrays.asList(SAFileDownloadError.INSUFFICIENT_STORAGE), errors);
+        Assert.assertFalse(new File(filesDir, new SAFileItem(url).getFilePath()).exists());
+        Assert.assertFalse(new File(filesDir, new SAFileItem(url).getFilePath() + SAFileDownloadTask.PARTIAL_SUFFIX).exists());
+    }
+
+    @Test
+    public void test_SAFileDownloader_WithLowStorage_HoldsPrefetches () throws Exception {
+        // given
+        String url = server.url("/some/resource/url/pngresource.png").toString();
+
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        final List<String> keys = new ArrayList<>();
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+
+        // when
+        downloader.setLowStorage(true);
+        downloader.prefetch(Arrays.asList(new SAPrefetchRequest(url, SAPrefetchRequest.PRIORITY_LOW, SAPrefetchRequest.NO_DEADLINE)), new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean success, String key, String filePath) {
+                Assert.assertTrue(success);
+                keys.add(key);
+            }
+        });
+
+        // then
+        Assert.assertEquals(0, keys.size());
+        Assert.assertEquals(0, server.getRequestCount());
+
+        // when
+        downloader.setLowStorage(false);
+
+        // then
+        Assert.assertEquals(Arrays.asList(new SAFileItem(url).getKey()), keys);
+    }
+
+    @Test
+    public void test_SAFileDownloader_OnTrimMemory_RunningLow_HoldsPrefetches () throws Exception {
+        Assert.assertEquals(0, prefetchAfterTrimMemory(10));
+    }
+
+    @Test
+    public void test_SAFileDownloader_OnTrimMemory_Background_HoldsPrefetches () throws Exception {
+        Assert.assertEquals(0, prefetchAfterTrimMemory(40));
+    }
+
+    @Test
+    public void test_SAFileDownloader_OnTrimMemory_RunningModerate_KeepsPrefetching () throws Exception {
+        Assert.assertEquals(1, prefetchAfterTrimMemory(5));
+    }
+
+    @Test
+    public void test_SAFileDownloader_OnDemand_DoesNotWaitForRunningPrefetch () throws Exception {
+        // given
+        final String video = server.url("/some/resource/url/videoresource.mp4").toString();
+        final String png = server.url("/some/resource/url/pngresource.png").toString();
+        final Buffer pngBody = ResourceReader.readResource("pngresource.png");
+
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith(".mp4")) {
+                    return new MockResponse()
+                            .setBody(new Buffer().write(new byte[1024 * 1024]))
+                            .throttleBody(16 * 1024, 100, TimeUnit.MILLISECONDS);
+                }
+                return new MockResponse().setBody(pngBody.clone());
+            }
+        });
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        final boolean[] prefetched = {false};
+        final boolean[] success = {false};
+        final CountDownLatch downloaded = new CountDownLatch(1);
+        SAFileDownloader downloader = new SAFileDownloader(context);
+
+        // when
+        SAPrefetchGroup group = downloader.prefetch(Arrays.asList(new SAPrefetchRequest(video)), new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                prefetched[0] = true;
+            }
+        });
+        Assert.assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+
+        downloader.downloadFileFrom(png, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+                downloaded.countDown();
+            }
+        });
+
+        // then
+        Assert.assertTrue(downloaded.await(3, TimeUnit.SECONDS));
+        Assert.assertTrue(success[0]);
+        Assert.assertFalse(prefetched[0]);
+        group.cancel();
+    }
+
+    @Test
+    public void test_SAFileDownloader_PrefetchGroupCancel_StopsRunningDownload () throws Exception {
+        // given
+        final String video = server.url("/some/resource/url/videoresource.mp4").toString();
+
+        server.enqueue(new MockResponse()
+                .setBody(new Buffer().write(new byte[1024 * 1024]))
+                .throttleBody(16 * 1024, 100, TimeUnit.MILLISECONDS));
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        final boolean[] success = {true};
+        final CountDownLatch done = new CountDownLatch(1);
+        SAFileDownloader downloader = new SAFileDownloader(context);
+
+        SAPrefetchGroup group = downloader.prefetch(Arrays.asList(new SAPrefetchRequest(video)), new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                success[0] = result;
+                done.countDown();
+            }
+        });
+        Assert.assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+
+        // when
+        group.cancel();
+
+        // then
+        Assert.assertTrue(done.await(2, TimeUnit.SECONDS));
+        Assert.assertFalse(success[0]);
+        String filePath = new SAFileItem(video).getFilePath();
+        Assert.assertFalse(new File(filesDir, filePath).exists());
+        Assert.assertFalse(new File(filesDir, filePath + SAFileDownloadTask.PARTIAL_SUFFIX).exists());
+    }
+
+    @Test
+    public void test_SAFileDownloader_Cancel_WhileThrottled_StopsQuickly () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/videoresource.mp4").toString();
+
+        server.enqueue(new MockResponse().setBody(new Buffer().write(new byte[256 * 1024])));
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        final List<SAFileDownloadError> errors = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        SAFileDownloadOptions options = new SAFileDownloadOptions().setErrorListener(new SAFileDownloaderErrorInterface() {
+            @Override
+            public void saDidFailToDownloadFile(String failedUrl, SAFileDownloadError error) {
+                errors.add(error);
+            }
+        });
+
+        SAFileDownloader downloader = new SAFileDownloader(context);
+        downloader.setOnDemandBandwidth(256);
+        SAFileDownloadHandle handle = downloader.downloadFileFrom(url, options, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                done.countDown();
+            }
+        });
+        Assert.assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+
+        // when
+        long start = System.currentTimeMillis();
+        handle.cancel();
+
+        // then
+        Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertEquals(Arrays.asList(SAFileDownloadError.CANCELLED), errors);
+    }
+
+    @Test
+    public void test_SAFileDownloader_Cancel_WithStaleFile_ReportsCancelled () throws Exception {
+        // given
+        final String url = server.url("/some/resource/url/video.mp4").toString();
+        MockQueueExecutor queue = new MockQueueExecutor();
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        server.enqueue(new MockResponse().setBody("version 1").setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setBody(new Buffer().write(new byte[64 * 1024])).setHeader("ETag", "\"v2\""));
+
+        SAFileDownloader downloader = new SAFileDownloader(context, queue, true, 1000);
+        downloader.downloadFileFrom(url, null);
+        queue.runAll();
+
+        final SAFileDownloadHandle[] handle = {null};
+        final List<Boolean> results = new ArrayList<>();
+        final List<SAFileDownloadError> errors = new ArrayList<>();
+        SAFileDownloadOptions options = new SAFileDownloadOptions()
+                .setMaxAge(0)
+                .setBufferSize(4096)
+                .setProgressInterval(0)
+                .setProgressStep(0)
+                .setProgressListener(new SAFileDownloaderProgressInterface() {
+                    @Override
+                    public void saDidUpdateProgress(String key, long bytesWritten, long totalBytes) {
+                        if (bytesWritten >= 8192) handle[0].cancel();
+                    }
+                })
+                .setErrorListener(new SAFileDownloaderErrorInterface() {
+                    @Override
+                    public void saDidFailToDownloadFile(String failedUrl, SAFileDownloadError error) {
+                        errors.add(error);
+                    }
+                });
+
+        handle[0] = downloader.downloadFileFrom(url, options, new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean result, String key, String filePath) {
+                results.add(result);
+            }
+        });
+
+        // when
+        queue.runAll();
+
+        // then
+        Assert.assertEquals(2, server.getRequestCount());
+        Assert.assertEquals(Arrays.asList(false), results);
+        Assert.assertEquals(Arrays.asList(SAFileDownloadError.CANCELLED), errors);
+        Assert.assertEquals(SAFileDownloadHandle.State.CANCELLED, handle[0].getState());
+    }
+
+    /**
+     * Prefetch a file right after the downloader was told about memory pressure
+     *
+     * @return the number of files that got downloaded
+     */
+    private int prefetchAfterTrimMemory (int level) throws Exception {
+        String url = server.url("/some/resource/url/pngresource.png").toString();
+        server.enqueue(new MockResponse().setBody(ResourceReader.readResource("pngresource.png")));
+
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(filesDir);
+
+        final List<String> keys = new ArrayList<>();
+        SAFileDownloader downloader = new SAFileDownloader(context, executor, true, 1000);
+
+        downloader.onTrimMemory(level);
+        downloader.prefetch(Arrays.asList(new SAPrefetchRequest(url)), new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean success, String key, String filePath) {
+                keys.add(key);
+            }
+        });
+
+        return keys.size();
+    }
 }
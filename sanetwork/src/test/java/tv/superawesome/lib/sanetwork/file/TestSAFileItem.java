@@ -44,13 +44,13 @@ public class TestSAFileItem {
         assertNotNull(item.getUrl());
 
         assertNotNull(item.getFileName());
-        assertEquals("5E827ejOz2QYaRWqyJpn15r1NyvInPy9.mp4", item.getFileName());
+        assertEquals("6bfefbe0e44f636b.mp4", item.getFileName());
 
         assertNotNull(item.getFilePath());
-        assertEquals("5E827ejOz2QYaRWqyJpn15r1NyvInPy9.mp4", item.getFilePath());
+        assertEquals("sacache/6b/6bfefbe0e44f636b.mp4", item.getFilePath());
 
         assertNotNull(item.getKey());
-        assertEquals("sasdkkey__5E827ejOz2QYaRWqyJpn15r1NyvInPy9.mp4", item.getKey());
+        assertEquals("sasdkkey__6bfefbe0e44f636b.mp4", item.getKey());
 
         assertTrue(item.isValid());
     }
@@ -122,4 +122,63 @@ public class TestSAFileItem {
         assertNull(item.getKey());
         assertFalse(item.isValid());
     }
+
+    @Test
+    public void test_SAFileItem_WithSameNameOnDifferentHostsAndPaths_DoNotCollide () {
+        // given
+        SAFileItem item1 = new SAFileItem("https://cdn-a.com/x/video.mp4");
+        SAFileItem item2 = new SAFileItem("https://cdn-b.com/y/video.mp4");
+        SAFileItem item3 = new SAFileItem("https://cdn-a.com/y/video.mp4");
+
+        // then
+        assertFalse(item1.getKey().equals(item2.getKey()));
+        assertFalse(item1.getKey().equals(item3.getKey()));
+        assertFalse(item1.getFilePath().equals(item2.getFilePath()));
+        assertTrue(item1.getFileName().endsWith(".mp4"));
+    }
+
+    @Test
+    public void test_SAFileItem_WithDifferentQueries_DoNotCollide () {
+        // given
+        SAFileItem item1 = new SAFileItem("https://cdn.com/video.mp4?creative=1");
+        SAFileItem item2 = new SAFileItem("https://cdn.com/video.mp4?creative=2");
+
+        // then
+        assertFalse(item1.getKey().equals(item2.getKey()));
+    }
+
+    @Test
+    public void test_SAFileItem_WithEquivalentUrls_HaveSameKey () {
+        // given
+        SAFileItem item = new SAFileItem("https://cdn.com/path/video.mp4");
+
+        // then
+        assertEquals(item.getKey(), new SAFileItem("HTTPS://CDN.com/path/video.mp4").getKey());
+        assertEquals(item.getKey(), new SAFileItem("https://cdn.com:443/path/video.mp4").getKey());
+        assertEquals(item.getKey(), new SAFileItem("https://cdn.com/path/video.mp4#t=10").getKey());
+        assertFalse(item.getKey().equals(new SAFileItem("https://cdn.com/path/VIDEO.mp4").getKey()));
+    }
+
+    @Test
+    public void test_SAFileItem_WithoutExtension_UsesHashOnly () {
+        // given
+        SAFileItem item = new SAFileItem("https://cdn.com/creative?id=12");
+        SAFileItem other = new SAFileItem("https://cdn.com/creative.verylongext");
+
+        // then
+        assertEquals(16, item.getFileName().length());
+        assertEquals(16, other.getFileName().length());
+        assertTrue(item.isValid());
+    }
+
+    @Test
+    public void test_SAFileItem_FilePath_IsShardedByHashPrefix () {
+        // given
+        SAFileItem item = new SAFileItem("https://cdn.com/path/image.PNG");
+
+        // then
+        String fileName = item.getFileName();
+        assertTrue(fileName.endsWith(".png"));
+        assertEquals(SAFileItem.CACHE_DIR + "/" + fileName.substring(0, 2) + "/" + fileName, item.getFilePath());
+    }
 }
@@ -0,0 +1,63 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSAFileProgressThrottle {
+
+    @Test
+    public void test_SAFileProgressThrottle_FirstUpdate_IsReported () {
+        // given
+        SAFileProgressThrottle throttle = new SAFileProgressThrottle(250, 1);
+
+        // then
+        assertTrue(throttle.shouldReport(10, 1000, 0));
+    }
+
+    @Test
+    public void test_SAFileProgressThrottle_WithinInterval_IsNotReported () {
+        // given
+        SAFileProgressThrottle throttle = new SAFileProgressThrottle(250, 1);
+        throttle.shouldReport(10, 1000, 0);
+
+        // then
+        assertFalse(throttle.shouldReport(500, 1000, 100));
+        assertTrue(throttle.shouldReport(500, 1000, 250));
+    }
+
+    @Test
+    public void test_SAFileProgressThrottle_BelowStep_IsNotReported () {
+        // given
+        SAFileProgressThrottle throttle = new SAFileProgressThrottle(0, 25);
+        throttle.shouldReport(0, 1000, 0);
+
+        // then
+        assertFalse(throttle.shouldReport(100, 1000, 1000));
+        assertTrue(throttle.shouldReport(250, 1000, 2000));
+        assertFalse(throttle.shouldReport(260, 1000, 3000));
+    }
+
+    @Test
+    public void test_SAFileProgressThrottle_LastUpdate_IsAlwaysReportedOnce () {
+        // given
+        SAFileProgressThrottle throttle = new SAFileProgressThrottle(10000, 50);
+        throttle.shouldReport(990, 1000, 0);
+
+        // then
+        assertTrue(throttle.shouldReport(1000, 1000, 1));
+        assertFalse(throttle.shouldReport(1000, 1000, 2));
+    }
+
+    @Test
+    public void test_SAFileProgressThrottle_WithUnknownTotal_UsesIntervalOnly () {
+        // given
+        SAFileProgressThrottle throttle = new SAFileProgressThrottle(100, 50);
+        throttle.shouldReport(10, -1, 0);
+
+        // then
+        assertFalse(throttle.shouldReport(20, -1, 50));
+        assertTrue(throttle.shouldReport(30, -1, 100));
+    }
+}
@@ -0,0 +1,179 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tv.superawesome.lib.sanetwork.mocks.MockQueueExecutor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSAFileScheduler {
+
+    private MockQueueExecutor executor;
+    private SAFileScheduler scheduler;
+    private List<String> ran;
+
+    @Before
+    public void setUp () {
+        executor = new MockQueueExecutor();
+        scheduler = new SAFileScheduler(executor, 1);
+        ran = new ArrayList<>();
+    }
+
+    @Test
+    public void test_SAFileScheduler_Prefetch_WaitsForOnDemand () {
+        // given
+        scheduler.schedule(task("onDemand"));
+
+        // when
+        scheduler.schedulePrefetch("key", new SAPrefetchRequest("url"), group(), task("prefetch"), null, task("expired"));
+
+        // then
+        assertEquals(1, executor.size());
+        assertEquals(1, scheduler.getQueuedPrefetches());
+
+        executor.runAll();
+        assertEquals("onDemand", ran.get(0));
+        assertEquals("prefetch", ran.get(1));
+    }
+
+    @Test
+    public void test_SAFileScheduler_Prefetch_IsCappedAndOrdered () {
+        // given
+        SAPrefetchGroup group = group();
+        scheduler.schedule(task("onDemand"));
+        long now = System.currentTimeMillis();
+
+        // when
+        scheduler.schedulePrefetch("a", new SAPrefetchRequest("a", SAPrefetchRequest.PRIORITY_LOW, SAPrefetchRequest.NO_DEADLINE), group, task("low"), null, task("expired"));
+        scheduler.schedulePrefetch("b", new SAPrefetchRequest("b", SAPrefetchRequest.PRIORITY_HIGH, now + 100000), group, task("high-late"), null, task("expired"));
+        scheduler.schedulePrefetch("c", new SAPrefetchRequest("c", SAPrefetchRequest.PRIORITY_HIGH, now + 1000), group, task("high-soon"), null, task("expired"));
+        executor.runNext();
+
+        // then
+        assertEquals(1, executor.size());
+        assertEquals(1, scheduler.getRunningPrefetches());
+
+        executor.runAll();
+        assertEquals("high-soon", ran.get(1));
+        assertEquals("high-late", ran.get(2));
+        assertEquals("low", ran.get(3));
+    }
+
+    @Test
+    public void test_SAFileScheduler_Cancel_DropsQueuedPrefetches () {
+        // given
+        SAPrefetchGroup group = group();
+        SAPrefetchGroup other = group();
+        scheduler.schedule(task("onDemand"));
+        scheduler.schedulePrefetch("a", new SAPrefetchRequest("a"), group, task("a"), null, task("expired"));
+        scheduler.schedulePrefetch("b", new SAPrefetchRequest("b"), other, task("b"), null, task("expired"));
+
+        // when
+        group.cancel();
+        executor.runAll();
+
+        // then
+        assertEquals(2, ran.size());
+        assertEquals("b", ran.get(1));
+    }
+
+    @Test
+    public void test_SAFileScheduler_ExpiredPrefetch_IsNotRun () {
+        // given
+        scheduler.schedule(task("onDemand"));
+        scheduler.schedulePrefetch("a", new SAPrefetchRequest("a", SAPrefetchRequest.PRIORITY_NORMAL, 1), group(), task("a"), null, task("expired"));
+
+        // when
+        executor.runAll();
+
+        // then
+        assertEquals("expired", ran.get(1));
+        assertEquals(2, ran.size());
+    }
+
+    @Test
+    public void test_SAFileScheduler_Promote_RemovesQueuedPrefetch () {
+        // given
+        SAFileDownloaderInterface listener = new SAFileDownloaderInterface() {
+            @Override
+            public void saDidDownloadFile(boolean success, String key, String filePath) {}
+        };
+        scheduler.schedule(task("onDemand"));
+        scheduler.schedulePrefetch("a", new SAPrefetchRequest("a"), group(), task("a"), listener, task("expired"));
+
+        // when
+        List<SAFileDownloaderInterface> promoted = scheduler.promote("a");
+
+        // then
+        assertEquals(1, promoted.size());
+        assertTrue(promoted.get(0) == listener);
+        assertEquals(0, scheduler.getQueuedPrefetches());
+    }
+
+    @Test
+    public void test_SAFileScheduler_WithNoPrefetchSlots_HoldsPrefetches () {
+        // given
+        scheduler.setMaxConcurrentPrefetches(0);
+
+        // when
+        scheduler.schedulePrefetch("a", new SAPrefetchRequest("a"), group(), task("a"), null, task("expired"));
+
+        // then
+        assertEquals(0, executor.size());
+
+        scheduler.setMaxConcurrentPrefetches(1);
+        assertEquals(1, executor.size());
+    }
+
+    @Test
+    public void test_SAFileScheduler_DroppedOnDemand_LetsPrefetchesRun () {
+        // given
+        scheduler.schedule(task("onDemand"));
+        scheduler.schedulePrefetch("a", new SAPrefetchRequest("a"), group(), task("a"), null, task("expired"));
+
+        // when
+        executor.dropAll();
+
+        // then
+        assertEquals(1, scheduler.getRunningPrefetches());
+        executor.runAll();
+        assertEquals(1, ran.size());
+        assertEquals("a", ran.get(0));
+        assertEquals(0, scheduler.getRunningPrefetches());
+    }
+
+    @Test
+    public void test_SAFileScheduler_DroppedPrefetch_FreesItsSlot () {
+        // given
+        scheduler.schedulePrefetch("a", new SAPrefetchRequest("a"), group(), task("a"), null, task("expired"));
+        scheduler.schedulePrefetch("b", new SAPrefetchRequest("b"), group(), task("b"), null, task("expired"));
+        scheduler.pump();
+
+        // when
+        executor.dropAll();
+
+        // then
+        executor.runAll();
+        assertEquals(1, ran.size());
+        assertEquals("b", ran.get(0));
+        assertEquals(0, scheduler.getRunningPrefetches());
+    }
+
+    private SAPrefetchGroup group () {
+        return new SAPrefetchGroup(scheduler);
+    }
+
+    private Runnable task (final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,114 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+public class TestSAFileStatsRecorder {
+
+    @Test
+    public void test_SAFileStatsRecorder_Counters () {
+        // given
+        SAFileStatsRecorder recorder = new SAFileStatsRecorder();
+
+        // when
+        recorder.recordHit(100);
+        recorder.recordHit(50);
+        recorder.recordMiss();
+        recorder.recordMiss();
+        recorder.recordMiss();
+        recorder.recordDownload(1000, 10);
+        recorder.recordRevalidation(20);
+        recorder.recordFailure(SAFileDownloadError.NETWORK, 300);
+        recorder.recordFailure(SAFileDownloadError.NETWORK, 0);
+        recorder.recordEvictions(4);
+        SAFileDownloaderStats stats = recorder.snapshot();
+
+        // then
+        assertEquals(2, stats.getHits());
+        assertEquals(3, stats.getMisses());
+        assertEquals(1, stats.getRevalidations());
+        assertEquals(1300, stats.getBytesDownloaded());
+        assertEquals(170, stats.getBytesFromCache());
+        assertEquals(4, stats.getEvictions());
+        assertEquals(2, stats.getFailures(SAFileDownloadError.NETWORK));
+        assertEquals(0, stats.getFailures(SAFileDownloadError.STORAGE));
+        assertEquals(0.6, stats.getHitRatio(), 0.0001);
+    }
+
+    @Test
+    public void test_SAFileStatsRecorder_DurationHistogram () {
+        // given
+        SAFileStatsRecorder recorder = new SAFileStatsRecorder();
+
+        // when
+        recorder.recordDownload(1, 0);
+        recorder.recordDownload(1, 99);
+        recorder.recordDownload(1, 100);
+        recorder.recordDownload(1, 4999);
+        recorder.recordDownload(1, 60000);
+        long[] durations = recorder.snapshot().getDurations();
+
+        // then
+        assertEquals(SAFileDownloaderStats.getDurationBuckets().length + 1, durations.length);
+        assertEquals(2, durations[0]);
+        assertEquals(1, durations[1]);
+        assertEquals(1, durations[5]);
+        assertEquals(1, durations[durations.length - 1]);
+    }
+
+    @Test
+    public void test_SAFileStatsRecorder_SnapshotsAreFrozen () {
+        // given
+        SAFileStatsRecorder recorder = new SAFileStatsRecorder();
+        recorder.recordHit(1);
+        SAFileDownloaderStats before = recorder.snapshot();
+
+        // when
+        recorder.recordHit(1);
+        recorder.reset();
+
+        // then
+        assertEquals(1, before.getHits());
+        assertEquals(0, recorder.snapshot().getHits());
+    }
+
+    @Test
+    public void test_SAFileStatsRecorder_Listeners () {
+        // given
+        SAFileStatsRecorder recorder = new SAFileStatsRecorder();
+        final List<Long> hits = new ArrayList<>();
+        SAFileDownloaderStatsInterface listener = new SAFileDownloaderStatsInterface() {
+            @Override
+            public void saDidUpdateStats(SAFileDownloaderStats stats) {
+                hits.add(stats.getHits());
+            }
+        };
+
+        // when
+        recorder.addListener(listener);
+        recorder.recordHit(1);
+        recorder.recordHit(1);
+        recorder.removeListener(listener);
+        recorder.recordHit(1);
+
+        // then
+        assertEquals(2, hits.size());
+        assertEquals(Long.valueOf(2), hits.get(1));
+    }
+
+    @Test
+    public void test_SAFileStatsRecorder_DurationBuckets_CannotBeChanged () {
+        // given
+        long[] buckets = SAFileDownloaderStats.getDurationBuckets();
+
+        // when
+        buckets[0] = 0;
+
+        // then
+        assertEquals(100, SAFileDownloaderStats.getDurationBuckets()[0]);
+    }
+}
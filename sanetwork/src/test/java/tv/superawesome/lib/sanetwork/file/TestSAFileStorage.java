@@ -0,0 +1,144 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSAFileStorage {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File filesDir;
+    private final long[] usable = {0};
+
+    @Before
+    public void setUp () throws Exception {
+        filesDir = folder.newFolder("files");
+        SAFileStorage.spaceProvider = new SAFileStorage.SpaceProvider() {
+            @Override
+            public long getUsableSpace(File directory) {
+                return usable[0];
+            }
+        };
+    }
+
+    @After
+    public void tearDown () {
+        SAFileStorage.spaceProvider = SAFileStorage.SYSTEM;
+    }
+
+    @Test
+    public void test_SAFileStorage_WithEnoughSpace_EvictsNothing () throws Exception {
+        // given
+        addFile("a", 1000, 1, 0);
+        usable[0] = 10000;
+
+        // when
+        boolean fits = SAFileStorage.ensureSpace(filesDir, 5000, 1000);
+
+        // then
+        assertTrue(fits);
+        assertNotNull(SAFileCacheIndex.forDirectory(filesDir).get("a"));
+    }
+
+    @Test
+    public void test_SAFileStorage_Evict_LeastRecentlyUsedFirst () throws Exception {
+        // given
+        addFile("old", 1000, 1, 0);
+        addFile("used", 1000, 2, 50);
+        addFile("new", 1000, 10, 0);
+        usable[0] = 500;
+
+        // when
+        boolean fits = SAFileStorage.ensureSpace(filesDir, 1000, 1000);
+
+        // then
+        SAFileCacheIndex index = SAFileCacheIndex.forDirectory(filesDir);
+        assertTrue(fits);
+        assertNull(index.get("old"));
+        assertNull(index.get("new"));
+        assertNotNull(index.get("used"));
+        assertFalse(new File(filesDir, "old").exists());
+        assertTrue(new File(filesDir, "used").exists());
+    }
+
+    @Test
+    public void test_SAFileStorage_Touch_KeepsEntryLonger () throws Exception {
+        // given
+        addFile("first", 1000, 1, 0);
+        addFile("second", 1000, 2, 0);
+        SAFileCacheIndex.forDirectory(filesDir).touch("first", 3);
+
+        // when
+        long freed = SAFileStorage.evict(filesDir, 1);
+
+        // then
+        assertEquals(1000, freed);
+        assertNotNull(SAFileCacheIndex.forDirectory(filesDir).get("first"));
+        assertNull(SAFileCacheIndex.forDirectory(filesDir).get("second"));
+    }
+
+    @Test
+    public void test_SAFileStorage_WithoutEnoughSpace_Fails () throws Exception {
+        // given
+        addFile("a", 1000, 1, 0);
+        usable[0] = 0;
+
+        // when
+        boolean fits = SAFileStorage.ensureSpace(filesDir, 5000, 1000);
+
+        // then
+        assertFalse(fits);
+        assertEquals(0, SAFileCacheIndex.forDirectory(filesDir).size());
+    }
+
+    @Test
+    public void test_SAFileStorage_TrimTo_CountsEvictions () throws Exception {
+        // given
+        addFile("a", 1000, 1, 0);
+        addFile("b", 1000, 2, 0);
+        addFile("c", 1000, 3, 0);
+        long evictions = SAFileStatsRecorder.getShared().snapshot().getEvictions();
+
+        // when
+        long freed = SAFileStorage.trimTo(filesDir, 1500);
+
+        // then
+        assertEquals(2000, freed);
+        assertEquals(evictions + 2, SAFileStatsRecorder.getShared().snapshot().getEvictions());
+        assertNotNull(SAFileCacheIndex.forDirectory(filesDir).get("c"));
+    }
+
+    @Test
+    public void test_SAFileStorage_StorageErrorOf () {
+        assertEquals(SAFileDownloadError.INSUFFICIENT_STORAGE, SAFileCopier.storageErrorOf(new IOException("write failed: ENOSPC (No space left on device)")));
+        assertEquals(SAFileDownloadError.INSUFFICIENT_STORAGE, SAFileCopier.storageErrorOf(new IOException("No space left on device")));
+        assertEquals(SAFileDownloadError.STORAGE, SAFileCopier.storageErrorOf(new IOException("Read-only file system")));
+        assertEquals(SAFileDownloadError.STORAGE, SAFileCopier.storageErrorOf(new IOException()));
+    }
+
+    private void addFile(String key, int size, long createdAt, long accessedAt) throws IOException {
+        FileOutputStream output = new FileOutputStream(new File(filesDir, key));
+        output.write(new byte[size]);
+        output.close();
+
+        SAFileCacheEntry entry = new SAFileCacheEntry(key, key);
+        entry.setSize(size);
+        entry.setCreatedAt(createdAt);
+        entry.setAccessedAt(accessedAt);
+        SAFileCacheIndex.forDirectory(filesDir).put(entry);
+    }
+}
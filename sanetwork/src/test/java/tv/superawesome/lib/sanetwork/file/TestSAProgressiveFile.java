@@ -0,0 +1,215 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class TestSAProgressiveFile {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_SAProgressiveFile_Complete_ReadsWholeFile () throws Exception {
+        // given
+        byte[] data = randomBytes(10000);
+        File file = writeFile("file.mp4", data, data.length);
+        SAProgressiveFile progressive = new SAProgressiveFile("key", "file.mp4");
+
+        // when
+        progressive.complete(file, data.length);
+
+        // then
+        assertTrue(progressive.isComplete());
+        assertEquals(data.length, progressive.getAvailableBytes());
+        assertEquals(data.length, progressive.getTotalBytes());
+        assertTrue(Arrays.equals(data, readAll(progressive.openStream())));
+    }
+
+    @Test
+    public void test_SAProgressiveFile_Stream_DoesNotReadPastAvailableBytes () throws Exception {
+        // given
+        byte[] data = randomBytes(10000);
+        File file = writeFile("file.mp4.part", data, 20000);
+        SAProgressiveFile progressive = new SAProgressiveFile("key", "file.mp4");
+        progressive.start(file, 20000);
+
+        // when
+        progressive.advance(4000);
+        InputStream stream = progressive.openStream();
+        byte[] buffer = new byte[8000];
+        int count = stream.read(buffer, 0, buffer.length);
+
+        // then
+        assertEquals(4000, count);
+        assertEquals(0, stream.available());
+        stream.close();
+    }
+
+    @Test
+    public void test_SAProgressiveFile_Stream_BlocksUntilBytesArrive () throws Exception {
+        // given
+        final byte[] data = randomBytes(64 * 1024);
+        final File file = folder.newFile("file.mp4.part");
+        final SAProgressiveFile progressive = new SAProgressiveFile("key", "file.mp4");
+
+        // when
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RandomAccessFile output = new RandomAccessFile(file, "rw");
+                    progressive.start(file, data.length);
+                    for (int offset = 0; offset < data.length; offset += 4096) {
+                        output.write(data, offset, 4096);
+                        progressive.advance(offset + 4096);
+                        Thread.sleep(2);
+                    }
+                    output.close();
+                    File complete = new File(file.getParentFile(), "file.mp4");
+                    file.renameTo(complete);
+                    progressive.complete(complete, data.length);
+                } catch (Exception e) {
+                    progressive.fail();
+                }
+            }
+        });
+        writer.start();
+        byte[] result = readAll(progressive.openStream());
+        writer.join();
+
+        // then
+        assertTrue(Arrays.equals(data, result));
+    }
+
+    @Test
+    public void test_SAProgressiveFile_Stream_WithFailedDownload_Throws () throws Exception {
+        // given
+        byte[] data = randomBytes(1000);
+        File file = writeFile("file.mp4.part", data, data.length);
+        SAProgressiveFile progressive = new SAProgressiveFile("key", "file.mp4");
+        progressive.start(file, 5000);
+        progressive.advance(1000);
+        InputStream stream = progressive.openStream();
+        stream.read(new byte[1000], 0, 1000);
+
+        // when
+        progressive.fail();
+
+        // then
+        try {
+            stream.read();
+            fail();
+        } catch (IOException e) {
+            assertTrue(progressive.isFailed());
+        }
+    }
+
+    @Test
+    public void test_SAProgressiveFile_Replace_FailsStartedStreamsOnly () throws Exception {
+        // given
+        byte[] data = randomBytes(1000);
+        byte[] stale = randomBytes(3000);
+        File partial = writeFile("file.mp4.part", data, data.length);
+        File staleFile = writeFile("file.mp4", stale, stale.length);
+        SAProgressiveFile progressive = new SAProgressiveFile("key", "file.mp4");
+        progressive.start(partial, 5000);
+        progressive.advance(1000);
+        InputStream started = progressive.openStream();
+        started.read(new byte[500], 0, 500);
+        InputStream waiting = progressive.openStream();
+
+        // when
+        partial.delete();
+        progressive.replace(staleFile, stale.length);
+
+        // then
+        try {
+            started.read(new byte[500], 0, 500);
+            fail();
+        } catch (IOException e) {
+            assertTrue(progressive.isComplete());
+        }
+        assertTrue(Arrays.equals(stale, readAll(waiting)));
+    }
+
+    @Test
+    public void test_SAProgressiveFile_StartingOver_FailsStartedStreams () throws Exception {
+        // given
+        byte[] data = randomBytes(1000);
+        File partial = writeFile("file.mp4.part", data, data.length);
+        SAProgressiveFile progressive = new SAProgressiveFile("key", "file.mp4");
+        progressive.start(partial, 1000);
+        progressive.advance(600);
+        InputStream started = progressive.openStream();
+        started.read(new byte[300], 0, 300);
+
+        // when
+        progressive.start(partial, 1000);
+        progressive.advance(0);
+
+        // then
+        assertEquals(0, progressive.getAvailableBytes());
+        try {
+            started.read(new byte[300], 0, 300);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        progressive.complete(partial, 1000);
+        assertTrue(Arrays.equals(data, readAll(progressive.openStream())));
+    }
+
+    @Test
+    public void test_SAProgressiveFile_AwaitBytes_TimesOut () throws Exception {
+        // given
+        SAProgressiveFile progressive = new SAProgressiveFile("key", "file.mp4");
+        progressive.advance(100);
+
+        // when
+        long available = progressive.awaitBytes(1000, 50);
+
+        // then
+        assertEquals(100, available);
+        assertFalse(progressive.isComplete());
+    }
+
+    private File writeFile(String name, byte[] data, long length) throws IOException {
+        File file = folder.newFile(name);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        output.setLength(length);
+        output.write(data);
+        output.close();
+        return file;
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3000];
+        int count;
+        while ((count = stream.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+        stream.close();
+        return output.toByteArray();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
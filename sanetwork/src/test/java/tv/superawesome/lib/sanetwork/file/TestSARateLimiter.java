@@ -0,0 +1,119 @@
+package tv.superawesome.lib.sanetwork.file;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSARateLimiter {
+
+    @Test
+    public void test_SARateLimiter_Unlimited_DoesNotWait () throws Exception {
+        // given
+        SARateLimiter limiter = new SARateLimiter(SARateLimiter.UNLIMITED);
+        long start = System.currentTimeMillis();
+
+        // when
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire(1024 * 1024);
+        }
+
+        // then
+        assertTrue(System.currentTimeMillis() - start < 200);
+    }
+
+    @Test
+    public void test_SARateLimiter_LimitsAverageRate () throws Exception {
+        // given
+        SARateLimiter limiter = new SARateLimiter(100 * 1024);
+        long start = System.currentTimeMillis();
+
+        // when (a quarter of a second goes through as a burst, the rest at 100KB/s)
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(5 * 1024);
+        }
+
+        // then
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("took " + elapsed, elapsed >= 200);
+        assertTrue("took " + elapsed, elapsed < 1000);
+    }
+
+    @Test
+    public void test_SARateLimiter_ChunkLargerThanBurst_WaitsOnce () throws Exception {
+        // given
+        SARateLimiter limiter = new SARateLimiter(40 * 1024);
+        long start = System.currentTimeMillis();
+
+        // when
+        limiter.acquire(20 * 1024);
+
+        // then
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("took " + elapsed, elapsed >= 200);
+        assertTrue("took " + elapsed, elapsed < 1000);
+    }
+
+    @Test
+    public void test_SARateLimiter_SetRate_AtRuntime () throws Exception {
+        // given
+        SARateLimiter limiter = new SARateLimiter(1024);
+
+        // when
+        limiter.setRate(SARateLimiter.UNLIMITED);
+        long start = System.currentTimeMillis();
+        limiter.acquire(1024 * 1024);
+
+        // then
+        assertEquals(SARateLimiter.UNLIMITED, limiter.getRate());
+        assertTrue(System.currentTimeMillis() - start < 100);
+
+        // and negative rates mean unlimited
+        limiter.setRate(-5);
+        assertEquals(SARateLimiter.UNLIMITED, limiter.getRate());
+    }
+
+    @Test
+    public void test_SARateLimiter_StopSignal_EndsWaitEarly () throws Exception {
+        // given
+        SARateLimiter limiter = new SARateLimiter(1024);
+        final long stopAt = System.currentTimeMillis() + 100;
+
+        // when
+        long start = System.currentTimeMillis();
+        limiter.acquire(100 * 1024, new SARateLimiter.StopSignal() {
+            @Override
+            public boolean isStopped() {
+                return System.currentTimeMillis() >= stopAt;
+            }
+        });
+
+        // then
+        assertTrue(System.currentTimeMillis() - start < 100 + 4 * SARateLimiter.MAX_WAIT_SLICE);
+    }
+
+    @Test
+    public void test_SARateLimiter_SetRate_WakesWaitingCaller () throws Exception {
+        // given
+        final SARateLimiter limiter = new SARateLimiter(1024);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                    // ignore
+                }
+                limiter.setRate(SARateLimiter.UNLIMITED);
+            }
+        });
+
+        // when
+        long start = System.currentTimeMillis();
+        thread.start();
+        limiter.acquire(100 * 1024);
+
+        // then
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+}
@@ -0,0 +1,206 @@
+package tv.superawesome.lib.sanetwork.future;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class TestSAFuture {
+
+    @Test
+    public void test_SAFuture_CompletesOnce () {
+        // given
+        SAFuture<String> future = new SAFuture<>();
+        final List<String> values = new ArrayList<>();
+        future.onComplete(new SAFutureListener<String>() {
+            @Override
+            public void saDidComplete(SAFuture<String> future) {
+                values.add(future.getValue());
+            }
+        });
+
+        // when
+        boolean first = future.complete("first");
+        boolean second = future.complete("second");
+        boolean failed = future.fail(new IOException());
+
+        // then
+        assertTrue(first);
+        assertFalse(second);
+        assertFalse(failed);
+        assertTrue(future.isSuccessful());
+        assertEquals(Arrays.asList("first"), values);
+    }
+
+    @Test
+    public void test_SAFuture_ListenerAfterCompletion () {
+        // given
+        SAFuture<String> future = SAFuture.succeeded("value");
+        final List<String> values = new ArrayList<>();
+
+        // when
+        future.onComplete(new SAFutureListener<String>() {
+            @Override
+            public void saDidComplete(SAFuture<String> future) {
+                values.add(future.getValue());
+            }
+        });
+
+        // then
+        assertEquals(Arrays.asList("value"), values);
+    }
+
+    @Test
+    public void test_SAFuture_ThenStartsWhenInputCompletes () {
+        // given
+        SAFuture<String> ad = new SAFuture<>();
+        final SAFuture<Integer> asset = new SAFuture<>();
+        final List<String> inputs = new ArrayList<>();
+
+        // when
+        SAFuture<Integer> chained = ad.then(new SAFutureFunction<String, Integer>() {
+            @Override
+            public SAFuture<Integer> apply(String value) {
+                inputs.add(value);
+                return asset;
+            }
+        });
+
+        // then
+        assertTrue(inputs.isEmpty());
+        ad.complete("ad");
+        assertEquals(Arrays.asList("ad"), inputs);
+        assertFalse(chained.isDone());
+        asset.complete(42);
+        assertEquals(Integer.valueOf(42), chained.getValue());
+    }
+
+    @Test
+    public void test_SAFuture_ThenPassesFailuresOn () {
+        // given
+        IOException error = new IOException();
+        final List<String> inputs = new ArrayList<>();
+
+        // when
+        SAFuture<Integer> chained = SAFuture.<String>failed(error).then(new SAFutureFunction<String, Integer>() {
+            @Override
+            public SAFuture<Integer> apply(String value) {
+                inputs.add(value);
+                return SAFuture.succeeded(1);
+            }
+        });
+        SAFuture<Integer> throwing = SAFuture.succeeded("ad").then(new SAFutureFunction<String, Integer>() {
+            @Override
+            public SAFuture<Integer> apply(String value) throws Exception {
+                throw new IllegalStateException();
+            }
+        });
+
+        // then
+        assertTrue(inputs.isEmpty());
+        assertSame(error, chained.getError());
+        assertTrue(throwing.getError() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void test_SAFuture_All () {
+        // given
+        SAFuture<String> first = new SAFuture<>();
+        SAFuture<String> second = new SAFuture<>();
+
+        // when
+        SAFuture<List<String>> all = SAFuture.all(Arrays.asList(first, second));
+        second.complete("b");
+
+        // then
+        assertFalse(all.isDone());
+        first.complete("a");
+        assertEquals(Arrays.asList("a", "b"), all.getValue());
+        assertEquals(0, SAFuture.all(new ArrayList<SAFuture<String>>()).getValue().size());
+    }
+
+    @Test
+    public void test_SAFuture_AllFailsFast () {
+        // given
+        SAFuture<String> first = new SAFuture<>();
+        SAFuture<String> second = new SAFuture<>();
+        IOException error = new IOException();
+
+        // when
+        SAFuture<List<String>> all = SAFuture.all(Arrays.asList(first, second));
+        second.fail(error);
+
+        // then
+        assertSame(error, all.getError());
+        assertNull(all.getValue());
+    }
+
+    @Test
+    public void test_SAFuture_Any () {
+        // given
+        SAFuture<String> first = new SAFuture<>();
+        SAFuture<String> second = new SAFuture<>();
+        SAFuture<String> third = new SAFuture<>();
+        IOException error = new IOException();
+
+        // when
+        SAFuture<String> any = SAFuture.any(Arrays.asList(first, second));
+        SAFuture<String> none = SAFuture.any(Arrays.asList(third));
+        first.fail(new IOException());
+        third.fail(error);
+
+        // then
+        assertFalse(any.isDone());
+        second.complete("b");
+        assertEquals("b", any.getValue());
+        assertSame(error, none.getError());
+    }
+
+    @Test
+    public void test_SAFuture_Timeout () throws Exception {
+        // given
+        SAFuture<String> slow = new SAFuture<>();
+        SAFuture<String> fast = new SAFuture<>();
+
+        // when
+        SAFuture<String> timedOut = slow.timeout(50);
+        SAFuture<String> inTime = fast.timeout(5000);
+        fast.complete("fast");
+
+        // then
+        assertEquals("fast", inTime.getValue());
+        try {
+            timedOut.get(2000);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertFalse(slow.isDone());
+    }
+
+    @Test
+    public void test_SAFuture_GetTimesOut () throws Exception {
+        // given
+        SAFuture<String> future = new SAFuture<>();
+
+        // when
+        try {
+            future.get(10);
+            fail();
+        } catch (TimeoutException e) {
+            // then
+            assertFalse(future.isDone());
+        }
+    }
+}
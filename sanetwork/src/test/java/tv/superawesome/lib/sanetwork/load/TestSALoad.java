@@ -0,0 +1,292 @@
+package tv.superawesome.lib.sanetwork.load;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import tv.superawesome.lib.sanetwork.file.SAFileDownloader;
+import tv.superawesome.lib.sanetwork.file.SAFileDownloaderInterface;
+import tv.superawesome.lib.sanetwork.request.SANetwork;
+import tv.superawesome.lib.sanetwork.request.SANetworkInterface;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Load and soak tests, that drive SANetwork and SAFileDownloader with a configurable mix of
+ * requests and downloads against a local server and print throughput, latency percentiles,
+ * thread counts and heap growth. Only run with -Dsanetwork.load=true, e.g.
+ *
+ *   ./gradlew test -Dsanetwork.load=true -Dsanetwork.load.requests=5000
+ *
+ * Settings (all optional):
+ *   sanetwork.load.requests     number of ad requests             (default 2000)
+ *   sanetwork.load.events       tracking URLs fanned out per ad   (default 3)
+ *   sanetwork.load.threads      threads sending requests          (default 32)
+ *   sanetwork.load.downloads    number of downloads               (default 500)
+ *   sanetwork.load.files        distinct files downloaded         (default 100)
+ *   sanetwork.load.fileSize     size of each file, in bytes       (default 65536)
+ *   sanetwork.load.duration     length of the soak test, seconds  (default 60)
+ */
+public class TestSALoad {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private byte[] file;
+
+    /**
+     * Latencies of one kind of operation
+     */
+    private static class Recorder {
+
+        private final String name;
+        private final List<Long> latencies = new ArrayList<>();
+        private final AtomicInteger failures = new AtomicInteger();
+        private long start;
+        private long end;
+
+        Recorder(String name) {
+            this.name = name;
+        }
+
+        void start() {
+            start = System.nanoTime();
+        }
+
+        void stop() {
+            end = System.nanoTime();
+        }
+
+        synchronized void add(long nanos, boolean success) {
+            latencies.add(nanos);
+            if (!success) failures.incrementAndGet();
+        }
+
+        synchronized int count() {
+            return latencies.size();
+        }
+
+        synchronized String report() {
+            long[] sorted = new long[latencies.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            double seconds = (end - start) / 1e9;
+            return String.format("%s: %d ops in %.2fs (%.0f/s), %d failed, latency ms p50 %.1f, p90 %.1f, p99 %.1f, max %.1f",
+                    name, sorted.length, seconds, sorted.length / seconds, failures.get(),
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 100));
+        }
+
+        private static double percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) return 0;
+            int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    @Before
+    public void setUp () throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("sanetwork.load"));
+
+        file = new byte[Integer.getInteger("sanetwork.load.fileSize", 64 * 1024)];
+        new Random(file.length).nextBytes(file);
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (path.startsWith("/ad")) {
+                    return new MockResponse().setBody("{\"id\":1,\"creative\":{\"url\":\"/file/1.mp4\"}}");
+                } else if (path.startsWith("/event")) {
+                    return new MockResponse().setResponseCode(204);
+                } else if (path.startsWith("/file")) {
+                    return new MockResponse().setBody(new Buffer().write(file));
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        if (server != null) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void load_SANetwork_ConcurrentRequests () throws Exception {
+        int requests = Integer.getInteger("sanetwork.load.requests", 2000);
+        int threads = Integer.getInteger("sanetwork.load.threads", 32);
+
+        Snapshot before = Snapshot.take();
+        Recorder recorder = runRequests(requests, threads);
+        Snapshot after = Snapshot.take();
+
+        System.out.println(recorder.report());
+        System.out.println(before.compare(after));
+        assertEquals(requests, recorder.count());
+        assertEquals(0, recorder.failures.get());
+    }
+
+    @Test
+    public void load_SAFileDownloader_DownloadChurn () throws Exception {
+        int downloads = Integer.getInteger("sanetwork.load.downloads", 500);
+        int files = Integer.getInteger("sanetwork.load.files", 100);
+
+        Snapshot before = Snapshot.take();
+        Recorder recorder = runDownloads(newDownloader(), downloads, files, 0);
+        Snapshot after = Snapshot.take();
+
+        System.out.println(recorder.report());
+        System.out.println(before.compare(after));
+        assertEquals(downloads, recorder.count());
+        assertEquals(0, recorder.failures.get());
+    }
+
+    @Test
+    public void soak_SANetworkAndSAFileDownloader () throws Exception {
+        long duration = TimeUnit.SECONDS.toNanos(Integer.getInteger("sanetwork.load.duration", 60));
+        int threads = Integer.getInteger("sanetwork.load.threads", 32);
+        int files = Integer.getInteger("sanetwork.load.files", 100);
+        SAFileDownloader downloader = newDownloader();
+
+        Snapshot before = Snapshot.take();
+        long end = System.nanoTime() + duration;
+        int round = 0;
+        while (System.nanoTime() < end) {
+            // every round downloads a new set of files, so the cache keeps growing and churning
+            Recorder requests = runRequests(200, threads);
+            Recorder downloads = runDownloads(downloader, 50, files, round * files);
+            System.out.println("round " + round + " - " + requests.report());
+            System.out.println("round " + round + " - " + downloads.report());
+            System.out.println("round " + round + " - " + before.compare(Snapshot.take()));
+            round++;
+        }
+    }
+
+    /**
+     * Send ad requests, each followed by a fan-out to its tracking URLs, from a pool of threads
+     */
+    private Recorder runRequests(int requests, int threads) throws Exception {
+        final int events = Integer.getInteger("sanetwork.load.events", 3);
+        final Recorder recorder = new Recorder("SANetwork");
+        final CountDownLatch latch = new CountDownLatch(requests);
+        final String ad = server.url("/ad").toString();
+        final List<String> trackers = new ArrayList<>();
+        for (int i = 0; i < events; i++) {
+            trackers.add(server.url("/event?tracker=" + i).toString());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final SANetwork network = new SANetwork(pool, 15000);
+
+        recorder.start();
+        for (int i = 0; i < requests; i++) {
+            final long start = System.nanoTime();
+            network.sendGET(ad, new JSONObject().put("placement", i), null, new SANetworkInterface() {
+                @Override
+                public void saDidGetResponse(int status, String payload, boolean success) {
+                    if (success && !trackers.isEmpty()) {
+                        network.fanOutGET(trackers, null, 15000);
+                    }
+                    recorder.add(System.nanoTime() - start, success);
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await(10, TimeUnit.MINUTES);
+        recorder.stop();
+        pool.shutdown();
+        return recorder;
+    }
+
+    /**
+     * Download a mix of new and already cached files
+     */
+    private Recorder runDownloads(SAFileDownloader downloader, int downloads, int files, int firstFile) throws Exception {
+        final Recorder recorder = new Recorder("SAFileDownloader");
+        final CountDownLatch latch = new CountDownLatch(downloads);
+        Random random = new Random(downloads);
+
+        recorder.start();
+        for (int i = 0; i < downloads; i++) {
+            final long start = System.nanoTime();
+            String url = server.url("/file/" + (firstFile + random.nextInt(files)) + ".mp4").toString();
+            downloader.downloadFileFrom(url, new SAFileDownloaderInterface() {
+                @Override
+                public void saDidDownloadFile(boolean success, String key, String filePath) {
+                    recorder.add(System.nanoTime() - start, success);
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await(10, TimeUnit.MINUTES);
+        recorder.stop();
+        return recorder;
+    }
+
+    private SAFileDownloader newDownloader() throws Exception {
+        Context context = mock(Context.class);
+        when(context.getFilesDir()).thenReturn(folder.newFolder());
+        return new SAFileDownloader(context);
+    }
+
+    /**
+     * Thread count and heap usage at a point in time
+     */
+    private static class Snapshot {
+
+        final int threads;
+        final int peakThreads;
+        final long heap;
+
+        private Snapshot(int threads, int peakThreads, long heap) {
+            this.threads = threads;
+            this.peakThreads = peakThreads;
+            this.heap = heap;
+        }
+
+        static Snapshot take() {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            return new Snapshot(bean.getThreadCount(), bean.getPeakThreadCount(), runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        String compare(Snapshot after) {
+            return String.format("threads %d -> %d (peak %d), heap %.1fMB -> %.1fMB (%+.1fMB)",
+                    threads, after.threads, after.peakThreads,
+                    heap / 1048576.0, after.heap / 1048576.0, (after.heap - heap) / 1048576.0);
+        }
+    }
+}
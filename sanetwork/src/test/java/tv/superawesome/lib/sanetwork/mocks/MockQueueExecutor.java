@@ -0,0 +1,52 @@
+package tv.superawesome.lib.sanetwork.mocks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import tv.superawesome.lib.sanetwork.request.SAThreadPool;
+
+/**
+ * Executor that holds on to runnables until the test decides to run them
+ */
+public class MockQueueExecutor implements Executor {
+
+    private final List<Runnable> runnables = new ArrayList<>();
+
+    @Override
+    public synchronized void execute(Runnable runnable) {
+        runnables.add(runnable);
+    }
+
+    public synchronized int size() {
+        return runnables.size();
+    }
+
+    public void runNext() {
+        Runnable runnable;
+        synchronized (this) {
+            runnable = runnables.remove(0);
+        }
+        runnable.run();
+    }
+
+    public void runAll() {
+        while (size() > 0) {
+            runNext();
+        }
+    }
+
+    /**
+     * Forget every runnable without running it, as SAThreadPool.shutdown() does
+     */
+    public void dropAll() {
+        List<Runnable> dropped;
+        synchronized (this) {
+            dropped = new ArrayList<>(runnables);
+            runnables.clear();
+        }
+        for (Runnable runnable : dropped) {
+            SAThreadPool.drop(runnable);
+        }
+    }
+}
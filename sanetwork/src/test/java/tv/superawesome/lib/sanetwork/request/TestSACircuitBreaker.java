@@ -0,0 +1,101 @@
+package tv.superawesome.lib.sanetwork.request;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSACircuitBreaker {
+
+    private static final String HOST = "tracker.com";
+
+    @Test
+    public void test_SACircuitBreaker_OpensAfterConsecutiveFailures () {
+        // given
+        SACircuitBreaker breaker = new SACircuitBreaker(3, 60000);
+
+        // when
+        breaker.recordFailure(HOST);
+        breaker.recordFailure(HOST);
+        breaker.recordSuccess(HOST);
+        breaker.recordFailure(HOST);
+        breaker.recordFailure(HOST);
+
+        // then
+        assertEquals(SACircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        assertTrue(breaker.allowRequest(HOST));
+        breaker.recordFailure(HOST);
+        assertEquals(SACircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertFalse(breaker.allowRequest(HOST));
+        assertTrue(breaker.allowRequest("other.com"));
+        assertEquals(1, breaker.getStates().size());
+    }
+
+    @Test
+    public void test_SACircuitBreaker_HalfOpenProbe () throws Exception {
+        // given
+        SACircuitBreaker breaker = new SACircuitBreaker(1, 20);
+        breaker.recordFailure(HOST);
+
+        // when
+        Thread.sleep(40);
+
+        // then
+        assertTrue(breaker.allowRequest(HOST));
+        assertEquals(SACircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        assertFalse(breaker.allowRequest(HOST));
+        breaker.recordSuccess(HOST);
+        assertEquals(SACircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        assertTrue(breaker.allowRequest(HOST));
+        assertTrue(breaker.getStates().isEmpty());
+    }
+
+    @Test
+    public void test_SACircuitBreaker_FailedProbeReopensForLonger () throws Exception {
+        // given
+        SACircuitBreaker breaker = new SACircuitBreaker(1, 30);
+        breaker.recordFailure(HOST);
+        Thread.sleep(50);
+        breaker.allowRequest(HOST);
+
+        // when
+        breaker.recordFailure(HOST);
+        Thread.sleep(40);
+
+        // then
+        assertEquals(SACircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertFalse(breaker.allowRequest(HOST));
+        Thread.sleep(40);
+        assertTrue(breaker.allowRequest(HOST));
+    }
+
+    @Test
+    public void test_SACircuitBreaker_Listener () throws Exception {
+        // given
+        SACircuitBreaker breaker = new SACircuitBreaker(1, 0);
+        final List<SACircuitBreaker.State> states = new ArrayList<>();
+        breaker.setListener(new SACircuitBreakerInterface() {
+            @Override
+            public void saDidChangeState(String host, SACircuitBreaker.State state) {
+                assertEquals(HOST, host);
+                states.add(state);
+            }
+        });
+
+        // when
+        breaker.recordFailure(HOST);
+        breaker.allowRequest(HOST);
+        breaker.recordSuccess(HOST);
+        breaker.recordSuccess(HOST);
+
+        // then
+        assertEquals(3, states.size());
+        assertEquals(SACircuitBreaker.State.OPEN, states.get(0));
+        assertEquals(SACircuitBreaker.State.HALF_OPEN, states.get(1));
+        assertEquals(SACircuitBreaker.State.CLOSED, states.get(2));
+    }
+}
@@ -0,0 +1,159 @@
+package tv.superawesome.lib.sanetwork.request;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import tv.superawesome.lib.sanetwork.future.SAFuture;
+import tv.superawesome.lib.sanetwork.mocks.MockExecutor;
+import tv.superawesome.lib.sanetwork.mocks.MockQueueExecutor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSAFanOut {
+
+    private MockWebServer server;
+    private ExecutorService pool;
+
+    @Before
+    public void setUp () throws Exception {
+        server = new MockWebServer();
+        server.start();
+        pool = Executors.newFixedThreadPool(10);
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        server.shutdown();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void test_SAFanOut_StatusPerUrl () throws Exception {
+        // given
+        SANetwork network = new SANetwork(new MockExecutor(), 1000);
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(204));
+        List<String> urls = Arrays.asList(
+                server.url("/first").toString(),
+                server.url("/second").toString(),
+                server.url("/third").toString(),
+                "not a url");
+
+        // when
+        SAFuture<SAFanOutResult> future = network.fanOutGET(urls, null, 1000);
+
+        // then
+        SAFanOutResult result = future.get(1000);
+        assertEquals(4, result.getCount());
+        assertEquals(200, result.getStatus(0));
+        assertEquals(404, result.getStatus(1));
+        assertEquals(204, result.getStatus(2));
+        assertEquals(0, result.getStatus(3));
+        assertEquals("not a url", result.getUrl(3));
+        assertEquals(2, result.getSuccessCount());
+        assertFalse(result.isSuccessful());
+    }
+
+    @Test
+    public void test_SAFanOut_LimitsRequestsPerHost () throws Exception {
+        // given
+        final AtomicInteger current = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        SAFanOut fanOut = new SAFanOut(pool, new SAFanOut.Request() {
+            @Override
+            public SANetworkResponse execute(String url, int timeout) throws Exception {
+                int now = current.incrementAndGet();
+                synchronized (max) {
+                    max.set(Math.max(max.get(), now));
+                }
+                Thread.sleep(50);
+                current.decrementAndGet();
+                return new SANetworkResponse(200, "");
+            }
+        });
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            urls.add("https://tracker.test_SAFanOut_LimitsRequestsPerHost.com/event?i=" + i);
+        }
+
+        // when
+        SAFanOutResult result = fanOut.send(urls, 5000).get(5000);
+
+        // then
+        assertTrue(result.isSuccessful());
+        assertTrue(max.get() > 1);
+        assertTrue(max.get() <= SAFanOut.MAX_REQUESTS_PER_HOST);
+    }
+
+    @Test
+    public void test_SAFanOut_SharedDeadline () throws Exception {
+        // given
+        SAFanOut fanOut = new SAFanOut(pool, new SAFanOut.Request() {
+            @Override
+            public SANetworkResponse execute(String url, int timeout) throws Exception {
+                if (url.contains("slow")) {
+                    Thread.sleep(Math.min(timeout, 3000));
+                    throw new java.net.SocketTimeoutException();
+                }
+                return new SANetworkResponse(200, "");
+            }
+        });
+        List<String> urls = Arrays.asList(
+                "https://slow.test_SAFanOut_SharedDeadline.com/event",
+                "https://fast.test_SAFanOut_SharedDeadline.com/event");
+
+        // when
+        long start = System.currentTimeMillis();
+        SAFanOutResult result = fanOut.send(urls, 200).get(5000);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // then
+        assertTrue(elapsed < 1000);
+        assertEquals(0, result.getStatus(0));
+        assertEquals(200, result.getStatus(1));
+    }
+
+    @Test
+    public void test_SAFanOut_DroppedRequests_ReleaseTheirHost () throws Exception {
+        // given
+        MockQueueExecutor queue = new MockQueueExecutor();
+        final AtomicInteger sent = new AtomicInteger();
+        SAFanOut fanOut = new SAFanOut(queue, new SAFanOut.Request() {
+            @Override
+            public SANetworkResponse execute(String url, int timeout) throws Exception {
+                sent.incrementAndGet();
+                return new SANetworkResponse(200, "");
+            }
+        });
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < SAFanOut.MAX_REQUESTS_PER_HOST + 1; i++) {
+            urls.add("https://tracker.test_SAFanOut_DroppedRequests_ReleaseTheirHost.com/event?i=" + i);
+        }
+        SAFuture<SAFanOutResult> future = fanOut.send(urls, 5000);
+
+        // when
+        queue.dropAll();
+        queue.runAll();
+
+        // then
+        SAFanOutResult result = future.get(1000);
+        assertEquals(1, sent.get());
+        assertEquals(1, result.getSuccessCount());
+
+        fanOut.send(urls.subList(0, 1), 5000);
+        assertEquals(1, queue.size());
+    }
+}
@@ -0,0 +1,186 @@
+package tv.superawesome.lib.sanetwork.request;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import tv.superawesome.lib.sanetwork.future.SAFuture;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class TestSAHedgedRequest {
+
+    private ExecutorService pool;
+
+    @Before
+    public void setUp () {
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown () {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Request whose first attempt hangs until it's cancelled, while later ones answer at once
+     */
+    private static class SlowFirstRequest implements SAHedgedRequest.Request {
+
+        final AtomicInteger attempts = new AtomicInteger();
+        final long duration;
+        volatile boolean wasCancelled = false;
+
+        SlowFirstRequest(long duration) {
+            this.duration = duration;
+        }
+
+        @Override
+        public SANetworkResponse execute(SARequestAttempt attempt) throws Exception {
+            int number = attempts.incrementAndGet();
+            if (number > 1) {
+                return new SANetworkResponse(200, "attempt " + number);
+            }
+            long end = System.currentTimeMillis() + duration;
+            while (System.currentTimeMillis() < end) {
+                if (attempt.isCancelled()) {
+                    wasCancelled = true;
+                    throw new IOException("Request cancelled");
+                }
+                Thread.sleep(5);
+            }
+            return new SANetworkResponse(200, "attempt 1");
+        }
+    }
+
+    @Test
+    public void test_SAHedgedRequest_NoHedgeWhenFast () throws Exception {
+        // given
+        SAHedgingPolicy policy = new SAHedgingPolicy().setDefaultDelay(1000).setBudget(1);
+        final AtomicInteger attempts = new AtomicInteger();
+        SAHedgedRequest request = new SAHedgedRequest(pool, policy, new SAHedgedRequest.Request() {
+            @Override
+            public SANetworkResponse execute(SARequestAttempt attempt) {
+                attempts.incrementAndGet();
+                return new SANetworkResponse(200, "fast");
+            }
+        });
+
+        // when
+        SANetworkResponse response = request.send().get(2000);
+
+        // then
+        assertEquals("fast", response.getPayload());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void test_SAHedgedRequest_HedgesSlowRequests () throws Exception {
+        // given
+        SAHedgingPolicy policy = new SAHedgingPolicy().setDefaultDelay(100).setMinDelay(100).setBudget(1);
+        SlowFirstRequest slow = new SlowFirstRequest(3000);
+        SAHedgedRequest request = new SAHedgedRequest(pool, policy, slow);
+
+        // when
+        long start = System.currentTimeMillis();
+        SANetworkResponse response = request.send().get(2000);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // then
+        assertEquals("attempt 2", response.getPayload());
+        assertTrue(elapsed < 1000);
+        Thread.sleep(100);
+        assertTrue(slow.wasCancelled);
+    }
+
+    @Test
+    public void test_SAHedgedRequest_RespectsBudget () throws Exception {
+        // given
+        SAHedgingPolicy policy = new SAHedgingPolicy().setDefaultDelay(50).setMinDelay(50).setBudget(0);
+        SlowFirstRequest slow = new SlowFirstRequest(500);
+        SAHedgedRequest request = new SAHedgedRequest(pool, policy, slow);
+
+        // when
+        SAFuture<SANetworkResponse> future = request.send();
+        Thread.sleep(300);
+
+        // then
+        assertEquals(1, slow.attempts.get());
+        assertEquals("attempt 1", future.get(5000).getPayload());
+    }
+
+    @Test
+    public void test_SAHedgedRequest_FailsWhenAllAttemptsFail () throws Exception {
+        // given
+        SAHedgingPolicy policy = new SAHedgingPolicy().setDefaultDelay(1000).setBudget(1);
+        SAHedgedRequest request = new SAHedgedRequest(pool, policy, new SAHedgedRequest.Request() {
+            @Override
+            public SANetworkResponse execute(SARequestAttempt attempt) throws Exception {
+                throw new IOException("unreachable");
+            }
+        });
+
+        // when
+        try {
+            request.send().get(2000);
+            fail();
+        } catch (ExecutionException e) {
+            // then
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void test_SAHedgingPolicy_DelayFromLatencies () {
+        // given
+        SAHedgingPolicy policy = new SAHedgingPolicy().setMinDelay(0).setPercentile(90);
+
+        // when
+        for (int i = 1; i <= 20; i++) {
+            policy.addLatency(i * 10);
+        }
+
+        // then
+        assertEquals(180, policy.getDelay());
+        assertEquals(500, policy.setMinDelay(500).getDelay());
+    }
+
+    @Test
+    public void test_SANetwork_SendHedgedGET () throws Exception {
+        // given
+        MockWebServer server = new MockWebServer();
+        server.start();
+        server.enqueue(new MockResponse().setBody("slow").setBodyDelay(1, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody("fast"));
+        SANetwork network = new SANetwork(pool, 5000);
+        SAHedgingPolicy policy = new SAHedgingPolicy().setDefaultDelay(200).setMinDelay(200).setBudget(1);
+        final SAFuture<String> payload = new SAFuture<>();
+
+        // when
+        network.sendGET(server.url("/ad").toString(), null, null, policy, new SANetworkInterface() {
+            @Override
+            public void saDidGetResponse(int status, String response, boolean success) {
+                payload.complete(response);
+            }
+        });
+
+        // then
+        try {
+            assertEquals("fast", payload.get(2000));
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+}
@@ -5,13 +5,20 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import tv.superawesome.lib.sanetwork.future.SAFuture;
 import tv.superawesome.lib.sanetwork.mocks.MockExecutor;
 import tv.superawesome.lib.sanetwork.request.SANetwork;
 import tv.superawesome.lib.sanetwork.request.SANetworkInterface;
@@ -389,4 +396,242 @@ public class TestSANetwork {
             }
         });
     }
+
+    @Test
+    public void test_SANetwork_SamplesTimeToFirstByte () throws Exception {
+        // given
+        String url = server.url("/some/url").toString();
+        SANetworkEstimator estimator = SANetworkEstimator.getShared();
+        estimator.setNetwork("test_SANetwork_SamplesTimeToFirstByte");
+        server.enqueue(new MockResponse().setBody(responseBody));
+
+        // when
+        network.sendGET(url, null, null, null);
+
+        // then
+        SANetworkEstimate estimate = estimator.getEstimate();
+        estimator.setNetwork(null);
+        assertEquals(1, estimate.getTimeToFirstByteSamples());
+        assertTrue(estimate.getTimeToFirstByte() >= 0);
+    }
+
+    @Test
+    public void test_SANetwork_PreconnectIsReused () throws Exception {
+        // given
+        String url = server.url("/some/url").toString();
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse().setBody(responseBody));
+
+        // when
+        network.preconnect(url);
+        network.sendGET(url, null, null, null);
+
+        // then
+        RecordedRequest preconnect = server.takeRequest(1, TimeUnit.SECONDS);
+        RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("HEAD", preconnect.getMethod());
+        assertEquals("/", preconnect.getPath());
+        assertEquals("GET", request.getMethod());
+        assertEquals(0, preconnect.getSequenceNumber());
+        assertEquals(1, request.getSequenceNumber());
+    }
+
+    @Test
+    public void test_SANetwork_PreconnectSkipsWarmHosts () throws Exception {
+        // given
+        String url = server.url("/some/url").toString();
+        server.enqueue(new MockResponse());
+
+        // when
+        network.preconnect(url);
+        network.preconnect(url + "/other");
+
+        // then
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void test_SANetwork_PreconnectDoesNotFollowRedirects () throws Exception {
+        // given
+        String url = server.url("/some/url").toString();
+        server.enqueue(new MockResponse().setResponseCode(301).setHeader("Location", server.url("/elsewhere").toString()));
+        server.enqueue(new MockResponse());
+
+        // when
+        network.preconnect(url);
+
+        // then
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void test_SANetwork_PreconnectDoesNotDelayRequests () throws Exception {
+        // given
+        MockWebServer unreachable = new MockWebServer();
+        unreachable.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        unreachable.start();
+        server.enqueue(new MockResponse().setBody(responseBody));
+        SANetwork client = new SANetwork();
+
+        try {
+            // when
+            client.preconnect(unreachable.url("/").toString());
+            assertNotNull(unreachable.takeRequest(5, TimeUnit.SECONDS));
+            SAFuture<SANetworkResponse> response = client.sendGET(server.url("/some/url").toString(), null, null);
+
+            // then
+            assertEquals(200, response.get(2000).getStatus());
+        } finally {
+            unreachable.shutdown();
+        }
+    }
+
+    @Test
+    public void test_SANetwork_Shutdown_FailsQueuedRequestsAndStaysUsable () throws Exception {
+        // given
+        String url = server.url("/some/url").toString();
+        server.enqueue(new MockResponse().setBody(responseBody).setBodyDelay(1, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody(responseBody));
+        SANetwork client = new SANetwork();
+        SAFuture<SANetworkResponse> running = client.sendGET(url, null, null);
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        SAFuture<SANetworkResponse> queued = client.sendGET(url, null, null);
+
+        // when
+        SAThreadPool.getShared().shutdown();
+
+        // then
+        assertTrue(queued.isDone());
+        assertFalse(queued.isSuccessful());
+        try {
+            running.get(5000);
+        } catch (ExecutionException e) {
+            // it may have been interrupted
+        }
+        assertTrue(SARequestTracker.awaitIdle(1000));
+        assertEquals(200, client.sendGET(url, null, null).get(2000).getStatus());
+    }
+
+    @Test
+    public void test_SANetwork_FanOut_DoesNotDelayRequests () throws Exception {
+        // given
+        MockWebServer tracker = new MockWebServer();
+        tracker.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("ok").setBodyDelay(3, TimeUnit.SECONDS);
+            }
+        });
+        tracker.start();
+
+        // as many slow tracking URLs as the old shared pool had threads, over two host names
+        List<String> urls = new ArrayList<>();
+        for (String host : Arrays.asList("localhost", "127.0.0.1")) {
+            for (int i = 0; i < SAFanOut.MAX_REQUESTS_PER_HOST; i++) {
+                urls.add("http://" + host + ":" + tracker.getPort() + "/event/" + i);
+            }
+        }
+        server.enqueue(new MockResponse().setBody(responseBody));
+        SANetwork client = new SANetwork();
+
+        try {
+            // when
+            client.fanOutGET(urls, null, 5000);
+            for (int i = 0; i < urls.size(); i++) {
+                assertNotNull(tracker.takeRequest(2, TimeUnit.SECONDS));
+            }
+            SAFuture<SANetworkResponse> response = client.sendGET(server.url("/some/url").toString(), null, null);
+
+            // then
+            assertEquals(200, response.get(2000).getStatus());
+        } finally {
+            tracker.shutdown();
+        }
+    }
+
+    @Test
+    public void test_SANetwork_SendGET_WithFuture () throws Exception {
+        // given
+        String url = server.url("/some/url").toString();
+        server.enqueue(new MockResponse().setBody(responseBody));
+        server.enqueue(new MockResponse().setResponseCode(404).setBody("Not found"));
+
+        // when
+        SAFuture<SANetworkResponse> success = network.sendGET(url, null, null);
+        SAFuture<SANetworkResponse> failure = network.sendGET(url, null, null);
+
+        // then
+        assertEquals(200, success.getValue().getStatus());
+        assertEquals(responseBody, success.getValue().getPayload());
+        assertTrue(failure.getError() instanceof SANetworkException);
+        assertEquals(404, ((SANetworkException) failure.getError()).getStatus());
+    }
+
+    @Test
+    public void test_SANetwork_FailsFastWhenCircuitIsOpen () throws Exception {
+        // given
+        String url = server.url("/some/url").toString();
+        String host = server.url("/").url().getAuthority();
+        for (int i = 0; i < SACircuitBreaker.FAILURE_THRESHOLD; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503).setBody("Unavailable"));
+        }
+        server.enqueue(new MockResponse().setBody(responseBody));
+
+        // when
+        for (int i = 0; i < SACircuitBreaker.FAILURE_THRESHOLD; i++) {
+            network.sendGET(url, null, null, null);
+        }
+        SAFuture<SANetworkResponse> rejected = network.sendGET(url, null, null);
+
+        // then
+        assertEquals(SACircuitBreaker.FAILURE_THRESHOLD, server.getRequestCount());
+        assertEquals(SACircuitBreaker.State.OPEN, SACircuitBreaker.getShared().getState(host));
+        assertEquals(0, ((SANetworkException) rejected.getError()).getStatus());
+    }
+
+    @Test
+    public void test_SANetwork_SendData_KeepsBinaryBodies () throws Exception {
+        // given
+        String url = server.url("/some/url").toString();
+        final byte[] binary = new byte[] { 0, 10, (byte) 0xff, 13, 10, 65, (byte) 0x80 };
+        server.enqueue(new MockResponse().setBody(new Buffer().write(binary)));
+
+        // when
+        network.sendData(url, "POST", null, null, binary, "application/x-protobuf", new SANetworkDataInterface() {
+            @Override
+            public void saDidGetResponse(int status, byte[] data, boolean success) {
+
+                // then
+                assertTrue(success);
+                assertEquals(200, status);
+                assertTrue(Arrays.equals(binary, data));
+            }
+        });
+
+        RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("application/x-protobuf", request.getHeader("Content-Type"));
+        assertTrue(Arrays.equals(binary, request.getBody().readByteArray()));
+    }
+
+    @Test
+    public void test_SANetwork_SendWithCodecs () throws Exception {
+        // given
+        String url = server.url("/some/url").toString();
+        server.enqueue(new MockResponse().setBody(responseBody));
+        server.enqueue(new MockResponse().setBody("not json"));
+        JSONObject body = new JSONObject().put("event", "impression");
+
+        // when
+        SAFuture<JSONObject> decoded = network.send(url, "POST", null, null, body, new SAJsonCodec(), new SAJsonCodec());
+        SAFuture<JSONObject> invalid = network.send(url, "GET", null, null, null, null, new SAJsonCodec());
+
+        // then
+        RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("application/json; charset=utf-8", request.getHeader("Content-Type"));
+        assertEquals("application/json; charset=utf-8", request.getHeader("Accept"));
+        assertEquals(body.toString(), request.getBody().readUtf8());
+        assertEquals("John", decoded.getValue().getString("name"));
+        assertTrue(invalid.getError() instanceof java.io.IOException);
+        assertFalse(invalid.getError() instanceof SANetworkException);
+    }
 }
@@ -0,0 +1,91 @@
+package tv.superawesome.lib.sanetwork.request;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class TestSANetworkEstimator {
+
+    @Test
+    public void test_SANetworkEstimator_WithoutSamples_IsUnknown () {
+        // given
+        SANetworkEstimator estimator = new SANetworkEstimator();
+
+        // when
+        SANetworkEstimate estimate = estimator.getEstimate();
+
+        // then
+        assertEquals(SANetworkEstimator.DEFAULT_NETWORK, estimate.getNetwork());
+        assertEquals(SANetworkEstimate.UNKNOWN, estimate.getBandwidth());
+        assertEquals(SANetworkEstimate.UNKNOWN, estimate.getBandwidthLow());
+        assertEquals(SANetworkEstimate.UNKNOWN, estimate.getTimeToFirstByte());
+        assertEquals(SANetworkEstimate.UNKNOWN, estimate.estimateDownloadTime(1000));
+    }
+
+    @Test
+    public void test_SANetworkEstimator_Throughput () {
+        // given
+        SANetworkEstimator estimator = new SANetworkEstimator();
+
+        // when: 1MB/s, then 2MB/s, plus a transfer too small to count
+        estimator.addThroughputSample(1000 * 1000, 1000);
+        estimator.addThroughputSample(2000 * 1000, 1000);
+        estimator.addThroughputSample(1000, 1000);
+        SANetworkEstimate estimate = estimator.getEstimate();
+
+        // then
+        assertEquals(2, estimate.getBandwidthSamples());
+        assertEquals(1250 * 1000, estimate.getBandwidth());
+        assertEquals(1000 * 1000, estimate.getBandwidthLow());
+    }
+
+    @Test
+    public void test_SANetworkEstimator_TimeToFirstByte_Percentile () {
+        // given
+        SANetworkEstimator estimator = new SANetworkEstimator();
+
+        // when
+        for (int i = 1; i <= 100; i++) {
+            estimator.addTimeToFirstByteSample(i);
+        }
+        SANetworkEstimate estimate = estimator.getEstimate();
+
+        // then (only the last SAMPLE_WINDOW samples, 69 to 100, are kept for percentiles)
+        assertEquals(100, estimate.getTimeToFirstByteSamples());
+        assertEquals(97, estimate.getTimeToFirstByteHigh());
+    }
+
+    @Test
+    public void test_SANetworkEstimator_KeepsNetworksApart () {
+        // given
+        SANetworkEstimator estimator = new SANetworkEstimator();
+
+        // when
+        estimator.setNetwork("wifi");
+        estimator.addTimeToFirstByteSample(20);
+        estimator.setNetwork("cellular");
+        estimator.addTimeToFirstByteSample(300);
+
+        // then
+        assertEquals("cellular", estimator.getEstimate().getNetwork());
+        assertEquals(300, estimator.getEstimate().getTimeToFirstByte());
+        assertEquals(20, estimator.getEstimate("wifi").getTimeToFirstByte());
+
+        estimator.reset();
+        assertEquals(SANetworkEstimate.UNKNOWN, estimator.getEstimate("wifi").getTimeToFirstByte());
+    }
+
+    @Test
+    public void test_SANetworkEstimate_EstimateDownloadTime () {
+        // given
+        SANetworkEstimator estimator = new SANetworkEstimator();
+        estimator.addThroughputSample(500 * 1000, 1000);
+        estimator.addTimeToFirstByteSample(200);
+
+        // when
+        long duration = estimator.getEstimate().estimateDownloadTime(1000 * 1000);
+
+        // then
+        assertEquals(2200, duration);
+    }
+}
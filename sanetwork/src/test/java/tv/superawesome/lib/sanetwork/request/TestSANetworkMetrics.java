@@ -0,0 +1,135 @@
+package tv.superawesome.lib.sanetwork.request;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import tv.superawesome.lib.sanetwork.mocks.MockExecutor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSANetworkMetrics {
+
+    @Test
+    public void test_SALatencyHistogram_Buckets () {
+        // small values get a bucket each
+        for (int i = 0; i < SALatencyHistogram.SUB_BUCKETS; i++) {
+            assertEquals(i, SALatencyHistogram.indexOf(i));
+            assertEquals(i, SALatencyHistogram.upperBoundOf(i));
+        }
+
+        // every value is in a bucket whose bounds contain it and are at most 1/8th apart
+        int previous = -1;
+        for (long value = 0; value <= SALatencyHistogram.MAX_VALUE; value += 1 + value / 64) {
+            int index = SALatencyHistogram.indexOf(value);
+            assertTrue(index >= previous);
+            assertTrue(index < SALatencyHistogram.BUCKETS);
+            long upper = SALatencyHistogram.upperBoundOf(index);
+            long lower = index == 0 ? 0 : SALatencyHistogram.upperBoundOf(index - 1) + 1;
+            assertTrue(value >= lower && value <= upper);
+            assertTrue(upper - lower <= Math.max(0, lower / SALatencyHistogram.SUB_BUCKETS));
+            previous = index;
+        }
+        assertEquals(SALatencyHistogram.BUCKETS - 1, SALatencyHistogram.indexOf(SALatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void test_SALatencyHistogram_Snapshot () {
+        // given
+        SALatencyHistogram histogram = new SALatencyHistogram();
+
+        // when
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, i % 10 != 0);
+        }
+        histogram.record(Long.MAX_VALUE, false);
+        SALatencySnapshot snapshot = histogram.snapshot("host/ad", true);
+        SALatencySnapshot empty = histogram.snapshot("host/ad", false);
+
+        // then
+        assertEquals(101, snapshot.getCount());
+        assertEquals(90, snapshot.getSuccesses());
+        assertEquals(11, snapshot.getErrors());
+        assertEquals(11 / 101.0, snapshot.getErrorRate(), 0.0001);
+        assertEquals(SALatencyHistogram.MAX_VALUE, snapshot.getMax());
+        assertEquals(50, snapshot.getPercentile(50), 50 / SALatencyHistogram.SUB_BUCKETS);
+        assertEquals(99, snapshot.getPercentile(98), 99 / SALatencyHistogram.SUB_BUCKETS);
+        assertEquals(SALatencyHistogram.MAX_VALUE, snapshot.getPercentile(100));
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getMax());
+        assertEquals(0, empty.getPercentile(99));
+    }
+
+    @Test
+    public void test_SALatencyHistogram_ConcurrentRecording () throws Exception {
+        // given
+        final SALatencyHistogram histogram = new SALatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+
+        // when
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i % 500, true);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        SALatencySnapshot snapshot = histogram.snapshot("host", false);
+        assertEquals(80000, snapshot.getCount());
+        assertEquals(80000, snapshot.getSuccesses());
+        assertEquals(499, snapshot.getMax());
+    }
+
+    @Test
+    public void test_SANetworkMetrics_EndpointTemplates () throws Exception {
+        // given
+        SANetworkMetrics metrics = new SANetworkMetrics();
+
+        // then
+        assertEquals("ads.com/v2/ad/:id", metrics.endpointOf(new URL("https://ads.com/v2/ad/1234?test=true")));
+        assertEquals("ads.com/event/:id/click", metrics.endpointOf(new URL("https://ads.com/event/123e4567-e89b-12d3-a456-426655440000/click")));
+        assertEquals("ads.com:8080", metrics.endpointOf(new URL("http://ads.com:8080/")));
+        metrics.setGroupedByHost(true);
+        assertEquals("ads.com", metrics.endpointOf(new URL("https://ads.com/v2/ad/1234")));
+    }
+
+    @Test
+    public void test_SANetworkMetrics_RecordsRequests () throws Exception {
+        // given
+        MockWebServer server = new MockWebServer();
+        server.start();
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(404).setBody("Not found"));
+        SANetwork network = new SANetwork(new MockExecutor(), 1000);
+        String endpoint = server.url("/").url().getAuthority() + "/ad/:id";
+
+        // when
+        network.sendGET(server.url("/ad/1").toString(), null, null, null);
+        network.sendGET(server.url("/ad/2").toString(), null, null, null);
+        server.shutdown();
+        Map<String, SALatencySnapshot> snapshots = SANetworkMetrics.getShared().getSnapshotsAndReset();
+
+        // then
+        SALatencySnapshot snapshot = snapshots.get(endpoint);
+        assertEquals(2, snapshot.getCount());
+        assertEquals(1, snapshot.getSuccesses());
+        assertEquals(1, snapshot.getErrors());
+        assertEquals(0, SANetworkMetrics.getShared().getSnapshots().get(endpoint).getCount());
+    }
+}
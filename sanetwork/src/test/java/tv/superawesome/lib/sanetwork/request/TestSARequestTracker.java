@@ -0,0 +1,54 @@
+package tv.superawesome.lib.sanetwork.request;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSARequestTracker {
+
+    @Test
+    public void test_SARequestTracker_CountsRequests () throws Exception {
+        // given
+        int initial = SARequestTracker.getRequestsInFlight();
+
+        // when
+        SARequestTracker.begin();
+        SARequestTracker.begin();
+        int during = SARequestTracker.getRequestsInFlight();
+        SARequestTracker.end();
+        SARequestTracker.end();
+
+        // then
+        assertEquals(initial + 2, during);
+        assertEquals(initial, SARequestTracker.getRequestsInFlight());
+    }
+
+    @Test
+    public void test_SARequestTracker_AwaitIdle () throws Exception {
+        // given
+        SARequestTracker.begin();
+
+        // when
+        boolean idleBefore = SARequestTracker.awaitIdle(20);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                    // ignore
+                }
+                SARequestTracker.end();
+            }
+        }).start();
+
+        boolean idleAfter = SARequestTracker.awaitIdle(5000);
+
+        // then
+        assertFalse(idleBefore);
+        assertTrue(idleAfter);
+    }
+}
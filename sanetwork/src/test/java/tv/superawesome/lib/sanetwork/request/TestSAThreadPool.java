@@ -0,0 +1,301 @@
+package tv.superawesome.lib.sanetwork.request;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TestSAThreadPool {
+
+    private final SAThreadPool pool = new SAThreadPool(3, 1, 1, 1, 200);
+
+    @After
+    public void tearDown () {
+        pool.shutdown();
+    }
+
+    @Test
+    public void test_SAThreadPool_SerialExecutor_RunsTasksInOrder () throws Exception {
+        // given
+        Executor serial = pool.newSerialExecutor(pool.getRequestExecutor());
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final boolean[] overlapped = {false};
+        final CountDownLatch done = new CountDownLatch(20);
+
+        // when
+        for (int i = 0; i < 20; i++) {
+            final int index = i;
+            serial.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() > 1) overlapped[0] = true;
+                    order.add(index);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        // then
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(overlapped[0]);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void test_SAThreadPool_ManyClients_ShareBoundedThreads () throws Exception {
+        // given
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(10);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            pool.newSerialExecutor(pool.getRequestExecutor()).execute(new Runnable() {
+                @Override
+                public void run() {
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    sleep(50);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        // then
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, maxRunning.get());
+        assertTrue(pool.getThreadCount() <= 3);
+    }
+
+    @Test
+    public void test_SAThreadPool_DownloadLane_DoesNotBlockRequests () throws Exception {
+        // given
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch request = new CountDownLatch(1);
+
+        // when
+        pool.getDownloadExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        });
+        pool.getRequestExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                request.countDown();
+            }
+        });
+
+        // then
+        assertTrue(request.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void test_SAThreadPool_IdleThreads_AreReaped () throws Exception {
+        // given
+        final CountDownLatch done = new CountDownLatch(1);
+        pool.getRequestExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getThreadCount());
+
+        // when
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getThreadCount() > 0 && System.currentTimeMillis() < deadline) {
+            sleep(20);
+        }
+
+        // then
+        assertEquals(0, pool.getThreadCount());
+    }
+
+    @Test
+    public void test_SAThreadPool_Shutdown_DropsQueuedTasksAndStaysUsable () throws Exception {
+        // given
+        Executor serial = pool.newSerialExecutor(pool.getDownloadExecutor());
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        serial.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                sleep(5000);
+            }
+        });
+        serial.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // when
+        pool.shutdown();
+        final CountDownLatch after = new CountDownLatch(1);
+        serial.execute(new Runnable() {
+            @Override
+            public void run() {
+                after.countDown();
+            }
+        });
+
+        // then
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        sleep(100);
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void test_SAThreadPool_Timer_RunsTaskAndIsReaped () throws Exception {
+        // given
+        final CountDownLatch done = new CountDownLatch(1);
+
+        // when
+        pool.schedule(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        }, 50);
+
+        // then
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getThreadCount() > 0 && System.currentTimeMillis() < deadline) {
+            sleep(20);
+        }
+        assertEquals(0, pool.getThreadCount());
+    }
+
+    @Test
+    public void test_SAThreadPool_Shutdown_DropsScheduledTasks () throws Exception {
+        // given
+        final AtomicInteger ran = new AtomicInteger();
+        pool.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        }, 200);
+
+        // when
+        pool.shutdown();
+        final CountDownLatch after = new CountDownLatch(1);
+        pool.schedule(new Runnable() {
+            @Override
+            public void run() {
+                after.countDown();
+            }
+        }, 0);
+
+        // then
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        sleep(400);
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void test_SAThreadPool_Shutdown_DropsQueuedAndScheduledTasks () throws Exception {
+        // given
+        Executor serial = pool.newSerialExecutor(pool.getDownloadExecutor());
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger dropped = new AtomicInteger();
+        serial.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                sleep(5000);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        serial.execute(droppable(dropped));
+        pool.getDownloadExecutor().execute(droppable(dropped));
+        pool.schedule(droppable(dropped), 5000);
+
+        // when
+        pool.shutdown();
+
+        // then
+        assertEquals(3, dropped.get());
+
+        final CountDownLatch after = new CountDownLatch(1);
+        serial.execute(new Runnable() {
+            @Override
+            public void run() {
+                after.countDown();
+            }
+        });
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        assertEquals(3, dropped.get());
+    }
+
+    @Test
+    public void test_SAThreadPool_CancelledScheduledTask_IsNotDropped () throws Exception {
+        // given
+        AtomicInteger dropped = new AtomicInteger();
+        ScheduledFuture<?> future = pool.schedule(droppable(dropped), 5000);
+        future.cancel(false);
+
+        // when
+        pool.shutdown();
+
+        // then
+        assertEquals(0, dropped.get());
+    }
+
+    private static SAThreadPool.DroppableTask droppable(final AtomicInteger dropped) {
+        return new SAThreadPool.DroppableTask() {
+            @Override
+            public void run() {
+                // must not run
+                dropped.addAndGet(100);
+            }
+
+            @Override
+            public void onDropped() {
+                dropped.incrementAndGet();
+            }
+        };
+    }
+
+    private static void sleep(long time) {
+        try {
+            Thread.sleep(time);
+        } catch (InterruptedException e) {
+            // stop early
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // stop early
+        }
+    }
+}